@@ -0,0 +1,82 @@
+package com.medlinchristopher.picturetoascii.benchmarks;
+
+import com.medlinchristopher.picturetoascii.image.BigBufferedImage;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creating file backed images, and moving pixels in and out of their memory mapped banks a row at a time and a
+ * sample at a time. Temporary files go in a fresh folder under java.io.tmpdir which is removed afterwards.
+ *
+ * @since 1.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BigBufferedImageBenchmark {
+
+    @Param({"1024", "4096"})
+    public int size;
+
+    private File tempDir;
+    private BigBufferedImage image;
+    private int[] row;
+
+    @Setup(Level.Trial)
+    public void setUp () throws IOException {
+        tempDir = Files.createTempDirectory("ascii-bench").toFile();
+        image = BigBufferedImage.create(tempDir, size, size, BufferedImage.TYPE_INT_RGB);
+        row = new int[size * 3];
+        for (int i = 0; i < row.length; i++)
+            row[i] = i & 0xff;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown () {
+        image.close();
+        tempDir.delete();
+    }
+
+    @Benchmark
+    public int create () throws IOException {
+        try (BigBufferedImage created = BigBufferedImage.create(tempDir, size, size, BufferedImage.TYPE_INT_RGB)) {
+            return created.getWidth();
+        }
+    }
+
+    @Benchmark
+    public int[] writeRows () {
+        WritableRaster raster = image.getRaster();
+        for (int y = 0; y < size; y++)
+            raster.setPixels(0, y, size, 1, row);
+        return row;
+    }
+
+    @Benchmark
+    public int[] readRows () {
+        WritableRaster raster = image.getRaster();
+        int[] pixels = new int[size * 3];
+        for (int y = 0; y < size; y++)
+            raster.getPixels(0, y, size, 1, pixels);
+        return pixels;
+    }
+
+    @Benchmark
+    public long readSamples () {
+        WritableRaster raster = image.getRaster();
+        long sum = 0;
+        for (int y = 0; y < size; y += 16)
+            for (int x = 0; x < size; x++)
+                sum += raster.getSample(x, y, 0);
+        return sum;
+    }
+}
@@ -0,0 +1,46 @@
+package com.medlinchristopher.picturetoascii.benchmarks;
+
+import com.medlinchristopher.picturetoascii.CharRamp;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looking up characters by greyscale, the work generateChar used to do for every block.
+ *
+ * @since 1.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CharRampBenchmark {
+
+    private static final int SAMPLES = 4096;
+
+    @Param({"0", "1", "2", "custom"})
+    public String ramp;
+
+    private CharRamp charRamp;
+    private final int[] greys = new int[SAMPLES];
+
+    @Setup(Level.Trial)
+    public void setUp () {
+        charRamp = ramp.equals("custom") ? CharRamp.of("$@B%8&WM#*oahkbdpqwmZO0QLCJUYXzcvunxrjft/|()1{}[]?-_+~<>i!lI;:,\"^`'. ")
+                : CharRamp.forCharSetSize(Integer.parseInt(ramp));
+        Random random = new Random(1);
+        for (int i = 0; i < SAMPLES; i++)
+            greys[i] = random.nextInt(256);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public void charFor (Blackhole blackhole) {
+        for (int grey : greys)
+            blackhole.consume(charRamp.charFor(grey));
+    }
+}
@@ -0,0 +1,49 @@
+package com.medlinchristopher.picturetoascii.benchmarks;
+
+import com.medlinchristopher.picturetoascii.ASCIIConversion;
+import com.medlinchristopher.picturetoascii.CharRamp;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converting an image to ASCII art, for each of the image types LuminanceSampler reads directly and one it does not.
+ *
+ * @since 1.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConversionBenchmark {
+
+    @Param({"INT_RGB", "INT_ARGB", "3BYTE_BGR", "BYTE_GRAY", "USHORT_565_RGB"})
+    public String imageType;
+
+    @Param({"512", "2048"})
+    public int size;
+
+    @Param({"1", "4"})
+    public int pixelsPerChar;
+
+    private BufferedImage image;
+
+    @Setup(Level.Trial)
+    public void setUp () {
+        image = SyntheticImages.create(size, size, SyntheticImages.type(imageType));
+    }
+
+    @Benchmark
+    public char[][] imageToASCII () {
+        return ASCIIConversion.imageToASCII(image, pixelsPerChar, CharRamp.MEDIUM);
+    }
+
+    @Benchmark
+    public char[][] imageToASCIIParallel () {
+        return ASCIIConversion.imageToASCII(image, pixelsPerChar, CharRamp.MEDIUM, ForkJoinPool.commonPool());
+    }
+}
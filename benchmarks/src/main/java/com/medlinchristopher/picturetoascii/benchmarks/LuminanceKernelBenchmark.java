@@ -0,0 +1,50 @@
+package com.medlinchristopher.picturetoascii.benchmarks;
+
+import com.medlinchristopher.picturetoascii.ASCIIConversion;
+import com.medlinchristopher.picturetoascii.ASCIIGrid;
+import com.medlinchristopher.picturetoascii.CharRamp;
+import com.medlinchristopher.picturetoascii.image.LuminanceKernel;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converting a TYPE_INT_RGB image with the scalar and the vector LuminanceKernel. The vector kernel is only there
+ * when the benchmarks are built with the vector profile (mvn -Pvector package) on JDK 16 or later.
+ *
+ * @since 1.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class LuminanceKernelBenchmark {
+
+    @Param({"scalar", "vector"})
+    public String kernel;
+
+    @Param({"2048"})
+    public int size;
+
+    @Param({"1", "4", "8", "16"})
+    public int pixelsPerChar;
+
+    private BufferedImage image;
+
+    @Setup(Level.Trial)
+    public void setUp () {
+        boolean vector = kernel.equals("vector");
+        if (vector && !LuminanceKernel.isVectorAvailable())
+            throw new IllegalStateException("The vector kernel was not built, see mvn -Pvector package.");
+        LuminanceKernel.setVectorEnabled(vector);
+        image = SyntheticImages.create(size, size, BufferedImage.TYPE_INT_RGB);
+    }
+
+    @Benchmark
+    public ASCIIGrid imageToASCIIGrid () {
+        return ASCIIConversion.imageToASCIIGrid(image, pixelsPerChar, CharRamp.MEDIUM);
+    }
+}
@@ -0,0 +1,90 @@
+package com.medlinchristopher.picturetoascii.benchmarks;
+
+import com.medlinchristopher.picturetoascii.ASCIIConversion;
+import com.medlinchristopher.picturetoascii.ASCIITextWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing ASCII art out, as a PNG image at several font sizes and as text. Output is thrown away as it is written,
+ * so the numbers measure rendering and encoding rather than the disk.
+ *
+ * @since 1.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RenderBenchmark {
+
+    @Param({"1", "5", "12"})
+    public int fontSize;
+
+    @Param({"200"})
+    public int size;
+
+    private char[][] asciiArt;
+
+    @Setup(Level.Trial)
+    public void setUp () {
+        asciiArt = SyntheticImages.asciiArt(size, size, "@#&%8BMWoahkbdpqwmZO0QLCJUYXzcvunxrjft/|()1{}[]?-_+~<>i!lI;:,\"^`'. ");
+    }
+
+    @Benchmark
+    public long writeASCIIToPNG () throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        ASCIIConversion.writeASCIIToPNG(asciiArt, fontSize, out);
+        return out.count;
+    }
+
+    @Benchmark
+    public long writeText () throws IOException {
+        CountingChannel channel = new CountingChannel();
+        try (ASCIITextWriter writer = new ASCIITextWriter(channel, ASCIITextWriter.DEFAULT_SEPARATOR, "\n")) {
+            writer.write(asciiArt);
+        }
+        return channel.count;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write (int b) {
+            count++;
+        }
+
+        @Override
+        public void write (byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    private static class CountingChannel implements WritableByteChannel {
+        long count;
+
+        @Override
+        public int write (ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            count += n;
+            return n;
+        }
+
+        @Override
+        public boolean isOpen () {
+            return true;
+        }
+
+        @Override
+        public void close () {
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.medlinchristopher.picturetoascii.benchmarks;
+
+import com.medlinchristopher.picturetoascii.ASCIIConversion;
+import com.medlinchristopher.picturetoascii.ASCIIGrid;
+import com.medlinchristopher.picturetoascii.CharRamp;
+import com.medlinchristopher.picturetoascii.ShapeMatcher;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Choosing characters by the shape of each block, against choosing them by brightness alone on the same image and
+ * block size. --shape is only offered for block sizes at which shapes takes at most twice as long as brightness.
+ *
+ * @since 1.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShapeMatcherBenchmark {
+
+    @Param({"INT_RGB", "3BYTE_BGR"})
+    public String imageType;
+
+    @Param({"2", "3"})
+    public int cells;
+
+    @Param({"4", "6", "8", "12", "16"})
+    public int pixelsPerChar;
+
+    private BufferedImage image;
+    private ShapeMatcher shapes;
+
+    @Setup(Level.Trial)
+    public void setUp () {
+        image = SyntheticImages.create(2048, 2048, SyntheticImages.type(imageType));
+        shapes = new ShapeMatcher(CharRamp.MEDIUM, cells);
+    }
+
+    @Benchmark
+    public ASCIIGrid brightness () {
+        return ASCIIConversion.imageToASCIIGrid(image, pixelsPerChar, CharRamp.MEDIUM);
+    }
+
+    @Benchmark
+    public ASCIIGrid shapes () {
+        return ASCIIConversion.imageToASCIIGrid(image, pixelsPerChar, shapes);
+    }
+}
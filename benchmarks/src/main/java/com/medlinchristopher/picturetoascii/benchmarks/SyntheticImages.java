@@ -0,0 +1,81 @@
+package com.medlinchristopher.picturetoascii.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Repeatable test images, so benchmarks need no input files and give the same pixels on every run.
+ *
+ * @since 1.1
+ */
+final class SyntheticImages {
+
+    private static final long SEED = 0x5eedL;
+
+    private SyntheticImages () {
+    }
+
+    /**
+     * Creates an image filled with diagonal gradients and a little noise, so every character of a ramp is used and
+     * neighbouring blocks differ as they would in a photograph.
+     *
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     * @param type   One of the BufferedImage.TYPE_ constants.
+     * @return       The image.
+     */
+    static BufferedImage create (int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Random random = new Random(SEED);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(32);
+                int r = ((x + y) * 255 / Math.max(1, width + height) + noise) & 0xff;
+                int g = (x * 255 / Math.max(1, width) + noise) & 0xff;
+                int b = (y * 255 / Math.max(1, height) + noise) & 0xff;
+                int a = 0xc0 + (noise << 1);
+                row[x] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+
+    /**
+     * Creates ASCII art of the given size, drawing characters from a ramp at random.
+     *
+     * @param rows  The number of rows.
+     * @param cols  The number of characters in each row.
+     * @param chars The characters to use.
+     * @return      The ASCII art.
+     */
+    static char[][] asciiArt (int rows, int cols, String chars) {
+        Random random = new Random(SEED);
+        char[][] asciiArt = new char[rows][cols];
+        for (char[] row : asciiArt)
+            for (int col = 0; col < cols; col++)
+                row[col] = chars.charAt(random.nextInt(chars.length()));
+        return asciiArt;
+    }
+
+    /**
+     * Maps the names used in benchmark parameters to image types.
+     */
+    static int type (String name) {
+        switch (name) {
+            case "INT_RGB":
+                return BufferedImage.TYPE_INT_RGB;
+            case "INT_ARGB":
+                return BufferedImage.TYPE_INT_ARGB;
+            case "3BYTE_BGR":
+                return BufferedImage.TYPE_3BYTE_BGR;
+            case "BYTE_GRAY":
+                return BufferedImage.TYPE_BYTE_GRAY;
+            case "USHORT_565_RGB":
+                return BufferedImage.TYPE_USHORT_565_RGB;
+            default:
+                throw new IllegalArgumentException("Unknown image type " + name);
+        }
+    }
+}
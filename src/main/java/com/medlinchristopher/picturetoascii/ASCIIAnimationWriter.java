@@ -0,0 +1,24 @@
+package com.medlinchristopher.picturetoascii;
+
+import java.awt.Rectangle;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives the frames of an ASCII animation, one after the other.
+ *
+ * @since 1.1
+ */
+public interface ASCIIAnimationWriter extends Closeable {
+
+    /**
+     * Writes the next frame.
+     *
+     * @param grid    The ASCII art of the frame. It is not changed afterwards, so it may be kept.
+     * @param changed The columns and rows of characters that differ from the previous frame. For the first frame this
+     *                is the whole of the art; it may be empty when nothing changed.
+     * @param delay   How long the frame is shown, in milliseconds.
+     * @throws IOException if the frame cannot be written.
+     */
+    void writeFrame (ASCIIGrid grid, Rectangle changed, int delay) throws IOException;
+}
@@ -4,15 +4,25 @@ import javax.imageio.*;
 import java.awt.image.*;
 import java.io.*;
 import java.awt.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 
-import com.medlinchristopher.picturetoascii.image.BigBufferedImage;
-import com.medlinchristopher.picturetoascii.util.OSUtils;
+import com.medlinchristopher.picturetoascii.image.LuminanceIndex;
+import com.medlinchristopher.picturetoascii.image.LuminanceSampler;
+import com.medlinchristopher.picturetoascii.image.PNGStreamWriter;
+import com.medlinchristopher.picturetoascii.metrics.ConversionMetrics;
+import com.medlinchristopher.picturetoascii.metrics.Stage;
 
 /**
 * A class with static methods used in the process of converting an image of a format such as .jpg, .png, and .bmp to art made with ASCII characters.
 * <p>
-* Made to be utilized by the ASCIIConverterFrame.java class. imageToASCII generates a two-dimensional character array, and that character array is
-* written to a file using writeASCIIToFile.
+* Made to be utilized by the ASCIIConverterFrame.java class. imageToASCIIGrid generates an ASCIIGrid, and that grid is
+* written to a file using writeASCIIToFile. imageToASCII gives the same art as a two-dimensional character array.
 *
 * @author Christopher Medlin
 * @author Ivan Kenevich
@@ -21,18 +31,19 @@ import com.medlinchristopher.picturetoascii.util.OSUtils;
 */
 
 public class ASCIIConversion {
-    //Declaration of large, medium, and small character sets.
-    private static final char[] LARGE_CHAR_SET = new String("@B%8&WM#*oahkbdpqwmZO0QLCJUYXzcvunxrjft/|1?-_+~i!lI;:,^`'. ").toCharArray(); //61 chars
-    private static final char[] MEDIUM_CHAR_SET = new String("@B8&M#oakbpqmZ0QCJYXcvnxjf/|?-+~!l;:^`. ").toCharArray(); //40 chars
-    private static final char[] SMALL_CHAR_SET = new String("@B&#abqZQJXvxf|-~l:` ").toCharArray(); //21 chars
+    //Smallest number of pixels a parallel conversion task is given.
+    private static final int MIN_PIXELS_PER_TASK = 1 << 16;
 
     /**
     * Converts an image into an array of ASCII symbols.
     * <p>
-    * Using bitwise operations, converts the RGB decimal given by BufferedImage.getRGB into
-    * 4 integers. Takes the average of the 4 integers, and from that gets the greyscale. Then,
-    * the greyscale is converted to a character of varying brightness, and then is put into the
-    * character array.
+    * Using bitwise operations, converts the RGB value of each pixel into its red, green and blue
+    * components. Takes the average of the components, and from that gets the greyscale. The greyscale
+    * values of each block of pixels are added up while the image is read, and the average of each block is
+    * looked up in a CharRamp, which gives a character of varying brightness that is then put into the character array.
+    * <p>
+    * Pixels are read straight from the image's raster by a LuminanceSampler, so no copy of the image or
+    * of its greyscale values is made for the common image types.
     *
     * @param img           The image that is to be converted into ASCII art.
     * @param pixelsPerChar The amount of pixels whose average greyscale will be taken and assigned to an ASCII symbol.
@@ -40,193 +51,784 @@ public class ASCIIConversion {
     * @return          A character array containing the ASCII art.
     */    
     public static char[][] imageToASCII (BufferedImage img, int pixelsPerChar, int charSetSize) {
-        int argb, red, green, blue, imgHeight, imgWidth, blockAverage, stepSize;
+        return imageToASCII(img, pixelsPerChar, CharRamp.forCharSetSize(charSetSize));
+    }
 
-        BufferedImage tempImage = new BufferedImage(img.getWidth(), img.getHeight(), img.getType());
-    	tempImage.createGraphics().drawImage(img, 0, 0, Color.WHITE, null);
-	    img = tempImage;
-        imgHeight = img.getHeight();
-        imgWidth = img.getWidth();
-	    tempImage = null;
+    /**
+    * Converts an image into an array of ASCII symbols using the characters of a ramp.
+    *
+    * @param img           The image that is to be converted into ASCII art.
+    * @param pixelsPerChar The amount of pixels whose average greyscale will be taken and assigned to an ASCII symbol.
+    * @param ramp          The characters that the ASCII generator has to choose from.
+    * @return          A character array containing the ASCII art.
+    */
+    public static char[][] imageToASCII (BufferedImage img, int pixelsPerChar, CharRamp ramp) {
+        return imageToASCIIGrid(img, pixelsPerChar, ramp).toArray();
+    }
+
+    /**
+    * Converts an image into a grid of ASCII symbols using the characters of a ramp. See imageToASCII.
+    *
+    * @param img           The image that is to be converted into ASCII art.
+    * @param pixelsPerChar The amount of pixels whose average greyscale will be taken and assigned to an ASCII symbol.
+    * @param ramp          The characters that the ASCII generator has to choose from.
+    * @return              A grid containing the ASCII art.
+    */
+    public static ASCIIGrid imageToASCIIGrid (BufferedImage img, int pixelsPerChar, CharRamp ramp) {
+        LuminanceSampler sampler = LuminanceSampler.create(img);
 
         //Takes into account whether pixel density is odd or even, and essentially crops the ASCII art accordingly.
-        int[][] greyscale = new int[imgHeight - (imgHeight % pixelsPerChar)][imgWidth - (imgWidth % pixelsPerChar)];
-        char[][] asciiArt = new char[greyscale.length/pixelsPerChar][greyscale[1].length/pixelsPerChar];
-	
-	    //Step size is a variable used in generateChar()
-	    //Each stepsize forms a range in which a certain character will be generated if a greyscale value falls within that range.
-	    //stepsize is calculated outside of generateChar() so that it only has to be calculated once instead of for each character.
-	    stepSize = 0;
-	    if (charSetSize == 0) {
-	    	stepSize = 12;
-	    }
-	    else if (charSetSize == 1) {
-	    	stepSize = 6;
-	    }
-	    else if (charSetSize == 2) {
-	    	stepSize = 4;
-	    }
-        
-        //generates greyscale array
-        for (int row = 0; row < greyscale.length; row++) 
+        ASCIIGrid grid = new ASCIIGrid(img.getWidth() / pixelsPerChar, img.getHeight() / pixelsPerChar, ramp);
+
+        convertRegion(sampler, grid, null, 0, grid.getHeight(), 0, grid.getWidth(), pixelsPerChar, ramp);
+        return grid;
+    }
+
+    /**
+    * Converts an image into an array of ASCII symbols using several threads.
+    * <p>
+    * The rows of characters are split into bands which are converted by the given fork/join pool, each band
+    * writing straight into its own rows of the returned array. The result is the same as that of
+    * imageToASCII(img, pixelsPerChar, charSetSize); the number of threads used is the parallelism of the pool.
+    *
+    * @param img           The image that is to be converted into ASCII art.
+    * @param pixelsPerChar The amount of pixels whose average greyscale will be taken and assigned to an ASCII symbol.
+    * @param charSetSize   The size of the array of characters that the ASCII generator has to choose from.
+    * @param pool          The pool that the bands are converted on, for example ForkJoinPool.commonPool().
+    * @return          A character array containing the ASCII art.
+    */
+    public static char[][] imageToASCII (BufferedImage img, int pixelsPerChar, int charSetSize, ForkJoinPool pool) {
+        return imageToASCII(img, pixelsPerChar, CharRamp.forCharSetSize(charSetSize), pool);
+    }
+
+    /**
+    * Converts an image into an array of ASCII symbols using the characters of a ramp and several threads.
+    *
+    * @param img           The image that is to be converted into ASCII art.
+    * @param pixelsPerChar The amount of pixels whose average greyscale will be taken and assigned to an ASCII symbol.
+    * @param ramp          The characters that the ASCII generator has to choose from.
+    * @param pool          The pool that the bands are converted on, for example ForkJoinPool.commonPool().
+    * @return          A character array containing the ASCII art.
+    */
+    public static char[][] imageToASCII (BufferedImage img, int pixelsPerChar, CharRamp ramp, ForkJoinPool pool) {
+        return imageToASCIIGrid(img, pixelsPerChar, ramp, pool).toArray();
+    }
+
+    /**
+    * Converts an image into a grid of ASCII symbols using the characters of a ramp and several threads.
+    *
+    * @param img           The image that is to be converted into ASCII art.
+    * @param pixelsPerChar The amount of pixels whose average greyscale will be taken and assigned to an ASCII symbol.
+    * @param ramp          The characters that the ASCII generator has to choose from.
+    * @param pool          The pool that the bands are converted on, for example ForkJoinPool.commonPool().
+    * @return              A grid containing the ASCII art.
+    */
+    public static ASCIIGrid imageToASCIIGrid (BufferedImage img, int pixelsPerChar, CharRamp ramp, ForkJoinPool pool) {
+        LuminanceSampler sampler = LuminanceSampler.create(img);
+        ASCIIGrid grid = new ASCIIGrid(img.getWidth() / pixelsPerChar, img.getHeight() / pixelsPerChar, ramp);
+
+        convertRows(sampler, grid, null, 0, grid.getHeight(), pixelsPerChar, ramp, pool);
+        return grid;
+    }
+
+    /**
+    * Converts an image into an array of ASCII symbols, and works out the average color behind each of them in the
+    * same pass over the pixels.
+    * <p>
+    * The characters are the same as those of imageToASCII(img, pixelsPerChar, ramp). The color of a block is the
+    * average red, green and blue of its pixels after they have been drawn onto white, as 0xRRGGBB.
+    *
+    * @param img           The image that is to be converted into ASCII art.
+    * @param pixelsPerChar The amount of pixels whose average greyscale will be taken and assigned to an ASCII symbol.
+    * @param ramp          The characters that the ASCII generator has to choose from.
+    * @param colors        Receives the color of every character. It must have as many rows and columns as the art:
+    *                      img.getHeight() / pixelsPerChar by img.getWidth() / pixelsPerChar.
+    * @return              A character array containing the ASCII art.
+    */
+    public static char[][] imageToColoredASCII (BufferedImage img, int pixelsPerChar, CharRamp ramp, int[][] colors) {
+        return imageToColoredASCIIGrid(img, pixelsPerChar, ramp, colors).toArray();
+    }
+
+    /**
+    * Converts an image into a grid of ASCII symbols, and works out the average color behind each of them in the same
+    * pass over the pixels. See imageToColoredASCII.
+    *
+    * @param img           The image that is to be converted into ASCII art.
+    * @param pixelsPerChar The amount of pixels whose average greyscale will be taken and assigned to an ASCII symbol.
+    * @param ramp          The characters that the ASCII generator has to choose from.
+    * @param colors        Receives the color of every character. It must have as many rows and columns as the art.
+    * @return              A grid containing the ASCII art.
+    */
+    public static ASCIIGrid imageToColoredASCIIGrid (BufferedImage img, int pixelsPerChar, CharRamp ramp, int[][] colors) {
+        LuminanceSampler sampler = LuminanceSampler.create(img);
+        ASCIIGrid grid = new ASCIIGrid(img.getWidth() / pixelsPerChar, img.getHeight() / pixelsPerChar, ramp);
+
+        convertRegion(sampler, grid, colors, 0, grid.getHeight(), 0, grid.getWidth(), pixelsPerChar, ramp);
+        return grid;
+    }
+
+    /**
+    * Converts an image into an array of ASCII symbols and their colors using several threads.
+    *
+    * @param img           The image that is to be converted into ASCII art.
+    * @param pixelsPerChar The amount of pixels whose average greyscale will be taken and assigned to an ASCII symbol.
+    * @param ramp          The characters that the ASCII generator has to choose from.
+    * @param colors        Receives the color of every character, see imageToColoredASCII(img, pixelsPerChar, ramp, colors).
+    * @param pool          The pool that the bands are converted on, for example ForkJoinPool.commonPool().
+    * @return              A character array containing the ASCII art.
+    */
+    public static char[][] imageToColoredASCII (BufferedImage img, int pixelsPerChar, CharRamp ramp, int[][] colors, ForkJoinPool pool) {
+        return imageToColoredASCIIGrid(img, pixelsPerChar, ramp, colors, pool).toArray();
+    }
+
+    /**
+    * Converts an image into a grid of ASCII symbols and their colors using several threads.
+    *
+    * @param img           The image that is to be converted into ASCII art.
+    * @param pixelsPerChar The amount of pixels whose average greyscale will be taken and assigned to an ASCII symbol.
+    * @param ramp          The characters that the ASCII generator has to choose from.
+    * @param colors        Receives the color of every character, see imageToColoredASCII(img, pixelsPerChar, ramp, colors).
+    * @param pool          The pool that the bands are converted on, for example ForkJoinPool.commonPool().
+    * @return              A grid containing the ASCII art.
+    */
+    public static ASCIIGrid imageToColoredASCIIGrid (BufferedImage img, int pixelsPerChar, CharRamp ramp, int[][] colors, ForkJoinPool pool) {
+        LuminanceSampler sampler = LuminanceSampler.create(img);
+        ASCIIGrid grid = new ASCIIGrid(img.getWidth() / pixelsPerChar, img.getHeight() / pixelsPerChar, ramp);
+
+        convertRows(sampler, grid, colors, 0, grid.getHeight(), pixelsPerChar, ramp, pool);
+        return grid;
+    }
+
+    /**
+    * Converts an indexed image into an array of ASCII symbols, using blocks of any width and height.
+    * <p>
+    * The average of each block comes from four lookups in the summed-area table, so this costs time in proportion
+    * to the number of characters, not pixels, and any block size can be tried without reading the image again. With
+    * square blocks the result is the same as that of imageToASCII(img, pixelsPerChar, ramp).
+    *
+    * @param index       The summed-area table of the image, see LuminanceIndex.build.
+    * @param blockWidth  The width of the block of pixels behind each character.
+    * @param blockHeight The height of the block of pixels behind each character.
+    * @param ramp        The characters that the ASCII generator has to choose from.
+    * @return            A character array containing the ASCII art.
+    */
+    public static char[][] imageToASCII (LuminanceIndex index, int blockWidth, int blockHeight, CharRamp ramp) {
+        return imageToASCIIGrid(index, blockWidth, blockHeight, ramp).toArray();
+    }
+
+    /**
+    * Converts an indexed image into a grid of ASCII symbols, using blocks of any width and height. See
+    * imageToASCII(index, blockWidth, blockHeight, ramp).
+    *
+    * @param index       The summed-area table of the image, see LuminanceIndex.build.
+    * @param blockWidth  The width of the block of pixels behind each character.
+    * @param blockHeight The height of the block of pixels behind each character.
+    * @param ramp        The characters that the ASCII generator has to choose from.
+    * @return            A grid containing the ASCII art.
+    */
+    public static ASCIIGrid imageToASCIIGrid (LuminanceIndex index, int blockWidth, int blockHeight, CharRamp ramp) {
+        ConversionMetrics.Span span = ConversionMetrics.start(Stage.AVERAGE);
+        ASCIIGrid grid = new ASCIIGrid(index.getWidth() / blockWidth, index.getHeight() / blockHeight, ramp);
+        byte[] cells = grid.getCells();
+        int cols = grid.getWidth();
+        for (int row = 0; row < grid.getHeight(); row++) {
+            int offset = row * grid.getStride();
+            int y = row * blockHeight;
+            for (int col = 0; col < cols; col++)
+                cells[offset + col] = ramp.codeFor(index.average(col * blockWidth, y, blockWidth, blockHeight));
+        }
+        ConversionMetrics.end(span, (long) grid.getHeight() * blockHeight * cols * blockWidth, 0);
+        return grid;
+    }
+
+    /**
+    * Converts an image into a grid of ASCII symbols of a given size, stretching the blocks of pixels behind the
+    * characters to cover the whole image.
+    * <p>
+    * Column col covers the pixels from col * width / columns up to (col + 1) * width / columns, and rows the same
+    * way, so blocks may start and end part of the way into a pixel and no pixels are cropped. Every pixel counts
+    * towards the average of a block by how much of it lies inside the block. Each row of pixels is read once and
+    * added into a weighted total per column of pixels; the average of each block is then the difference between two
+    * prefix sums of those totals, so a character costs the same however large its block is. When the size divides
+    * the image evenly, the result is the same as that of imageToASCIIGrid(img, pixelsPerChar, ramp).
+    *
+    * @param img  The image that is to be converted into ASCII art.
+    * @param size The number of columns and rows of characters, see sizeForColumns and scaledSize.
+    * @param ramp The characters that the ASCII generator has to choose from.
+    * @return     A grid containing the ASCII art.
+    */
+    public static ASCIIGrid imageToASCIIGrid (BufferedImage img, Dimension size, CharRamp ramp) {
+        ASCIIGrid grid = new ASCIIGrid(size.width, size.height, ramp);
+        AreaAverager averager = new AreaAverager(img.getWidth(), img.getHeight(), size.width, size.height, ramp);
+        averager.addRows(LuminanceSampler.create(img), img.getHeight(), grid, 0);
+        return grid;
+    }
+
+    /**
+    * Works out the size of ASCII art with a given number of columns that keeps the proportions of an image, when
+    * each character is shown aspect times as tall as it is wide.
+    *
+    * @param width   The width of the image in pixels.
+    * @param height  The height of the image in pixels.
+    * @param columns The number of characters across.
+    * @param aspect  The height of a character over its width, such as 2 for most terminals.
+    * @return        The number of columns and rows, at least 1 row.
+    * @throws IllegalArgumentException if any of the arguments is not positive.
+    */
+    public static Dimension sizeForColumns (int width, int height, int columns, double aspect) {
+        if (width <= 0 || height <= 0 || columns <= 0 || !(aspect > 0) || Double.isInfinite(aspect))
+            throw new IllegalArgumentException("Cannot fit " + width + "x" + height + " pixels to " + columns + " columns with aspect " + aspect);
+        long rows = Math.round(height * (double) columns / (width * aspect));
+        return new Dimension(columns, (int) Math.max(1, Math.min(Integer.MAX_VALUE, rows)));
+    }
+
+    /**
+    * Works out the size of ASCII art whose characters each stand for a block of pixels of a given width and height,
+    * which need not be whole numbers. The blocks are stretched slightly to cover the image exactly.
+    *
+    * @param width  The width of the image in pixels.
+    * @param height The height of the image in pixels.
+    * @param scaleX The number of pixels across each block.
+    * @param scaleY The number of pixels down each block.
+    * @return       The number of columns and rows, at least 1 of each.
+    * @throws IllegalArgumentException if any of the arguments is not positive.
+    */
+    public static Dimension scaledSize (int width, int height, double scaleX, double scaleY) {
+        if (width <= 0 || height <= 0 || !(scaleX > 0) || !(scaleY > 0) || Double.isInfinite(scaleX) || Double.isInfinite(scaleY))
+            throw new IllegalArgumentException("Cannot scale " + width + "x" + height + " pixels by " + scaleX + "x" + scaleY);
+        long cols = Math.round(width / scaleX);
+        long rows = Math.round(height / scaleY);
+        return new Dimension((int) Math.max(1, Math.min(Integer.MAX_VALUE, cols)), (int) Math.max(1, Math.min(Integer.MAX_VALUE, rows)));
+    }
+
+    /**
+    * Fills a rectangle of an ASCII art grid, and of the array of its colors if there is one, from the pixels read by a sampler.
+    * <p>
+    * For every row of characters, the greyscale of each row of pixels beneath it is added into one total per
+    * character, and each total is then averaged and turned into a character. Other characters are left as they are.
+    *
+    * @param sampler       The sampler reading the image.
+    * @param grid          The grid being filled, which must hold the characters of the ramp.
+    * @param colors        The colors being filled, as 0xRRGGBB, or null to work out characters only.
+    * @param rowStart      The first row of characters to fill.
+    * @param rowEnd        The row of characters to stop at (exclusive).
+    * @param colStart      The first column of characters to fill.
+    * @param colEnd        The column of characters to stop at (exclusive).
+    * @param pixelsPerChar The width and height of the block of pixels behind each character.
+    * @param ramp          The ramp the averages are looked up in.
+    */
+    static void convertRegion (LuminanceSampler sampler, ASCIIGrid grid, int[][] colors, int rowStart, int rowEnd,
+            int colStart, int colEnd, int pixelsPerChar, CharRamp ramp) {
+        ConversionMetrics.Span span = ConversionMetrics.start(Stage.AVERAGE);
+        byte[] cells = grid.getCells();
+        int blockSize = pixelsPerChar * pixelsPerChar;
+        int cols = colEnd - colStart;
+        int[] totals = new int[Math.max(0, cols)];
+        int[] reds = colors == null ? null : new int[totals.length];
+        int[] greens = colors == null ? null : new int[totals.length];
+        int[] blues = colors == null ? null : new int[totals.length];
+        for (int row = rowStart; row < rowEnd; row++)
         {
-            for (int col = 0; col < greyscale[1].length; col++)
+            int offset = row * grid.getStride() + colStart;
+            Arrays.fill(totals, 0);
+            if (colors == null) {
+                for (int y = row * pixelsPerChar; y < (row * pixelsPerChar) + pixelsPerChar; y++)
+                {
+                    sampler.addRow(y, colStart, cols, pixelsPerChar, totals);
+                }
+            } else {
+                Arrays.fill(reds, 0);
+                Arrays.fill(greens, 0);
+                Arrays.fill(blues, 0);
+                for (int y = row * pixelsPerChar; y < (row * pixelsPerChar) + pixelsPerChar; y++)
+                {
+                    sampler.addRow(y, colStart, cols, pixelsPerChar, totals, reds, greens, blues);
+                }
+                int[] rowColors = colors[row];
+                for (int col = 0; col < cols; col++)
+                {
+                    rowColors[colStart + col] = ((reds[col] / blockSize) << 16) | ((greens[col] / blockSize) << 8) | (blues[col] / blockSize);
+                }
+            }
+
+            //generate character for average of each block
+            for (int col = 0; col < cols; col++)
             {
-                //get rgb of pixel
-                argb = img.getRGB(col, row);
-                
-                //retrieve red, green, and blue integers from encoded argb decimal
-                //using bitwise operation
-                red = (argb >> 16) & 0xff;
-                green = (argb >> 8) & 0xff;
-                blue = argb & 0xff;
-                 
-                //calculate greyscale by taking average of r, g, and b values`
-                greyscale[row][col] = (red + green + blue)/3;
+                cells[offset + col] = ramp.codeFor(totals[col] / blockSize);
             }
         }
+        ConversionMetrics.end(span, (long) Math.max(0, rowEnd - rowStart) * totals.length * blockSize, 0);
+    }
 
-        //generates ASCII array
-        for (int row = 0; row < asciiArt.length; row++)
+    /**
+    * Converts an image into a grid of ASCII symbols chosen by the shape of the light and dark within each block, see
+    * ShapeMatcher. Blocks smaller than the cells of the matcher are converted by brightness, as imageToASCIIGrid does.
+    *
+    * @param img           The image that is to be converted into ASCII art.
+    * @param pixelsPerChar The amount of pixels across and down each block.
+    * @param shapes        The matcher for the characters the ASCII generator has to choose from.
+    * @return              A grid containing the ASCII art.
+    */
+    public static ASCIIGrid imageToASCIIGrid (BufferedImage img, int pixelsPerChar, ShapeMatcher shapes) {
+        if (pixelsPerChar < shapes.getCells())
+            return imageToASCIIGrid(img, pixelsPerChar, shapes.getRamp());
+        LuminanceSampler sampler = LuminanceSampler.create(img);
+        ASCIIGrid grid = new ASCIIGrid(img.getWidth() / pixelsPerChar, img.getHeight() / pixelsPerChar, shapes.getRamp());
+
+        convertShapes(sampler, grid, 0, grid.getHeight(), pixelsPerChar, shapes);
+        return grid;
+    }
+
+    /**
+    * Fills rows of an ASCII art grid with characters matched to the shape of each block.
+    * <p>
+    * Each block is split into cells whose edges fall at pixel k * pixelsPerChar / cells. Every row of pixels of a row
+    * of blocks is read once and added into the totals of the row of cells it lies in, one total per cell when the
+    * cells are all the same width, as addRow does for blocks, and otherwise one per column of pixels, which are added
+    * up into cells once the row of blocks is complete.
+    *
+    * @param sampler       The sampler reading the image.
+    * @param grid          The grid being filled, which must hold the characters of the matcher's ramp.
+    * @param rowStart      The first row of characters to fill.
+    * @param rowEnd        The row of characters to stop at (exclusive).
+    * @param pixelsPerChar The width and height of the block of pixels behind each character, at least the number of
+    *                      cells across it.
+    * @param shapes        The matcher the blocks are looked up in.
+    */
+    static void convertShapes (LuminanceSampler sampler, ASCIIGrid grid, int rowStart, int rowEnd, int pixelsPerChar,
+            ShapeMatcher shapes) {
+        ConversionMetrics.Span span = ConversionMetrics.start(Stage.AVERAGE);
+        byte[] codes = grid.getCells();
+        int cols = grid.getWidth();
+        int cells = shapes.getCells();
+        int[] edges = new int[cells + 1];
+        for (int k = 0; k <= cells; k++)
+            edges[k] = k * pixelsPerChar / cells;
+        int cellWidth = pixelsPerChar % cells == 0 ? pixelsPerChar / cells : 1;
+        int blockColumns = pixelsPerChar / cellWidth;
+        //the totals of each row of cells, cleared once per row of blocks
+        int[][] columns = new int[cells][cols * blockColumns];
+        int[] averages = new int[cols * cells * cells];
+
+        //totals are divided by the area of their cell as (total * ceil(2^32 / area)) >>> 32, which is exact for areas
+        //below 4096 since a total is at most 255 * area
+        int[] areas = new int[cells * cells];
+        long[] reciprocals = new long[cells * cells];
+        for (int cell = 0; cell < areas.length; cell++) {
+            areas[cell] = (edges[cell / cells + 1] - edges[cell / cells]) * (edges[cell % cells + 1] - edges[cell % cells]);
+            reciprocals[cell] = ((1L << 32) + areas[cell] - 1) / areas[cell];
+        }
+        //the row of cells each row of pixels of a block lies in
+        int[] cellRows = new int[pixelsPerChar];
+        for (int cellY = 0; cellY < cells; cellY++)
+            for (int y = edges[cellY]; y < edges[cellY + 1]; y++)
+                cellRows[y] = cellY;
+
+        for (int row = rowStart; row < rowEnd; row++)
         {
-            for (int col = 0; col < asciiArt[1].length; col++)
+            for (int[] totals : columns)
+                Arrays.fill(totals, 0);
+            int top = row * pixelsPerChar;
+            for (int y = 0; y < pixelsPerChar; y++)
             {
-                //nested for loop for finding the average of a block of greyscale values.
-                int total = 0;
-                int numberOfPixels = 0;
-                for (int blockRow = row * pixelsPerChar; blockRow < (row * pixelsPerChar) + pixelsPerChar; blockRow++) 
+                int[] totals = columns[cellRows[y]];
+                sampler.addRow(top + y, 0, totals.length, cellWidth, totals);
+            }
+
+            for (int cellY = 0; cellY < cells; cellY++)
+            {
+                int[] totals = columns[cellY];
+                for (int col = 0, x = 0; col < cols; col++)
                 {
-                    for (int blockCol = col * pixelsPerChar; blockCol < ((col * pixelsPerChar) + pixelsPerChar); blockCol++) 
-                    {   
-                        //adds greyscale value to total variable
-                        total+=greyscale[blockRow][blockCol];
+                    for (int cellX = 0; cellX < cells; cellX++)
+                    {
+                        int total = 0;
+                        for (int end = col * blockColumns + edges[cellX + 1] / cellWidth; x < end; x++)
+                            total += totals[x];
+                        int cell = cellY * cells + cellX;
+                        averages[col * cells * cells + cell] = areas[cell] < 4096
+                                ? (int) ((total * reciprocals[cell]) >>> 32) : total / areas[cell];
                     }
                 }
-                
-                //generate character for average of block
-                blockAverage = total/(pixelsPerChar * pixelsPerChar);
-                asciiArt[row][col] = generateChar(blockAverage, stepSize);
+            }
+
+            int offset = row * grid.getStride();
+            for (int col = 0; col < cols; col++)
+            {
+                codes[offset + col] = shapes.codeFor(averages, col * cells * cells);
             }
         }
+        ConversionMetrics.end(span, (long) Math.max(0, rowEnd - rowStart) * cols * pixelsPerChar * pixelsPerChar, 0);
+    }
 
-        return asciiArt;
-    }   
-    
-    
     /**
-    * Generates a character of varying brigtness based on a greyscale value.
-    * <p>
-    * Does so by checking which range the greyscale value falls in according to stepsize.
-    *
-    * @param greyscale Greyscale value to generate character based on.                                                            
-    * @param stepSize  Size of each iteration by how many greyscale values are covered by each character.
-    * @return          A character of varying darkness which is based on greyscale and stepSize.
-    */
-    private static char generateChar (int greyscale, int stepSize) {
-		char[] charSet;
-		//if a character falls into none of the below boolean statements, that means it is a very bright
-		//greyscale value and the character remains a space.
-		char character = ' ';
-		
-		if (stepSize == 4) {
-			charSet = LARGE_CHAR_SET;
-		}
-		else if (stepSize == 6) {
-			charSet = MEDIUM_CHAR_SET;
-		}
-		else if (stepSize == 12) {
-			charSet = SMALL_CHAR_SET;
-		}
-		else {
-			charSet = MEDIUM_CHAR_SET;
-		}
-		
-		int charIndex = 0;
-        	for (int i = 0; i < charSet.length * stepSize; i+=stepSize) 
-	    	{   
-			if (greyscale <= i) {
-				character = charSet[charIndex];
-				break;
-			}
-			
-			charIndex++;
-	    }
+    * Fills rows of an ASCII art grid, and of the array of its colors if there is one, on a fork/join pool.
+    *
+    * @param sampler       The sampler reading the image.
+    * @param grid          The grid being filled, which must hold the characters of the ramp.
+    * @param colors        The colors being filled, as 0xRRGGBB, or null to work out characters only.
+    * @param rowStart      The first row of characters to fill.
+    * @param rowEnd        The row of characters to stop at (exclusive).
+    * @param pixelsPerChar The width and height of the block of pixels behind each character.
+    * @param ramp          The ramp the averages are looked up in.
+    * @param pool          The pool the rows are converted on.
+    */
+    static void convertRows (LuminanceSampler sampler, ASCIIGrid grid, int[][] colors, int rowStart, int rowEnd,
+            int pixelsPerChar, CharRamp ramp, ForkJoinPool pool) {
+        //bands should hold enough pixels to be worth a task, but there should be several bands per thread
+        long pixelsPerRow = (long) sampler.getWidth() * pixelsPerChar;
+        int minRows = (int) Math.max(1, MIN_PIXELS_PER_TASK / Math.max(1, pixelsPerRow));
+        int bandRows = Math.max(minRows, (rowEnd - rowStart) / (pool.getParallelism() * 4));
 
-		return character;
+        pool.invoke(new ConversionTask(sampler, grid, colors, rowStart, rowEnd, bandRows, pixelsPerChar, ramp));
     }
 
     /**
-    * Writes ASCII art represented in a character array to a file.
+    * Writes ASCII art represented in a character array to a text file.
     * <p>
-    * Uses java.io.PrintWriter. Prints a row of ascii symbols, and then once it has reached the end of that row, PrintWriter.println().
+    * Any existing file is replaced. The characters of each row are separated by a space, and every row ends with
+    * the system line ending. See ASCIITextWriter.
     *
     * @param asciiArt The ASCII art to be written to a file.
     * @param path     The path to the file in which the ASCII art will be written.
-    * @throws IOException if the file path specified cannot be found.
+    * @throws IOException if the file cannot be written.
     */
-    @Deprecated //for now
     public static void writeASCIIToFile (char[][] asciiArt, String path) throws IOException {
-        PrintWriter writer = new PrintWriter(new FileWriter(path,true));
-        
-        for (int row = 0; row < asciiArt.length; row++) {
-            for (int col = 0; col < asciiArt[1].length; col++) {
-                try {
-                    writer.print(asciiArt[row][col] + " ");
-                    if (col==asciiArt[row].length-1)
-                    {
-                        writer.println();
-                    }
-				} finally {}
+        writeASCIIToFile(asciiArt, path, ASCIITextWriter.DEFAULT_SEPARATOR, System.lineSeparator());
+    }
 
-            }
-        } 		
-        writer.close();
+    /**
+    * Writes ASCII art represented in a character array to a text file, with the given separator and line ending.
+    *
+    * @param asciiArt   The ASCII art to be written to a file.
+    * @param path       The path to the file in which the ASCII art will be written.
+    * @param separator  Written between the characters of each row. May be empty.
+    * @param lineEnding Written after every row.
+    * @throws IOException if the file cannot be written.
+    */
+    public static void writeASCIIToFile (char[][] asciiArt, String path, String separator, String lineEnding) throws IOException {
+        writeASCIIToFile(ASCIIGrid.of(asciiArt), path, separator, lineEnding);
     }
 
     /**
-     * Writes ASCII art represented in a character array to a BigBufferedImage object.
+    * Writes ASCII art held in a grid to a text file, with the characters of each row separated by a space. See
+    * writeASCIIToFile(asciiArt, path).
+    *
+    * @param grid The ASCII art to be written to a file.
+    * @param path The path to the file in which the ASCII art will be written.
+    * @throws IOException if the file cannot be written.
+    */
+    public static void writeASCIIToFile (ASCIIGrid grid, String path) throws IOException {
+        writeASCIIToFile(grid, path, ASCIITextWriter.DEFAULT_SEPARATOR, System.lineSeparator());
+    }
+
+    /**
+    * Writes ASCII art held in a grid to a text file, with the given separator and line ending.
+    *
+    * @param grid       The ASCII art to be written to a file.
+    * @param path       The path to the file in which the ASCII art will be written.
+    * @param separator  Written between the characters of each row. May be empty.
+    * @param lineEnding Written after every row.
+    * @throws IOException if the file cannot be written.
+    */
+    public static void writeASCIIToFile (ASCIIGrid grid, String path, String separator, String lineEnding) throws IOException {
+        try (ASCIITextWriter writer = new ASCIITextWriter(new File(path).toPath(), separator, lineEnding)) {
+            writer.write(grid);
+        }
+    }
+
+    /**
+     * Writes ASCII art represented in a character array to a PNG file.
      * <p>
-     * Using a Graphics2D object, writeASCIIToImage() first converts the character array to a string array to account for lack of a Graphics2D.drawChar()
-     * method, and then proceeds to individually draw each character on a buffered image using a fixed font size, fixed spacing, and a varying image
-     * size.
+     * Each character is drawn using a fixed font size, fixed spacing, and a varying image size. See writeASCIIToPNG.
      *
      * @param asciiArt the ASCII art to be written to a file.
+     * @param fontSize the size of the font the characters are drawn in.
+     * @param path     the path to the PNG file to be written.
+     * @return         true if the image was written, false otherwise.
      */	
     public static boolean writeASCIIToImage (char[][] asciiArt, int fontSize, String path) {
-	    int spacing = fontSize + 2;
-	    BufferedImage img;
+        return writeASCIIToImage(asciiArt, null, fontSize, path);
+    }
 
-	    String tempPath = "";
-	    if (OSUtils.isWindows())
-	    	tempPath = System.getProperty("user.home") + "\\My Documents\\picture-to-ascii\\temp";
-	    else if (OSUtils.isUnixOrLinux())
-	    	tempPath = System.getProperty("user.home") + "/.picture-to-ascii/temp";
-    	else
-		    return false;
+    /**
+     * Writes ASCII art to a PNG file, drawing each character in its own color.
+     *
+     * @param asciiArt the ASCII art to be written to a file.
+     * @param colors   the color of every character as 0xRRGGBB, see imageToColoredASCII, or null to draw them in black.
+     * @param fontSize the size of the font the characters are drawn in.
+     * @param path     the path to the PNG file to be written.
+     * @return         true if the image was written, false otherwise.
+     */
+    public static boolean writeASCIIToImage (char[][] asciiArt, int[][] colors, int fontSize, String path) {
+        return writeASCIIToImage(ASCIIGrid.of(asciiArt), colors, fontSize, path);
+    }
 
-        try {
-	    	img = BigBufferedImage.create(new File(tempPath), asciiArt[0].length * spacing, (asciiArt.length * spacing) + spacing, BufferedImage.TYPE_INT_RGB);
-    	} catch (IOException e) {
-	    	return false;
-	    }
+    /**
+     * Writes ASCII art held in a grid to a PNG file. See writeASCIIToPNG.
+     *
+     * @param grid     the ASCII art to be written to a file.
+     * @param fontSize the size of the font the characters are drawn in.
+     * @param path     the path to the PNG file to be written.
+     * @return         true if the image was written, false otherwise.
+     */
+    public static boolean writeASCIIToImage (ASCIIGrid grid, int fontSize, String path) {
+        return writeASCIIToImage(grid, null, fontSize, path);
+    }
 
-	    Graphics2D g2 = img.createGraphics();
-	    g2.setColor(Color.WHITE);
-	    g2.setFont(new Font("Meme font", Font.PLAIN, fontSize));
-	    g2.fillRect(0,0, asciiArt[0].length * spacing, (asciiArt.length * spacing) + spacing);
-	    g2.setColor(Color.BLACK);
-	    for (int i = 0; i < asciiArt.length; i++) {
-	       for (int j = 0; j < asciiArt[0].length; j++) {
-		       g2.drawString(String.valueOf(asciiArt[i][j]), j * spacing, (i * spacing) + spacing);
-	       }
-	    }
+    /**
+     * Writes ASCII art held in a grid to a PNG file, drawing each character in its own color.
+     *
+     * @param grid     the ASCII art to be written to a file.
+     * @param colors   the color of every character as 0xRRGGBB, see imageToColoredASCIIGrid, or null to draw them in black.
+     * @param fontSize the size of the font the characters are drawn in.
+     * @param path     the path to the PNG file to be written.
+     * @return         true if the image was written, false otherwise.
+     */
+    public static boolean writeASCIIToImage (ASCIIGrid grid, int[][] colors, int fontSize, String path) {
+	    //there is no such thing as an empty PNG, as when the image is smaller than a block
+	    if (grid.getWidth() == 0 || grid.getHeight() == 0)
+	    	return false;
 
-	    try {
-	    	ImageIO.write(img, "png", new File(path));
+	    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(path))) {
+	    	writeASCIIToPNG(grid, colors, fontSize, out);
 	    } catch (IOException e) {
 	    	return false;
 	    }
 	
 	    return true;
     }
+
+    /**
+     * Writes ASCII art represented in a character array to a stream as a PNG image.
+     * <p>
+     * The glyphs used are rasterized once into a GlyphAtlas, and the image is rendered by a GlyphRenderer one row of
+     * characters at a time, each row being deflated into the stream by a PNGStreamWriter as soon as it is ready while the
+     * next ones are rendered in parallel on the common fork/join pool. The whole image never exists in memory or on disk, so memory
+     * use depends only on the width of the image. The pixels are the same as those of drawing each character with
+     * Graphics2D.drawString.
+     *
+     * @param asciiArt the ASCII art to be written.
+     * @param fontSize the size of the font the characters are drawn in.
+     * @param out      the stream the PNG is written to. It is flushed but not closed.
+     * @throws IOException if the stream cannot be written to.
+     */
+    public static void writeASCIIToPNG (char[][] asciiArt, int fontSize, OutputStream out) throws IOException {
+        writeASCIIToPNG(asciiArt, null, fontSize, out);
+    }
+
+    /**
+     * Writes ASCII art to a stream as a PNG image, drawing each character in its own color. See writeASCIIToPNG.
+     *
+     * @param asciiArt the ASCII art to be written.
+     * @param colors   the color of every character as 0xRRGGBB, or null to draw them in black.
+     * @param fontSize the size of the font the characters are drawn in.
+     * @param out      the stream the PNG is written to. It is flushed but not closed.
+     * @throws IOException if the stream cannot be written to.
+     */
+    public static void writeASCIIToPNG (char[][] asciiArt, int[][] colors, int fontSize, OutputStream out) throws IOException {
+        writeASCIIToPNG(ASCIIGrid.of(asciiArt), colors, fontSize, out);
+    }
+
+    /**
+     * Writes ASCII art held in a grid to a stream as a PNG image. See writeASCIIToPNG(asciiArt, fontSize, out).
+     *
+     * @param grid     the ASCII art to be written.
+     * @param fontSize the size of the font the characters are drawn in.
+     * @param out      the stream the PNG is written to. It is flushed but not closed.
+     * @throws IOException if the stream cannot be written to.
+     */
+    public static void writeASCIIToPNG (ASCIIGrid grid, int fontSize, OutputStream out) throws IOException {
+        writeASCIIToPNG(grid, null, fontSize, out);
+    }
+
+    /**
+     * Writes ASCII art held in a grid to a stream as a PNG image, drawing each character in its own color.
+     *
+     * @param grid     the ASCII art to be written.
+     * @param colors   the color of every character as 0xRRGGBB, or null to draw them in black.
+     * @param fontSize the size of the font the characters are drawn in.
+     * @param out      the stream the PNG is written to. It is flushed but not closed.
+     * @throws IOException if the stream cannot be written to.
+     */
+    public static void writeASCIIToPNG (ASCIIGrid grid, int[][] colors, int fontSize, OutputStream out) throws IOException {
+        final GlyphRenderer renderer = new GlyphRenderer(grid, colors, fontSize);
+        final int width = renderer.getWidth();
+        final int height = renderer.getHeight();
+        final int bandHeight = fontSize + 2;
+
+        //a band per thread of the pool is rendered ahead of the one being deflated
+        int ahead = Math.max(1, ForkJoinPool.getCommonPoolParallelism());
+        ArrayDeque<Future<int[]>> bands = new ArrayDeque<Future<int[]>>(ahead);
+        int next = 0;
+        try (PNGStreamWriter writer = new PNGStreamWriter(out, width, height)) {
+            for (int y = 0; y < height; y += bandHeight) {
+                for (; next < height && bands.size() < ahead; next += bandHeight)
+                    bands.add(renderBand(renderer, next, bandHeight));
+                writer.writeRows(join(bands.poll()), 0, Math.min(bandHeight, height - y));
+            }
+        } finally {
+            for (Future<int[]> band : bands)
+                band.cancel(false);
+        }
+    }
+
+    private static Future<int[]> renderBand (final GlyphRenderer renderer, final int y, final int bandHeight) {
+        return ForkJoinPool.commonPool().submit(new Callable<int[]>() {
+            @Override
+            public int[] call () {
+                int h = Math.min(bandHeight, renderer.getHeight() - y);
+                int[] rgb = new int[renderer.getWidth() * h];
+                renderer.render(0, y, renderer.getWidth(), h, rgb);
+                return rgb;
+            }
+        });
+    }
+
+    private static int[] join (Future<int[]> band) throws IOException {
+        try {
+            return band.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while rendering ASCII art.");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to render ASCII art.", e.getCause());
+        }
+    }
+
+    /**
+     * Converts a band of rows of characters, splitting it in half until it is no taller than bandRows.
+     */
+    private static class ConversionTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final LuminanceSampler sampler;
+        private final ASCIIGrid grid;
+        private final int[][] colors;
+        private final CharRamp ramp;
+        private final int rowStart, rowEnd, bandRows, pixelsPerChar;
+
+        ConversionTask (LuminanceSampler sampler, ASCIIGrid grid, int[][] colors, int rowStart, int rowEnd, int bandRows, int pixelsPerChar, CharRamp ramp) {
+            this.sampler = sampler;
+            this.grid = grid;
+            this.colors = colors;
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+            this.bandRows = bandRows;
+            this.pixelsPerChar = pixelsPerChar;
+            this.ramp = ramp;
+        }
+
+        @Override
+        protected void compute () {
+            if (rowEnd - rowStart <= bandRows) {
+                convertRegion(sampler, grid, colors, rowStart, rowEnd, 0, grid.getWidth(), pixelsPerChar, ramp);
+                return;
+            }
+            int middle = (rowStart + rowEnd) >>> 1;
+            invokeAll(new ConversionTask(sampler, grid, colors, rowStart, middle, bandRows, pixelsPerChar, ramp),
+                    new ConversionTask(sampler, grid, colors, middle, rowEnd, bandRows, pixelsPerChar, ramp));
+        }
+    }
+
+    /**
+     * Averages blocks whose edges fall between pixels, from rows of pixels handed to it from the top down, in as many
+     * batches as they are decoded in. See imageToASCIIGrid(img, size, ramp).
+     * <p>
+     * Horizontal positions are kept in units of 1 / cols of a pixel and vertical ones in units of 1 / rows, in which
+     * every block edge is a whole number, so all the weights are exact. A block is then width by height units in
+     * area, and its weighted total divided by that is its average, rounded down as imageToASCII does.
+     */
+    static final class AreaAverager {
+        private final int width, height, cols, rows;
+        private final CharRamp ramp;
+        private final int[] greys;
+        //the greyscale of each column of pixels in the row of characters being filled, times the units of each of
+        //its rows inside it; one longer than the image, so the right edge can be read like any other
+        private final long[] band;
+        //the plain sum of each column of pixels over the rows of pixels wholly inside the row of characters, which
+        //saves weighting most rows of pixels one by one
+        private final int[] whole;
+        //the next row of pixels and of characters
+        private int y, row;
+
+        AreaAverager (int width, int height, int cols, int rows, CharRamp ramp) {
+            this.width = width;
+            this.height = height;
+            this.cols = cols;
+            this.rows = rows;
+            this.ramp = ramp;
+            this.greys = new int[width];
+            this.band = new long[width + 1];
+            this.whole = new int[width];
+        }
+
+        /**
+         * @return the number of rows of characters filled so far.
+         */
+        int getRow () {
+            return row;
+        }
+
+        /**
+         * Adds the next rows of pixels, filling every row of characters they complete.
+         *
+         * @param sampler  Reads the rows of pixels, the first of them at its row 0.
+         * @param count    The number of rows of pixels to add.
+         * @param art      The grid the rows of characters are filled in.
+         * @param firstRow The row of characters the first row of the grid is.
+         */
+        void addRows (LuminanceSampler sampler, int count, ASCIIGrid art, int firstRow) {
+            ConversionMetrics.Span span = ConversionMetrics.start(Stage.AVERAGE);
+            for (int i = 0; i < count && row < rows; i++, y++) {
+                sampler.readRow(i, 0, width, greys);
+                long top = (long) y * rows;
+                long bottom = top + rows;
+                while (row < rows) {
+                    long rowTop = (long) row * height;
+                    long rowBottom = rowTop + height;
+                    long weight = Math.min(bottom, rowBottom) - Math.max(top, rowTop);
+                    if (weight == rows) {
+                        for (int x = 0; x < width; x++)
+                            whole[x] += greys[x];
+                    } else if (weight > 0) {
+                        for (int x = 0; x < width; x++)
+                            band[x] += weight * greys[x];
+                    }
+                    //a row of characters reaching below this row of pixels goes on with the next one
+                    if (rowBottom > bottom)
+                        break;
+                    fill(art, row - firstRow);
+                    row++;
+                }
+            }
+            ConversionMetrics.end(span, (long) count * width, 0);
+        }
+
+        /**
+         * Averages the blocks of the row of characters being filled, and starts the next one.
+         */
+        private void fill (ASCIIGrid art, int artRow) {
+            for (int x = 0; x < width; x++)
+                band[x] += (long) rows * whole[x];
+            byte[] cells = art.getCells();
+            int offset = artRow * art.getStride();
+            long area = (long) width * height;
+            //the prefix sum of the band up to x, and the weighted total left of the current block, in units
+            long prefix = 0, left = 0;
+            int x = 0;
+            for (int col = 0; col < cols; col++) {
+                long edge = (long) (col + 1) * width;
+                int end = (int) (edge / cols);
+                for (; x < end; x++)
+                    prefix += band[x];
+                //the whole columns of pixels left of the edge, and the part of the one it falls in
+                long right = prefix * cols + (edge - (long) end * cols) * band[end];
+                cells[offset + col] = ramp.codeFor((int) ((right - left) / area));
+                left = right;
+            }
+            Arrays.fill(band, 0);
+            Arrays.fill(whole, 0);
+        }
+    }
 }
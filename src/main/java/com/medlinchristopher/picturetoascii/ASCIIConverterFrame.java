@@ -6,11 +6,18 @@ import java.awt.event.*;
 import javax.imageio.*;
 import java.awt.image.*;
 import java.io.*;
+import javax.imageio.stream.FileImageOutputStream;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
+import com.medlinchristopher.picturetoascii.image.AnimationReader;
+import com.medlinchristopher.picturetoascii.image.LuminanceIndex;
+import com.medlinchristopher.picturetoascii.image.MemoryPlanner;
+import com.medlinchristopher.picturetoascii.image.Sampling;
 import com.medlinchristopher.picturetoascii.util.OSUtils;
-import com.sun.org.apache.xpath.internal.operations.Bool;
 
 /**
 * A JFrame containing various UI elements for the Picture to ASCII program. 
@@ -22,7 +29,8 @@ import com.sun.org.apache.xpath.internal.operations.Bool;
 * is in that order. The first container, "upperContainer", holds the text field and the file browser button. 
 * The second container, "lowerContainer", holds the generate button and the options button. Finally, the
 * JLabel informs the user on the current state of the program (awaiting image, processing image, finished
-* processing image, etc...).
+* processing image, etc...). Below them, a PreviewPanel shows the ASCII art the current settings give, refined in
+* a few steps from a coarse version, whenever the image or a setting changes.
 *
 * @author Christopher Medlin
 * @author Ivan Kenevich
@@ -37,10 +45,26 @@ public class ASCIIConverterFrame extends JFrame implements ActionListener {
 	private Container upperContainer, lowerContainer;
 	private JLabel programStatus;
 	private JFileChooser fileChooser;
+	private PreviewPanel previewPanel;
 
-	private int pixelDensity, charSetSize;
+	//settings changes are gathered up for this long before a new preview is started; a new image is previewed at once
+	private static final int PREVIEW_DELAY = 250;
+	//the most pixels decoded for a preview of an image that has not been indexed yet
+	private static final long PREVIEW_PIXELS = 1L << 20;
+	private Timer previewTimer;
+	private PreviewWorker previewWorker;
+
+	private int pixelDensity;
+	private CharRamp charRamp;
+	private Sampling sampling;
 	private String path;
-	private BufferedImage img;
+	private File imageFile;
+	private ConversionCache cache;
+
+	//summed-area table of the last image converted, so other densities can be tried without reading it again
+	private LuminanceIndex index;
+	private File indexedFile;
+	private long indexedModified;
 	private Runtime runtime;
 	
 	/**
@@ -56,7 +80,7 @@ public class ASCIIConverterFrame extends JFrame implements ActionListener {
 
 		//set specifications for frame
 		setTitle("picture-to-ascii v1.0");
-		setSize(new Dimension(400, 150));
+		setSize(new Dimension(400, 450));
 		setLocation(windowLocation.x - 315/2, windowLocation.y - 150/2);
 		setResizable(false);
 		setVisible(true);
@@ -66,7 +90,8 @@ public class ASCIIConverterFrame extends JFrame implements ActionListener {
 		optionsWindow.setVisible(false);
 
 		pixelDensity = 1;
-		charSetSize = 1;
+		charRamp = CharRamp.MEDIUM;
+		sampling = Sampling.EXACT;
 		path = "trump.jpg";
 	}
 	
@@ -84,6 +109,10 @@ public class ASCIIConverterFrame extends JFrame implements ActionListener {
 		lowerContainer = new Container();
 		programStatus = new JLabel("Awaiting command.");
 		programStatus.setAlignmentX(Component.CENTER_ALIGNMENT);
+		previewPanel = new PreviewPanel(null);
+		previewPanel.setPreferredSize(new Dimension(400, 300));
+		previewTimer = new Timer(PREVIEW_DELAY, this);
+		previewTimer.setRepeats(false);
 		
 		//setting layout of containers
 		upperContainer.setLayout(new FlowLayout(FlowLayout.CENTER, 50, 0));
@@ -106,6 +135,7 @@ public class ASCIIConverterFrame extends JFrame implements ActionListener {
 		getContentPane().add(upperContainer);
 		getContentPane().add(lowerContainer);
 		getContentPane().add(programStatus);
+		getContentPane().add(previewPanel);
 		getContentPane().add(Box.createHorizontalStrut(40));
 	}
 	
@@ -144,9 +174,13 @@ public class ASCIIConverterFrame extends JFrame implements ActionListener {
 			programStatus.setText("ERROR: Improper argument for font size.");
 		}
 
-		//read image
-		try {
-			img = ImageIO.read(new File(pathTextField.getText()));
+		//find a reader for the image, without decoding it yet
+		imageFile = new File(pathTextField.getText());
+		boolean isImage = false;
+		try (ImageInputStream stream = ImageIO.createImageInputStream(imageFile)) {
+			if (stream == null)
+				throw new FileNotFoundException(imageFile.getPath());
+			isImage = ImageIO.getImageReaders(stream).hasNext();
 		} catch (IOException e) {
 		 	programStatus.setForeground(Color.RED);
 			programStatus.setText("ERROR: Image file not found.");
@@ -154,7 +188,7 @@ public class ASCIIConverterFrame extends JFrame implements ActionListener {
 		}
 
 		//if inputed file isn't an image
-		if (img == null && success) {
+		if (!isImage && success) {
 			programStatus.setForeground(Color.RED);
 			programStatus.setText("ERROR: Specified file is not an image.");
 			success = false;
@@ -167,6 +201,8 @@ public class ASCIIConverterFrame extends JFrame implements ActionListener {
 		//generate ASCII
 		if (success) {
 			programStatus.setText("Generating...");
+			//one conversion at a time, since a second one would write to the same output
+			generate.setEnabled(false);
 			ASCIIWorker asciifier = new ASCIIWorker(fontSize, picOutputPath);
 			asciifier.execute();
 		}
@@ -189,6 +225,7 @@ public class ASCIIConverterFrame extends JFrame implements ActionListener {
 	public void setPixelDensity (int pd) 
 	{
 		pixelDensity = pd;
+		schedulePreview();
 	}
 	
 	/**
@@ -198,10 +235,85 @@ public class ASCIIConverterFrame extends JFrame implements ActionListener {
 	*/
 	public void setCharSetSize (int size) {
 		if (size == 0 || size == 1 || size == 2)
-			charSetSize = size;
+		{
+			charRamp = CharRamp.forCharSetSize(size);
+			schedulePreview();
+		}
 		else
 			throw new IllegalStateException("Illegal char set size.");
 	}
+
+	/**
+	* Sets how many pixels of each block are decoded when generating ASCII art. Previews are always worked out from a
+	* subsampled copy of the image, so they are left as they are.
+	*
+	* @param sampling Every pixel, or a few samples of each block for images that decode faster and in less memory.
+	*/
+	public void setSampling (Sampling sampling) {
+		this.sampling = sampling;
+	}
+
+	/**
+	* Sets the cache that finished conversions are looked up in and added to.
+	*
+	* @param cache The cache, or null to always convert.
+	*/
+	public void setCache (ConversionCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	* Sets the ramp of characters to be used in ASCII generation.
+	*
+	* @param ramp The characters to choose from, ordered from darkest to brightest.
+	*/
+	public void setCharRamp (CharRamp ramp) {
+		charRamp = ramp;
+		schedulePreview();
+	}
+
+	/**
+	* Asks for the preview to be brought up to date with the current image and settings.
+	* <p>
+	* The preview is started once no further change has come in for a short while, and any preview still being
+	* worked out for the old settings is cancelled.
+	*/
+	public void schedulePreview () {
+		previewTimer.restart();
+	}
+
+	/**
+	* Starts the preview of a newly chosen image straight away, without waiting for further changes.
+	*/
+	private void previewNow () {
+		previewTimer.stop();
+		startPreview();
+	}
+
+	private void startPreview () {
+		if (previewWorker != null)
+			previewWorker.cancel(true);
+		previewWorker = null;
+
+		File file = new File(pathTextField.getText());
+		if (!file.isFile()) {
+			previewPanel.setPreview(null);
+			previewPanel.setLoading(false);
+			return;
+		}
+		//previews are drawn in the default font size until a valid one is entered
+		int fontSize = 5;
+		try {
+			int i = Integer.parseInt(optionsWindow.getFontSize());
+			if (i > 0 && i <= 20)
+				fontSize = i;
+		} catch (NumberFormatException ignore) {
+		}
+
+		previewPanel.setLoading(true);
+		previewWorker = new PreviewWorker(file, pixelDensity, charRamp, fontSize, previewPanel.getSize());
+		previewWorker.execute();
+	}
 	
 	@Override
 	public void actionPerformed (ActionEvent e) {
@@ -213,6 +325,14 @@ public class ASCIIConverterFrame extends JFrame implements ActionListener {
 		{
 			generate();
 		}
+		else if (e.getSource()==previewTimer)
+		{
+			startPreview();
+		}
+		else if (e.getSource()==pathTextField)
+		{
+			previewNow();
+		}
 		else if (e.getSource()==browse)
 		{
 			System.out.println("Browse button selected.");
@@ -220,7 +340,121 @@ public class ASCIIConverterFrame extends JFrame implements ActionListener {
 			fileChooser.setFileFilter(new FileNameExtensionFilter("Images", "jpg", "jpeg", "gif", 
 										"bmp", "png", "wbmp"));
 			if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION)
+			{
 				pathTextField.setText(fileChooser.getSelectedFile().getPath());
+				previewNow();
+			}
+		}
+	}
+
+	/**
+	* Gets the summed-area table of an image, building it the first time the image is converted, or again when it was
+	* built from samples further apart than asked for.
+	*
+	* @param file The image file.
+	* @param step The distance between samples the table should be built from, 1 for every pixel.
+	* @return     Its table, or null if it would not fit in memory.
+	*/
+	private synchronized LuminanceIndex indexFor (File file, int step) throws IOException {
+		LuminanceIndex cached = indexedFor(file);
+		//a table of every pixel serves any step exactly
+		if (cached != null && (cached.getStep() == 1 || cached.getStep() == step))
+			return cached;
+		index = null;
+		indexedFile = file;
+		indexedModified = file.lastModified();
+		index = LuminanceIndex.buildIfFits(file, step);
+		return index;
+	}
+
+	/**
+	* Gets the summed-area table of an image if it has already been built.
+	*
+	* @param file The image file.
+	* @return     Its table, or null if it has not been built.
+	*/
+	private synchronized LuminanceIndex indexedFor (File file) {
+		if (index != null && file.equals(indexedFile) && file.lastModified() == indexedModified)
+			return index;
+		return null;
+	}
+
+	/**
+	* Works out previews of an image from coarse to fine, showing each one as soon as it is ready.
+	*/
+	private class PreviewWorker extends SwingWorker<Void, BufferedImage> {
+		private File file;
+		private int pixelDensity;
+		private CharRamp charRamp;
+		private int fontSize;
+		private Dimension area;
+
+		public PreviewWorker(File file, int pixelDensity, CharRamp charRamp, int fontSize, Dimension area) {
+			this.file = file;
+			this.pixelDensity = pixelDensity;
+			this.charRamp = charRamp;
+			this.fontSize = fontSize;
+			this.area = area;
+		}
+
+		@Override
+		protected Void doInBackground() throws Exception {
+			//once an image has been converted, its table gives exact previews in a few milliseconds per level
+			LuminanceIndex luminance = indexedFor(file);
+			Dimension size = luminance != null ? new Dimension(luminance.getWidth(), luminance.getHeight())
+					: PreviewRenderer.readSize(file);
+			final PreviewRenderer renderer = new PreviewRenderer(size.width, size.height, pixelDensity, fontSize,
+					area.width, area.height);
+			final int[] blockSizes = renderer.getBlockSizes();
+
+			if (luminance == null) {
+				//a stored thumbnail gives something to look at before the image is decoded
+				BufferedImage thumbnail = PreviewRenderer.readThumbnail(file);
+				if (thumbnail != null)
+					show(renderer.render(LuminanceIndex.build(thumbnail), blockSizes[0], charRamp));
+				if (isCancelled())
+					return null;
+				//a subsampled copy holds more than enough pixels for the preview, and a progressive image shows its
+				//first pass at the coarsest level while the rest of it is decoded
+				luminance = LuminanceIndex.build(PreviewRenderer.readSubsampled(file, PREVIEW_PIXELS,
+						thumbnail != null ? null : new PreviewRenderer.PassListener() {
+					@Override
+					public void passDecoded(BufferedImage image) {
+						if (!isCancelled())
+							show(renderer.render(LuminanceIndex.build(image), blockSizes[0], charRamp));
+					}
+				}));
+			}
+
+			for (int blockSize : blockSizes) {
+				if (isCancelled())
+					return null;
+				show(renderer.render(luminance, blockSize, charRamp));
+			}
+			return null;
+		}
+
+		private void show(BufferedImage preview) {
+			if (preview != null && !isCancelled())
+				publish(preview);
+		}
+
+		@Override
+		protected void process(java.util.List<BufferedImage> previews) {
+			if (!isCancelled())
+				previewPanel.setPreview(previews.get(previews.size() - 1));
+		}
+
+		@Override
+		public void done() {
+			if (previewWorker != this)
+				return;
+			previewPanel.setLoading(false);
+			try {
+				get();
+			} catch (InterruptedException | ExecutionException e) {
+				previewPanel.setPreview(null);
+			}
 		}
 	}
 
@@ -228,16 +462,82 @@ public class ASCIIConverterFrame extends JFrame implements ActionListener {
 		private int fontSize;
 		private String picOutputPath;
 
+		//settings as they were when Generate was clicked, since they may change while converting
+		private File imageFile;
+		private int pixelDensity;
+		private CharRamp charRamp;
+		private Sampling sampling;
+
 		public ASCIIWorker(int fontSize, String picOutputPath) {
 			this.fontSize = fontSize;
 			this.picOutputPath = picOutputPath;
+			this.imageFile = ASCIIConverterFrame.this.imageFile;
+			this.pixelDensity = ASCIIConverterFrame.this.pixelDensity;
+			this.charRamp = ASCIIConverterFrame.this.charRamp;
+			this.sampling = ASCIIConverterFrame.this.sampling;
 		}
 		@Override
 		protected Boolean doInBackground() throws Exception {
-			return ASCIIConversion.writeASCIIToImage(ASCIIConversion.imageToASCII(img, pixelDensity, charSetSize), fontSize, picOutputPath);
+			if (cache == null)
+				return convert();
+
+			//a hit skips decoding, conversion and rendering altogether
+			File target = new File(picOutputPath);
+			String name = target.getName().replaceAll("\\.png$", "");
+			String key = ConversionCache.key(imageFile, charRamp, pixelDensity, fontSize, GlyphRenderer.FONT_NAME, ConversionCache.IMAGE, sampling.getStep(pixelDensity));
+			File cached = cache.restore(key, target.getParentFile(), name);
+			if (cached != null) {
+				picOutputPath = cached.getPath();
+				return true;
+			}
+			if (!convert())
+				return false;
+			try {
+				cache.store(key, new File(picOutputPath));
+			} catch (IOException e) {
+				System.out.println("Failed to cache " + picOutputPath + ": " + e.getMessage());
+			}
+			return true;
+		}
+
+		private boolean convert() throws IOException {
+			//animations are written as animated GIFs, with every frame instead of only the first
+			if (AnimationReader.isAnimated(imageFile)) {
+				picOutputPath = picOutputPath.replaceAll("\\.png$", ".gif");
+				File output = new File(picOutputPath);
+				output.delete();
+				try (AnimationReader reader = AnimationReader.open(imageFile);
+				     ImageOutputStream stream = new FileImageOutputStream(output);
+				     GIFAnimationWriter writer = new GIFAnimationWriter(stream, fontSize, true)) {
+					SequenceConversion.convert(reader, pixelDensity, charRamp, writer);
+				}
+				return true;
+			}
+
+			Dimension size = PreviewRenderer.readSize(imageFile);
+			if (MemoryPlanner.getDefault().plan(size.width, size.height, pixelDensity, fontSize, false, false).getOutput() == MemoryPlanner.Path.STREAMING) {
+				//too much art to hold: every row is drawn as soon as it is converted
+				try (OutputStream out = new BufferedOutputStream(new FileOutputStream(picOutputPath))) {
+					StreamingConversion.convertToPNG(imageFile, pixelDensity, charRamp, fontSize, false, ForkJoinPool.commonPool(), out);
+				}
+				return true;
+			}
+
+			ASCIIGrid grid;
+			//coarse blocks can be averaged from a few decoded samples each
+			LuminanceIndex luminance = indexFor(imageFile, sampling.getStep(pixelDensity));
+			if (luminance != null) {
+				grid = ASCIIConversion.imageToASCIIGrid(luminance, pixelDensity, pixelDensity, charRamp);
+			} else {
+				//too large to index: decodes the image a strip at a time and converts each strip on the common
+				//fork/join pool, whose size can be set with java.util.concurrent.ForkJoinPool.common.parallelism
+				grid = StreamingConversion.convertToGrid(imageFile, pixelDensity, charRamp, ForkJoinPool.commonPool());
+			}
+			return ASCIIConversion.writeASCIIToImage(grid, fontSize, picOutputPath);
 		}
 
 		public void done() {
+			generate.setEnabled(true);
 			try {
 				if (!get()) {
                     programStatus.setText("ERROR: Output path not recognized.");
@@ -245,7 +545,10 @@ public class ASCIIConverterFrame extends JFrame implements ActionListener {
                 else {
                     programStatus.setText("ASCII art generated: " + picOutputPath);
                 }
-			} catch (InterruptedException | ExecutionException ignore) {
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				programStatus.setText("ERROR: " + (cause.getMessage() != null ? cause.getMessage() : cause.toString()));
+			} catch (InterruptedException ignore) {
 			}
 		}
 	}
@@ -0,0 +1,402 @@
+package com.medlinchristopher.picturetoascii;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * ASCII art held in one flat array, one byte per character, row after row.
+ * <p>
+ * A char[][] takes an array object for every row and two bytes for every character. A grid takes a single array of
+ * one byte per character, so it takes half the memory or less, and rows lie one after the other in memory, row y
+ * starting at y * getStride(). When every character is 7-bit ASCII, as with the built-in ramps, the bytes are the
+ * characters themselves and rows can be handed to a channel as they are, see writeRows. Otherwise each byte is the
+ * code of one of up to 256 different characters, looked up in a table.
+ * <p>
+ * Conversions fill grids through the codes of their CharRamp, which stand for the same characters in every grid made
+ * for that ramp. toArray and of convert to and from char[][], for code that works with arrays of characters.
+ *
+ * @since 1.1
+ */
+public final class ASCIIGrid {
+
+    //the character of every code, when the codes are the characters themselves
+    static final char[] ASCII_TABLE = new char[256];
+    static {
+        for (int c = 0; c < 128; c++)
+            ASCII_TABLE[c] = (char) c;
+    }
+
+    //Rows handed to a gathering channel at once.
+    private static final int ROWS_PER_WRITE = 512;
+
+    private final int width, height;
+    private final byte[] cells;
+    private final char[] table;
+    private final boolean ascii;
+
+    //code + 1 of every character, worked out the first time a character is set in a grid that is not ASCII
+    private short[] codes;
+
+    /**
+     * Creates a grid of blank cells for art made of the characters of a ramp.
+     *
+     * @param width  The number of characters in each row.
+     * @param height The number of rows.
+     * @param ramp   The ramp whose characters the grid holds.
+     * @throws IllegalArgumentException if the grid would have more than Integer.MAX_VALUE cells.
+     */
+    public ASCIIGrid (int width, int height, CharRamp ramp) {
+        this(width, height, ramp.getCodeTable());
+    }
+
+    private ASCIIGrid (int width, int height, char[] table) {
+        if (width < 0 || height < 0 || (long) width * height > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Illegal grid size: " + width + "x" + height);
+        this.width = width;
+        this.height = height;
+        this.cells = new byte[width * height];
+        this.table = table;
+        this.ascii = table == ASCII_TABLE;
+    }
+
+    /**
+     * Copies ASCII art out of an array of characters.
+     *
+     * @param asciiArt The ASCII art, whose rows must all be as long as the first one.
+     * @return         A grid holding the same characters.
+     * @throws IllegalArgumentException if the rows differ in length, or the art holds more than 256 different
+     *                                  characters that are not 7-bit ASCII.
+     */
+    public static ASCIIGrid of (char[][] asciiArt) {
+        int height = asciiArt.length;
+        int width = height == 0 ? 0 : asciiArt[0].length;
+        boolean ascii = true;
+        for (char[] row : asciiArt) {
+            if (row.length != width)
+                throw new IllegalArgumentException("Rows of ASCII art must all be " + width + " characters long.");
+            for (char c : row)
+                ascii &= c < 128;
+        }
+
+        //any other characters get codes in the order they first appear
+        char[] table = ASCII_TABLE;
+        if (!ascii) {
+            table = new char[256];
+            int used = 0;
+            boolean[] seen = new boolean[Character.MAX_VALUE + 1];
+            for (char[] row : asciiArt) {
+                for (char c : row) {
+                    if (!seen[c]) {
+                        if (used == table.length)
+                            throw new IllegalArgumentException("ASCII art holds more than 256 different characters.");
+                        seen[c] = true;
+                        table[used++] = c;
+                    }
+                }
+            }
+        }
+
+        ASCIIGrid grid = new ASCIIGrid(width, height, table);
+        for (int y = 0; y < height; y++)
+            grid.setRow(y, asciiArt[y]);
+        return grid;
+    }
+
+    /**
+     * @return the number of characters in each row.
+     */
+    public int getWidth () {
+        return width;
+    }
+
+    /**
+     * @return the number of rows.
+     */
+    public int getHeight () {
+        return height;
+    }
+
+    /**
+     * @return the distance between the starts of two rows in the grid's array, in bytes.
+     */
+    public int getStride () {
+        return width;
+    }
+
+    /**
+     * @return true if every byte of the grid is the 7-bit ASCII character it stands for.
+     */
+    public boolean isASCII () {
+        return ascii;
+    }
+
+    /**
+     * @param x The column.
+     * @param y The row.
+     * @return  The character at that column of that row.
+     */
+    public char charAt (int x, int y) {
+        checkCell(x, y);
+        return table[cells[y * width + x] & 0xff];
+    }
+
+    /**
+     * Puts a character into a cell.
+     *
+     * @param x The column.
+     * @param y The row.
+     * @param c The character, which must be 7-bit ASCII or, in a grid that is not, one the grid has a code for.
+     * @throws IllegalArgumentException if the grid has no code for the character.
+     */
+    public void set (int x, int y, char c) {
+        checkCell(x, y);
+        cells[y * width + x] = code(c);
+    }
+
+    /**
+     * Puts a row of characters into the grid. See set.
+     *
+     * @param y     The row.
+     * @param chars The characters of the row, as many as the width of the grid.
+     * @throws IllegalArgumentException if the row is the wrong length or the grid has no code for one of its characters.
+     */
+    public void setRow (int y, char[] chars) {
+        checkRow(y);
+        if (chars.length != width)
+            throw new IllegalArgumentException("Row has " + chars.length + " characters instead of " + width);
+        int offset = y * width;
+        for (int x = 0; x < width; x++)
+            cells[offset + x] = code(chars[x]);
+    }
+
+    private byte code (char c) {
+        if (ascii) {
+            if (c >= 128)
+                throw new IllegalArgumentException("Not a 7-bit ASCII character: " + c);
+            return (byte) c;
+        }
+        if (codes == null) {
+            short[] reverse = new short[Character.MAX_VALUE + 1];
+            //the first code of a character wins, as blank cells are code 0
+            for (int code = table.length - 1; code >= 0; code--)
+                reverse[table[code]] = (short) (code + 1);
+            codes = reverse;
+        }
+        int code = codes[c] - 1;
+        if (code < 0)
+            throw new IllegalArgumentException("Grid has no code for character " + c);
+        return (byte) code;
+    }
+
+    /**
+     * Gets a view of a row, which reads the characters out of the grid as they are asked for.
+     *
+     * @param y The row.
+     * @return  The characters of the row.
+     */
+    public CharSequence getRow (int y) {
+        checkRow(y);
+        return new Row(y * width, width);
+    }
+
+    /**
+     * Copies the characters of a row into an array.
+     *
+     * @param y     The row.
+     * @param chars The array to copy them into, or null or one shorter than the width of the grid to get a new one.
+     * @return      The array holding the characters, from index 0.
+     */
+    public char[] getRow (int y, char[] chars) {
+        checkRow(y);
+        if (chars == null || chars.length < width)
+            chars = new char[width];
+        int offset = y * width;
+        for (int x = 0; x < width; x++)
+            chars[x] = table[cells[offset + x] & 0xff];
+        return chars;
+    }
+
+    /**
+     * Gets the bytes of a row without copying them.
+     *
+     * @param y The row.
+     * @return  A read-only buffer over the row's characters.
+     * @throws IllegalStateException if the grid is not ASCII, since its bytes would then be codes.
+     */
+    public ByteBuffer getRowBytes (int y) {
+        checkRow(y);
+        if (!ascii)
+            throw new IllegalStateException("Only the bytes of ASCII grids are characters.");
+        return ByteBuffer.wrap(cells, y * width, width).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Writes rows to a channel as text, each followed by a line ending, straight out of the grid's array. A gathering
+     * channel, such as a FileChannel, is handed many rows in one call.
+     *
+     * @param channel    The channel the rows are written to.
+     * @param rowStart   The first row to write.
+     * @param rowEnd     The row to stop at (exclusive).
+     * @param lineEnding Written after every row. It must be 7-bit ASCII.
+     * @return           The number of bytes written.
+     * @throws IllegalStateException if the grid is not ASCII.
+     * @throws IOException if the channel cannot be written to.
+     */
+    public long writeRows (WritableByteChannel channel, int rowStart, int rowEnd, String lineEnding) throws IOException {
+        if (!ascii)
+            throw new IllegalStateException("Only the bytes of ASCII grids are characters.");
+        if (rowStart < 0 || rowEnd > height || rowStart > rowEnd)
+            throw new IndexOutOfBoundsException("Rows " + rowStart + " to " + rowEnd + " of " + height);
+        byte[] ending = lineEnding.getBytes(StandardCharsets.US_ASCII);
+
+        long written = 0;
+        for (int first = rowStart; first < rowEnd; first += ROWS_PER_WRITE) {
+            int rows = Math.min(ROWS_PER_WRITE, rowEnd - first);
+            ByteBuffer[] buffers = new ByteBuffer[rows * 2];
+            long length = 0;
+            for (int i = 0; i < rows; i++) {
+                buffers[2 * i] = ByteBuffer.wrap(cells, (first + i) * width, width);
+                buffers[2 * i + 1] = ByteBuffer.wrap(ending);
+                length += width + ending.length;
+            }
+            if (channel instanceof GatheringByteChannel) {
+                GatheringByteChannel gathering = (GatheringByteChannel) channel;
+                for (long done = 0; done < length; )
+                    done += gathering.write(buffers);
+            } else {
+                for (ByteBuffer buffer : buffers)
+                    while (buffer.hasRemaining())
+                        channel.write(buffer);
+            }
+            written += length;
+        }
+        return written;
+    }
+
+    /**
+     * @return a copy of the grid as an array of characters, one array per row.
+     */
+    public char[][] toArray () {
+        char[][] asciiArt = new char[height][];
+        for (int y = 0; y < height; y++)
+            asciiArt[y] = getRow(y, null);
+        return asciiArt;
+    }
+
+    /**
+     * @return a copy of the grid, which can be changed without changing this one.
+     */
+    public ASCIIGrid copy () {
+        ASCIIGrid copy = new ASCIIGrid(width, height, table);
+        System.arraycopy(cells, 0, copy.cells, 0, cells.length);
+        return copy;
+    }
+
+    /**
+     * Copies rows of another grid with the same width and characters into this one.
+     */
+    void copyRows (ASCIIGrid source, int sourceRow, int row, int rows) {
+        System.arraycopy(source.cells, sourceRow * width, cells, row * width, rows * width);
+    }
+
+    /**
+     * @return the array of the grid, row after row.
+     */
+    byte[] getCells () {
+        return cells;
+    }
+
+    /**
+     * @return the character of every code.
+     */
+    char[] getTable () {
+        return table;
+    }
+
+    private void checkCell (int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height)
+            throw new IndexOutOfBoundsException("Cell (" + x + ", " + y + ") of a " + width + "x" + height + " grid");
+    }
+
+    private void checkRow (int y) {
+        if (y < 0 || y >= height)
+            throw new IndexOutOfBoundsException("Row " + y + " of a grid of " + height);
+    }
+
+    /**
+     * The rows of the grid, separated by line feeds.
+     */
+    @Override
+    public String toString () {
+        StringBuilder text = new StringBuilder(height * (width + 1));
+        for (int y = 0; y < height; y++)
+            text.append(getRow(y)).append('\n');
+        return text.toString();
+    }
+
+    @Override
+    public boolean equals (Object o) {
+        if (!(o instanceof ASCIIGrid))
+            return false;
+        ASCIIGrid other = (ASCIIGrid) o;
+        if (width != other.width || height != other.height)
+            return false;
+        if (table == other.table)
+            return Arrays.equals(cells, other.cells);
+        for (int i = 0; i < cells.length; i++)
+            if (table[cells[i] & 0xff] != other.table[other.cells[i] & 0xff])
+                return false;
+        return true;
+    }
+
+    @Override
+    public int hashCode () {
+        int hash = 31 * width + height;
+        for (byte cell : cells)
+            hash = 31 * hash + table[cell & 0xff];
+        return hash;
+    }
+
+    /**
+     * A row of the grid, read as it is asked for.
+     */
+    private class Row implements CharSequence {
+        private final int offset, length;
+
+        Row (int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length () {
+            return length;
+        }
+
+        @Override
+        public char charAt (int index) {
+            if (index < 0 || index >= length)
+                throw new IndexOutOfBoundsException("Index " + index + " of a row of " + length);
+            return table[cells[offset + index] & 0xff];
+        }
+
+        @Override
+        public CharSequence subSequence (int start, int end) {
+            if (start < 0 || end > length || start > end)
+                throw new IndexOutOfBoundsException("Characters " + start + " to " + end + " of a row of " + length);
+            return new Row(offset + start, end - start);
+        }
+
+        @Override
+        public String toString () {
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++)
+                chars[i] = table[cells[offset + i] & 0xff];
+            return new String(chars);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.medlinchristopher.picturetoascii;
+
+import java.awt.Font;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import com.medlinchristopher.picturetoascii.image.PNGStreamWriter;
+
+/**
+ * Writes ASCII art to a PNG image as its rows of characters come in, for art too large to hold in memory.
+ * <p>
+ * Every band of the image is drawn and encoded as soon as the rows of characters whose glyphs can reach into it have
+ * arrived, after which the rows no glyph of a later band can reach are dropped. Only a few rows of characters and a
+ * few bands of pixels are held at a time. The image is the same as that of ASCIIConversion.writeASCIIToPNG on the
+ * whole art, provided every character of the art is one of the characters the writer is told about.
+ *
+ * @since 1.1
+ */
+public class ASCIIImageWriter implements ASCIIRowListener, ColoredRowListener, Closeable {
+
+    //Number of pixels drawn at a time.
+    private static final int PIXELS_PER_GROUP = 1 << 18;
+
+    private final PNGStreamWriter writer;
+    private final GlyphAtlas atlas;
+    private final int fontSize, spacing;
+    private final int rows, cols, width, height;
+    private final int groupBands;
+    private final char[][] asciiArt;
+    private int[][] colors;
+    private int[] rgb;
+
+    //how far glyphs of the possible characters reach from the point they are drawn at
+    private int minY, maxY;
+
+    private int received;
+    private int nextBand;
+    private boolean closed;
+
+    /**
+     * Writes the PNG header of an image of ASCII art to a stream.
+     *
+     * @param out      The stream the image is written to. It is flushed but not closed.
+     * @param cols     The number of characters in each row of the art.
+     * @param rows     The number of rows of characters.
+     * @param fontSize The size of the font the characters are drawn in.
+     * @param ramp     The characters the art is made of.
+     * @throws IOException if the stream cannot be written to.
+     */
+    public ASCIIImageWriter (OutputStream out, int cols, int rows, int fontSize, CharRamp ramp) throws IOException {
+        this.rows = rows;
+        this.cols = cols;
+        this.fontSize = fontSize;
+        this.spacing = fontSize + 2;
+        this.width = cols * spacing;
+        this.height = (rows * spacing) + spacing;
+        this.atlas = new GlyphAtlas(new Font(GlyphRenderer.FONT_NAME, Font.PLAIN, fontSize));
+        this.asciiArt = new char[rows][];
+        this.groupBands = Math.max(1, PIXELS_PER_GROUP / Math.max(1, width * spacing));
+
+        for (char c : ramp.getChars()) {
+            GlyphAtlas.Glyph glyph = atlas.get(c);
+            if (glyph.width > 0) {
+                minY = Math.min(minY, glyph.y);
+                maxY = Math.max(maxY, glyph.y + glyph.height);
+            }
+        }
+        this.writer = new PNGStreamWriter(out, width, height);
+    }
+
+    @Override
+    public void rowConverted (int row, char[] chars) throws IOException {
+        add(row, chars, null);
+    }
+
+    @Override
+    public void rowConverted (int row, char[] chars, int[] rowColors) throws IOException {
+        if (colors == null) {
+            if (received > 0)
+                throw new IllegalStateException("Colors must be given for every row or for none.");
+            colors = new int[rows][];
+        }
+        add(row, chars, rowColors);
+    }
+
+    private void add (int row, char[] chars, int[] rowColors) throws IOException {
+        if (row != received)
+            throw new IllegalStateException("Expected row " + received + " but got row " + row);
+        if (chars.length != cols)
+            throw new IllegalArgumentException("Row " + row + " has " + chars.length + " characters instead of " + cols);
+        asciiArt[row] = chars.clone();
+        if (colors != null)
+            colors[row] = rowColors.clone();
+        received++;
+        drawBands();
+    }
+
+    /**
+     * Draws and encodes every group of bands whose characters have all arrived.
+     */
+    private void drawBands () throws IOException {
+        int bands = rows + 1;
+        while (nextBand < bands) {
+            int end = Math.min(bands, nextBand + groupBands);
+            if (rowEnd(end - 1) > received)
+                return;
+
+            int y = nextBand * spacing;
+            int h = Math.min(end * spacing, height) - y;
+            if (rgb == null)
+                rgb = new int[width * Math.min(height, groupBands * spacing)];
+            int first = rowStart(nextBand);
+            int last = rowEnd(end - 1);
+            if (last > first) {
+                char[][] art = Arrays.copyOfRange(asciiArt, first, last);
+                int[][] artColors = colors == null ? null : Arrays.copyOfRange(colors, first, last);
+                new GlyphRenderer(art, artColors, fontSize, atlas).render(0, y - first * spacing, width, h, rgb);
+            } else {
+                Arrays.fill(rgb, 0, width * h, 0xffffff);
+            }
+            writer.writeRows(rgb, 0, h);
+
+            //rows above the reach of the next band are done with
+            nextBand = end;
+            for (int i = end < bands ? rowStart(end) - 1 : rows - 1; i >= 0 && asciiArt[i] != null; i--) {
+                asciiArt[i] = null;
+                if (colors != null)
+                    colors[i] = null;
+            }
+        }
+    }
+
+    /**
+     * @return the first row of characters whose glyphs can reach into a band.
+     */
+    private int rowStart (int band) {
+        return Math.max(0, Math.floorDiv(band * spacing - spacing - maxY, spacing));
+    }
+
+    /**
+     * @return the row of characters after the last one whose glyphs can reach into a band.
+     */
+    private int rowEnd (int band) {
+        return Math.max(0, Math.min(rows, Math.floorDiv(band * spacing - minY, spacing) + 1));
+    }
+
+    /**
+     * Finishes the image. Every row of characters must have been written.
+     *
+     * @throws IOException if the stream cannot be written to.
+     * @throws IllegalStateException if rows are missing.
+     */
+    @Override
+    public void close () throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        //fails if rows are missing, but still frees the compressor
+        writer.close();
+    }
+}
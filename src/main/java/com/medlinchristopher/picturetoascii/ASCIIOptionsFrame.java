@@ -4,7 +4,9 @@ import java.awt.*;
 import javax.swing.*;
 import java.awt.event.*;
 import java.io.File;
+import java.io.IOException;
 
+import com.medlinchristopher.picturetoascii.image.Sampling;
 import com.medlinchristopher.picturetoascii.util.OSUtils;
 
 //TODO: Reorganize options GUI.
@@ -17,7 +19,7 @@ import com.medlinchristopher.picturetoascii.util.OSUtils;
 * A JFrame containing various settings for the Picture to ASCII Program.
 * <p>
 * This includes radio buttons for choosing the size of the ASCII character set, a JComboBox for choosing density,
-* and a text field for choosing the output path.
+* a text field for choosing the output path, and a JComboBox for choosing how many pixels of each block are sampled.
 * <p>
 * ASCIIOptionsFrame follows a custom layout.
 *
@@ -59,6 +61,10 @@ public class ASCIIOptionsFrame extends JFrame implements ActionListener
 	
 	// Label for fontSizeTestField
 	private JLabel fontSizeLabel;
+
+	// How many pixels of each block are decoded, from every pixel to a few samples
+	private JComboBox<String> comboSampling;
+	private JLabel samplingLabel;
 	
 	/**
 	* Initializes ASCIIOptionsFrame object.
@@ -74,7 +80,7 @@ public class ASCIIOptionsFrame extends JFrame implements ActionListener
 		
 		//sets frame title, size, visibility, and resizability
 		setTitle("Options");
-		setSize(405,160);
+		setSize(405,190);
 		setVisible(true);
 		setResizable(false);
 		setLocation(windowLocation.x - 400/2, windowLocation.y - 195/2);
@@ -158,6 +164,20 @@ public class ASCIIOptionsFrame extends JFrame implements ActionListener
 		fontSizeLabel.setLocation(12, 85);
 		fontSizeLabel.setVisible(true);
 		getContentPane().add(fontSizeLabel);
+
+		//initializes samplingLabel and comboSampling and adds to frame
+		samplingLabel = new JLabel();
+		samplingLabel.setText("Sampling (exact is slowest):");
+		samplingLabel.setSize(218, 51);
+		samplingLabel.setLocation(12, 115);
+		getContentPane().add(samplingLabel);
+
+		String comboSampling_tmp[]={"Exact", "Balanced", "Fast"};
+		comboSampling = new JComboBox<String>(comboSampling_tmp);
+		comboSampling.setLocation(294, 130);
+		comboSampling.setSize(96, 25);
+		comboSampling.addActionListener(this);
+		getContentPane().add(comboSampling);
 	}
 	
 	/**
@@ -189,14 +209,31 @@ public class ASCIIOptionsFrame extends JFrame implements ActionListener
 			acf.setPixelDensity(Integer.parseInt((String)comboNumberOfPixels.getSelectedItem()));
 		}
 	
+		else if (source == comboSampling)
+		{
+			acf.setSampling(Sampling.forLabel((String)comboSampling.getSelectedItem()));
+		}
+	
 		else if (source == comboCharSet) 
 		{
-			if (comboNumberOfPixels.getSelectedItem() == "Small")
+			String charSet = (String)comboCharSet.getSelectedItem();
+			if (charSet.equals("Small"))
 				acf.setCharSetSize(0);
-			else if (comboNumberOfPixels.getSelectedItem() == "Medium")
+			else if (charSet.equals("Medium"))
 				acf.setCharSetSize(1);
-			else
+			else if (charSet.equals("Large"))
 				acf.setCharSetSize(2);
+			//anything else typed into the box is a custom ramp, either the path to a file holding one or the characters themselves
+			else if (new File(charSet).isFile())
+			{
+				try {
+					acf.setCharRamp(CharRamp.fromFile(new File(charSet)));
+				} catch (IOException | IllegalArgumentException ex) {
+					JOptionPane.showMessageDialog(this, "Could not read character ramp: " + ex.getMessage(), "WARNING:", JOptionPane.WARNING_MESSAGE);
+				}
+			}
+			else if (!charSet.isEmpty())
+				acf.setCharRamp(CharRamp.of(charSet));
 		}
 	
 	}	
@@ -0,0 +1,23 @@
+package com.medlinchristopher.picturetoascii;
+
+import java.io.IOException;
+
+/**
+ * Receives the rows of a piece of ASCII art as they are produced.
+ * <p>
+ * Used by StreamingConversion, which never holds more than a strip of the image in memory, so rows can be
+ * written out as soon as they are ready.
+ *
+ * @since 1.1
+ */
+public interface ASCIIRowListener {
+
+    /**
+     * Called once for every row of characters, in order from the top row down.
+     *
+     * @param row   The index of the row.
+     * @param chars The characters of the row. The array may be reused once this method returns.
+     * @throws IOException if the row cannot be written.
+     */
+    void rowConverted (int row, char[] chars) throws IOException;
+}
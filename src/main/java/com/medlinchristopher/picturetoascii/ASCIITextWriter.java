@@ -0,0 +1,245 @@
+package com.medlinchristopher.picturetoascii;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes ASCII art as UTF-8 text, one line per row of characters.
+ * <p>
+ * Each row is laid out once in a reusable character buffer, with the separator between cells and the line ending
+ * after the last one, and encoded into a reusable byte buffer that is handed to the channel whenever it fills up.
+ * No objects are created per cell or per row. Rows can be written all at once or one at a time as a conversion
+ * produces them, since the writer is also an ASCIIRowListener.
+ * <p>
+ * The cells of an ASCIIGrid whose characters are all ASCII are already the bytes of the text. They are copied into
+ * the byte buffer as they are, without the encoder, and with no separator they are handed to the channel straight
+ * from the grid.
+ *
+ * @since 1.1
+ */
+public class ASCIITextWriter implements ASCIIRowListener, Closeable {
+
+    /** Separator written between the characters of a row by default, which keeps the art roughly square. */
+    public static final String DEFAULT_SEPARATOR = " ";
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final WritableByteChannel channel;
+    private final boolean closeChannel;
+    private final char[] separator;
+    private final char[] lineEnding;
+    //the separator and line ending as bytes, or null if they are not ASCII
+    private final byte[] separatorBytes;
+    private final byte[] lineEndingBytes;
+
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    private char[] line = new char[0];
+    private char[] gridRow = new char[0];
+    private boolean closed;
+
+    /**
+     * Creates a writer that replaces the contents of a file, using the default separator and the system line ending.
+     *
+     * @param path The file to be written.
+     * @throws IOException if the file cannot be opened.
+     */
+    public ASCIITextWriter (Path path) throws IOException {
+        this(path, DEFAULT_SEPARATOR, System.lineSeparator());
+    }
+
+    /**
+     * Creates a writer that replaces the contents of a file.
+     *
+     * @param path       The file to be written.
+     * @param separator  Written between the characters of each row. May be empty.
+     * @param lineEnding Written after every row.
+     * @throws IOException if the file cannot be opened.
+     */
+    public ASCIITextWriter (Path path, String separator, String lineEnding) throws IOException {
+        this(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE),
+                true, separator, lineEnding);
+    }
+
+    /**
+     * Creates a writer on a channel, which is left open when the writer is closed.
+     *
+     * @param channel    The channel the text is written to.
+     * @param separator  Written between the characters of each row. May be empty.
+     * @param lineEnding Written after every row.
+     */
+    public ASCIITextWriter (WritableByteChannel channel, String separator, String lineEnding) {
+        this(channel, false, separator, lineEnding);
+    }
+
+    private ASCIITextWriter (WritableByteChannel channel, boolean closeChannel, String separator, String lineEnding) {
+        this.channel = channel;
+        this.closeChannel = closeChannel;
+        this.separator = separator.toCharArray();
+        this.lineEnding = lineEnding.toCharArray();
+        this.separatorBytes = asciiBytes(separator);
+        this.lineEndingBytes = asciiBytes(lineEnding);
+    }
+
+    private static byte[] asciiBytes (String text) {
+        for (int i = 0; i < text.length(); i++)
+            if (text.charAt(i) > 127)
+                return null;
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Writes every row of a piece of ASCII art.
+     *
+     * @param asciiArt The ASCII art to be written.
+     * @throws IOException if the text cannot be written.
+     */
+    public void write (char[][] asciiArt) throws IOException {
+        for (char[] row : asciiArt)
+            writeRow(row);
+    }
+
+    /**
+     * Writes every row of a grid of ASCII art.
+     *
+     * @param grid The ASCII art to be written.
+     * @throws IOException if the text cannot be written.
+     */
+    public void write (ASCIIGrid grid) throws IOException {
+        if (closed)
+            throw new IOException("Writer is closed.");
+
+        if (!grid.isASCII() || separatorBytes == null || lineEndingBytes == null) {
+            if (gridRow.length != grid.getWidth())
+                gridRow = new char[grid.getWidth()];
+            for (int y = 0; y < grid.getHeight(); y++)
+                writeRow(grid.getRow(y, gridRow));
+            return;
+        }
+
+        if (separatorBytes.length == 0) {
+            //the rows are the text, so they go to the channel as they are
+            drain();
+            grid.writeRows(channel, 0, grid.getHeight(), new String(lineEnding));
+            return;
+        }
+
+        byte[] cells = grid.getCells();
+        for (int y = 0; y < grid.getHeight(); y++) {
+            int offset = y * grid.getStride();
+            for (int col = 0; col < grid.getWidth(); col++) {
+                if (bytes.remaining() < separatorBytes.length + 1)
+                    drain();
+                if (col > 0)
+                    bytes.put(separatorBytes);
+                bytes.put(cells[offset + col]);
+            }
+            if (bytes.remaining() < lineEndingBytes.length)
+                drain();
+            bytes.put(lineEndingBytes);
+        }
+    }
+
+    /**
+     * Writes one row of characters followed by the line ending.
+     *
+     * @param row The characters of the row.
+     * @throws IOException if the text cannot be written.
+     */
+    public void writeRow (char[] row) throws IOException {
+        if (closed)
+            throw new IOException("Writer is closed.");
+
+        int length = row.length + Math.max(0, row.length - 1) * separator.length + lineEnding.length;
+        if (line.length < length)
+            line = new char[length];
+
+        int n = 0;
+        for (int col = 0; col < row.length; col++) {
+            if (col > 0) {
+                System.arraycopy(separator, 0, line, n, separator.length);
+                n += separator.length;
+            }
+            line[n++] = row[col];
+        }
+        System.arraycopy(lineEnding, 0, line, n, lineEnding.length);
+        n += lineEnding.length;
+
+        encode(CharBuffer.wrap(line, 0, n));
+    }
+
+    /**
+     * Writes text exactly as it is, without a separator or line ending, such as markup around the rows.
+     *
+     * @param text The text to write.
+     * @throws IOException if the text cannot be written.
+     */
+    public void writeText (CharSequence text) throws IOException {
+        if (closed)
+            throw new IOException("Writer is closed.");
+        encode(CharBuffer.wrap(text));
+    }
+
+    private void encode (CharBuffer chars) throws IOException {
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, false);
+            if (result.isOverflow())
+                drain();
+            else if (result.isUnderflow())
+                break;
+            else
+                result.throwException();
+        }
+    }
+
+    /**
+     * Writes a row as it comes out of a conversion.
+     */
+    @Override
+    public void rowConverted (int row, char[] chars) throws IOException {
+        writeRow(chars);
+    }
+
+    /**
+     * Hands everything written so far to the channel.
+     *
+     * @throws IOException if the text cannot be written.
+     */
+    public void flush () throws IOException {
+        drain();
+    }
+
+    /**
+     * Flushes the writer, and closes the file if it was opened by this writer.
+     *
+     * @throws IOException if the text cannot be written.
+     */
+    @Override
+    public void close () throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            drain();
+        } finally {
+            if (closeChannel)
+                channel.close();
+        }
+    }
+
+    private void drain () throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining())
+            channel.write(bytes);
+        bytes.clear();
+    }
+}
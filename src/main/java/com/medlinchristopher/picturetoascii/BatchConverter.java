@@ -0,0 +1,696 @@
+package com.medlinchristopher.picturetoascii;
+
+import java.awt.Dimension;
+import javax.imageio.*;
+import javax.imageio.stream.FileImageOutputStream;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.medlinchristopher.picturetoascii.image.AnimationReader;
+import com.medlinchristopher.picturetoascii.image.LuminanceIndex;
+import com.medlinchristopher.picturetoascii.image.MemoryPlanner;
+import com.medlinchristopher.picturetoascii.image.Sampling;
+import com.medlinchristopher.picturetoascii.metrics.ConversionMetrics;
+
+/**
+ * Headless command line front end converting any number of images on a pool of worker threads.
+ * <p>
+ * Takes the same options as ASCIIOptionsFrame, followed by image files, directories (whose images are converted)
+ * and glob patterns such as photos/*.jpg or scans/**.png. Each image is decoded a strip at a time by
+ * StreamingConversion and written into the output directory, as a PNG image with black or colored characters, as a
+ * text file, or as colored text for terminals or browsers. Animated images,
+ * and lists of frames given with --sequence, become animated GIFs or numbered text files. A summary of the
+ * throughput is printed at the end, and the exit code tells scripts how the run went: see EXIT_OK, EXIT_FAILED and
+ * EXIT_USAGE.
+ *
+ * @since 1.1
+ */
+public class BatchConverter {
+
+    /** Exit code when every image was converted. */
+    public static final int EXIT_OK = 0;
+    /** Exit code when at least one image could not be converted. */
+    public static final int EXIT_FAILED = 1;
+    /** Exit code when the arguments are wrong or no images were found. */
+    public static final int EXIT_USAGE = 2;
+
+    private static final String USAGE =
+            "Usage: picture-to-ascii [options] <file|directory|glob>...\n" +
+            "       picture-to-ascii --server [options]   (see picture-to-ascii --server --help)\n" +
+            "\n" +
+            "Options:\n" +
+            "  -r, --ramp <small|medium|large|file>  characters to draw with (default medium)\n" +
+            "      --ramp-chars <chars>              custom characters, darkest first\n" +
+            "  -p, --pixels-per-char <n>             pixels per ASCII character (default 1)\n" +
+            "      --columns <n>                     fit the art to n characters across, with as many rows as keep\n" +
+            "                                        the proportions of the image at --aspect\n" +
+            "      --scale <x>[,<y>]                 pixels across and down each character, which may be\n" +
+            "                                        fractional (y defaults to x times --aspect)\n" +
+            "      --aspect <r>                      height of a character over its width with --columns and\n" +
+            "                                        --scale (default 2, as in most terminals)\n" +
+            "  -f, --font-size <n>                   font size of the output image, 1-20 (default 5)\n" +
+            "  -s, --sampling <exact|balanced|fast>  average every pixel of each block, or only 3x3 or 2x2 samples\n" +
+            "                                        of it, decoding large blocks faster (default exact; png and\n" +
+            "                                        txt only)\n" +
+            "      --shape <2|3>                     choose characters by the shape of a 2x2 or 3x3 grid of each block\n" +
+            "                                        instead of its brightness alone, keeping edges sharp (png and\n" +
+            "                                        txt only, with -p of at least 8 or 12)\n" +
+            "  -o, --output <dir>                    output folder (default ~/.picture-to-ascii/output)\n" +
+            "      --format <png|txt|ansi|ansi256|html>\n" +
+            "                                        write images, text files, colored text for terminals (.ans)\n" +
+            "                                        or colored HTML pages (default png)\n" +
+            "      --color                           draw the characters of png images in the colors of the image\n" +
+            "      --sequence <name>                 treat the inputs as the frames of one animation\n" +
+            "      --delay <ms>                      time each frame of a sequence is shown (default 100)\n" +
+            "      --no-cache                        always convert, without using or filling the cache\n" +
+            "  -t, --threads <n>                     images converted at once, up to " + ConversionServer.MAX_THREADS +
+            " (default: number of cores)\n" +
+            "      --metrics                         time the stages of conversion and print them at the end\n" +
+            "  -h, --help                            show this message\n" +
+            "\n" +
+            "Exit codes: 0 all converted, 1 some images failed, 2 bad arguments or no images found.";
+
+    private CharRamp ramp = CharRamp.MEDIUM;
+    private int pixelsPerChar = 1;
+    //art fitted to a number of columns, or to blocks of a fractional size, instead of whole blocks of pixelsPerChar
+    private int columns;
+    private double scaleX, scaleY;
+    private double aspect = 2;
+    private int fontSize = 5;
+    private Sampling sampling = Sampling.EXACT;
+    private int shapeCells;
+    private ShapeMatcher shapes;
+    private File outputDir;
+    private boolean text;
+    private ColoredTextWriter.Format colorFormat;
+    private boolean color;
+    private String sequence;
+    private int delay = AnimationReader.DEFAULT_DELAY;
+    private File cacheDir;
+    private ConversionCache cache;
+    private int threads = Math.min(Runtime.getRuntime().availableProcessors(), ConversionServer.MAX_THREADS);
+    private final List<File> inputs = new ArrayList<>();
+    //the name every input's output is written under, without the extension of the output
+    private final Map<File, String> outputNames = new HashMap<>();
+
+    private final PrintStream out;
+    private final PrintStream err;
+
+    private BatchConverter (PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * Runs the converter on command line arguments, printing to System.out and System.err.
+     *
+     * @param args          The command line arguments.
+     * @param defaultOutput The output folder to use when none is given, or null to require one.
+     * @param cacheDir      The folder of the conversion cache, or null to go without one.
+     * @return              The exit code.
+     */
+    public static int run (String[] args, File defaultOutput, File cacheDir) {
+        BatchConverter converter = new BatchConverter(System.out, System.err);
+        converter.outputDir = defaultOutput;
+        converter.cacheDir = cacheDir;
+        try {
+            if (!converter.parse(args))
+                return EXIT_OK;
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println("picture-to-ascii: " + e.getMessage());
+            System.err.println(USAGE);
+            return EXIT_USAGE;
+        }
+        int code = converter.convertAll();
+        if (ConversionMetrics.isEnabled())
+            System.err.print(ConversionMetrics.report());
+        return code;
+    }
+
+    /**
+     * Reads options and expands inputs.
+     *
+     * @return false if only the help was asked for.
+     */
+    private boolean parse (String[] args) throws IOException {
+        List<String> patterns = new ArrayList<>();
+        boolean blockSize = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-h":
+                case "--help":
+                    out.println(USAGE);
+                    return false;
+                case "-r":
+                case "--ramp":
+                    ramp = parseRamp(value(args, ++i, arg));
+                    break;
+                case "--ramp-chars":
+                    ramp = CharRamp.of(value(args, ++i, arg));
+                    break;
+                case "-p":
+                case "--pixels-per-char":
+                    pixelsPerChar = number(value(args, ++i, arg), arg, 1, Integer.MAX_VALUE);
+                    blockSize = true;
+                    break;
+                case "--columns":
+                    columns = number(value(args, ++i, arg), arg, 1, Integer.MAX_VALUE);
+                    break;
+                case "--scale":
+                    String scale = value(args, ++i, arg);
+                    int comma = scale.indexOf(',');
+                    scaleX = decimal(comma < 0 ? scale : scale.substring(0, comma), arg);
+                    scaleY = comma < 0 ? 0 : decimal(scale.substring(comma + 1), arg);
+                    break;
+                case "--aspect":
+                    aspect = decimal(value(args, ++i, arg), arg);
+                    break;
+                case "-f":
+                case "--font-size":
+                    fontSize = number(value(args, ++i, arg), arg, 1, 20);
+                    break;
+                case "-s":
+                case "--sampling":
+                    sampling = Sampling.forLabel(value(args, ++i, arg));
+                    break;
+                case "--shape":
+                    shapeCells = number(value(args, ++i, arg), arg, 2, 3);
+                    break;
+                case "-o":
+                case "--output":
+                    outputDir = new File(value(args, ++i, arg));
+                    break;
+                case "--format":
+                    parseFormat(value(args, ++i, arg));
+                    break;
+                case "--color":
+                    color = true;
+                    break;
+                case "--sequence":
+                    sequence = value(args, ++i, arg);
+                    break;
+                case "--delay":
+                    delay = number(value(args, ++i, arg), arg, 0, Integer.MAX_VALUE);
+                    break;
+                case "--no-cache":
+                    cacheDir = null;
+                    break;
+                case "-t":
+                case "--threads":
+                    threads = number(value(args, ++i, arg), arg, 1, ConversionServer.MAX_THREADS);
+                    break;
+                case "--metrics":
+                    ConversionMetrics.setEnabled(true);
+                    break;
+                default:
+                    if (arg.startsWith("-") && arg.length() > 1)
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                    patterns.add(arg);
+            }
+        }
+
+        if (color && (text || colorFormat != null))
+            throw new IllegalArgumentException("--color only applies to png images; use --format ansi, ansi256 or html for colored text.");
+        if (sampling != Sampling.EXACT && (color || colorFormat != null || sequence != null))
+            throw new IllegalArgumentException("--sampling only applies to black and white png images and txt files, not to sequences.");
+        if (shapeCells > 0 && (color || colorFormat != null || sequence != null))
+            throw new IllegalArgumentException("--shape only applies to black and white png images and txt files, not to sequences.");
+        if (shapeCells > 0 && pixelsPerChar < ShapeMatcher.MIN_PIXELS_PER_CELL * shapeCells)
+            throw new IllegalArgumentException("--shape " + shapeCells + " needs at least " + ShapeMatcher.MIN_PIXELS_PER_CELL * shapeCells
+                    + " pixels per character (-p), below which brightness alone is much faster.");
+        if (shapeCells > 0 && sampling != Sampling.EXACT)
+            throw new IllegalArgumentException("--shape needs every pixel of each block, so it cannot be combined with --sampling.");
+        if (columns > 0 && scaleX > 0)
+            throw new IllegalArgumentException("Give either --columns or --scale, not both.");
+        if (isFitted() && blockSize)
+            throw new IllegalArgumentException("--columns and --scale set the size of the blocks, so they cannot be combined with -p.");
+        if (isFitted() && (color || colorFormat != null || sequence != null || sampling != Sampling.EXACT || shapeCells > 0))
+            throw new IllegalArgumentException("--columns and --scale only apply to black and white png images and txt files, not to sequences, --sampling or --shape.");
+        if (scaleX > 0 && scaleY == 0)
+            scaleY = scaleX * aspect;
+        if (sequence != null && colorFormat != null)
+            throw new IllegalArgumentException("Sequences can only be written as png or txt.");
+        if (outputDir == null)
+            throw new IllegalArgumentException("No output folder given.");
+        if (!outputDir.isDirectory() && !outputDir.mkdirs())
+            throw new IllegalArgumentException("Cannot create output folder " + outputDir);
+        for (String pattern : patterns)
+            expand(pattern);
+        if (inputs.isEmpty())
+            throw new IllegalArgumentException("No images found.");
+        if (sequence == null)
+            nameOutputs();
+        if (shapeCells > 0)
+            shapes = new ShapeMatcher(ramp, shapeCells);
+        if (cacheDir != null && sequence == null) {
+            try {
+                cache = new ConversionCache(cacheDir, ConversionCache.DEFAULT_MEMORY_BYTES, ConversionCache.DEFAULT_DISK_BYTES);
+            } catch (IOException e) {
+                err.println("picture-to-ascii: not using the cache: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    private static String value (String[] args, int i, String option) {
+        if (i >= args.length)
+            throw new IllegalArgumentException("Missing value for " + option);
+        return args[i];
+    }
+
+    private static int number (String value, String option, int min, int max) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n >= min && n <= max)
+                return n;
+        } catch (NumberFormatException ignore) {
+        }
+        throw new IllegalArgumentException("Improper argument for " + option + ": " + value);
+    }
+
+    private static double decimal (String value, String option) {
+        try {
+            double n = Double.parseDouble(value);
+            if (n > 0 && !Double.isInfinite(n))
+                return n;
+        } catch (NumberFormatException ignore) {
+        }
+        throw new IllegalArgumentException("Improper argument for " + option + ": " + value);
+    }
+
+    /**
+     * @return true if the art is fitted to a number of columns or to blocks of a fractional size.
+     */
+    private boolean isFitted () {
+        return columns > 0 || scaleX > 0;
+    }
+
+    /**
+     * @return the size of the art of an image when it is fitted.
+     */
+    private Dimension fittedSize (File input) throws IOException {
+        Dimension image = PreviewRenderer.readSize(input);
+        if (columns > 0)
+            return ASCIIConversion.sizeForColumns(image.width, image.height, columns, aspect);
+        return ASCIIConversion.scaledSize(image.width, image.height, scaleX, scaleY);
+    }
+
+    private void parseFormat (String format) {
+        text = false;
+        colorFormat = null;
+        switch (format) {
+            case "png":
+                break;
+            case "txt":
+                text = true;
+                break;
+            case "ansi":
+                colorFormat = ColoredTextWriter.Format.ANSI;
+                break;
+            case "ansi256":
+                colorFormat = ColoredTextWriter.Format.ANSI_256;
+                break;
+            case "html":
+                colorFormat = ColoredTextWriter.Format.HTML;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown format " + format);
+        }
+    }
+
+    private static CharRamp parseRamp (String value) throws IOException {
+        switch (value.toLowerCase()) {
+            case "small":
+                return CharRamp.SMALL;
+            case "medium":
+                return CharRamp.MEDIUM;
+            case "large":
+                return CharRamp.LARGE;
+            default:
+                File file = new File(value);
+                if (!file.isFile())
+                    throw new IllegalArgumentException("Unknown ramp " + value);
+                return CharRamp.fromFile(file);
+        }
+    }
+
+    /**
+     * Adds the images named by a file, a directory or a glob pattern.
+     */
+    private void expand (String pattern) throws IOException {
+        File file = new File(pattern);
+        if (file.isFile()) {
+            inputs.add(file);
+            return;
+        }
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children)
+                    if (child.isFile() && isImageName(child.getName()))
+                        inputs.add(child);
+            }
+            return;
+        }
+
+        //walk from the deepest folder of the pattern that has no wildcards in it
+        String normalized = pattern.replace('\\', '/');
+        int wildcard = indexOfWildcard(normalized);
+        if (wildcard < 0)
+            throw new IllegalArgumentException("No such file: " + pattern);
+        int slash = normalized.lastIndexOf('/', wildcard);
+        final Path base = Paths.get(slash < 0 ? "." : slash == 0 ? "/" : normalized.substring(0, slash));
+        final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + normalized.substring(slash + 1));
+        final boolean recursive = normalized.contains("**") || normalized.indexOf('/', wildcard) >= 0;
+        if (!Files.isDirectory(base))
+            return;
+
+        final List<File> matches = new ArrayList<>();
+        Files.walkFileTree(base, EnumSet.noneOf(FileVisitOption.class), recursive ? Integer.MAX_VALUE : 1, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile (Path path, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && matcher.matches(base.relativize(path)))
+                    matches.add(path.toFile());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(matches);
+        inputs.addAll(matches);
+    }
+
+    /**
+     * Drops inputs found more than once, and gives every other input the name its output is written under: its name
+     * without the extension, or with it when another input has the same name, such as a.jpg and a.png.
+     *
+     * @throws IllegalArgumentException if inputs in different folders have the same name, since they would be
+     *                                  written to the same file at the same time.
+     */
+    private void nameOutputs () throws IOException {
+        Set<File> seen = new HashSet<>();
+        Map<String, Integer> counts = new HashMap<>();
+        for (Iterator<File> it = inputs.iterator(); it.hasNext(); ) {
+            File input = it.next();
+            if (!seen.add(input.getCanonicalFile())) {
+                it.remove();
+                continue;
+            }
+            String key = baseName(input).toLowerCase(Locale.ROOT);
+            counts.put(key, counts.containsKey(key) ? counts.get(key) + 1 : 1);
+        }
+
+        //compared without case, as the output folder may not tell names apart by case
+        Map<String, File> taken = new HashMap<>();
+        for (File input : inputs) {
+            String name = counts.get(baseName(input).toLowerCase(Locale.ROOT)) > 1 ? input.getName() : baseName(input);
+            File other = taken.put(name.toLowerCase(Locale.ROOT), input);
+            if (other != null)
+                throw new IllegalArgumentException(other + " and " + input + " would both be written as " + name
+                        + "; convert them into different output folders.");
+            outputNames.put(input, name);
+        }
+    }
+
+    private static int indexOfWildcard (String pattern) {
+        for (int i = 0; i < pattern.length(); i++)
+            if ("*?[{".indexOf(pattern.charAt(i)) >= 0)
+                return i;
+        return -1;
+    }
+
+    private static boolean isImageName (String name) {
+        int dot = name.lastIndexOf('.');
+        return dot > 0 && ImageIO.getImageReadersBySuffix(name.substring(dot + 1).toLowerCase()).hasNext();
+    }
+
+    /**
+     * Converts every input on a bounded pool and prints a summary.
+     */
+    private int convertAll () {
+        if (sequence != null)
+            return convertSequence();
+
+        final AtomicInteger converted = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicLong pixels = new AtomicLong();
+
+        //at most a couple of waiting jobs per thread; beyond that the submitting thread converts the image itself
+        int poolSize = Math.max(1, Math.min(threads, inputs.size()));
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(poolSize * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+
+        long start = System.nanoTime();
+        for (final File input : inputs) {
+            pool.execute(new Runnable() {
+                @Override
+                public void run () {
+                    try {
+                        File output = convert(input);
+                        pixels.addAndGet(pixelCount(input));
+                        converted.incrementAndGet();
+                        out.println(input + " -> " + output);
+                    } catch (IOException | RuntimeException e) {
+                        failed.incrementAndGet();
+                        err.println("picture-to-ascii: failed to convert " + input + ": " + e.getMessage());
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                //keep waiting, a batch can take a long time
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+            err.println("picture-to-ascii: interrupted before every image was converted.");
+            return EXIT_FAILED;
+        }
+
+        double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+        out.printf("Converted %d of %d images in %.2f s: %.2f images/s, %.2f MP/s%n",
+                converted.get(), inputs.size(), seconds, converted.get() / seconds, pixels.get() / 1e6 / seconds);
+        if (cache != null)
+            out.println(cache);
+        return failed.get() == 0 ? EXIT_OK : EXIT_FAILED;
+    }
+
+    /**
+     * Converts all the inputs as the frames of one animation.
+     */
+    private int convertSequence () {
+        long start = System.nanoTime();
+        long pixels = 0;
+        int frames;
+        File output;
+        try (AnimationReader reader = AnimationReader.open(inputs, delay)) {
+            output = animate(reader, sequence);
+            for (File input : inputs)
+                pixels += pixelCount(input);
+            frames = inputs.size();
+        } catch (IOException | RuntimeException e) {
+            err.println("picture-to-ascii: failed to convert sequence " + sequence + ": " + e.getMessage());
+            return EXIT_FAILED;
+        }
+
+        double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+        out.println(sequence + " -> " + output);
+        out.printf("Converted %d frames in %.2f s: %.2f frames/s, %.2f MP/s%n",
+                frames, seconds, frames / seconds, pixels / 1e6 / seconds);
+        return EXIT_OK;
+    }
+
+    private File convert (File input) throws IOException {
+        if (cache == null)
+            return convertUncached(input);
+
+        //a hit skips decoding, conversion and rendering altogether
+        String key = ConversionCache.key(input, ramp, pixelsPerChar, fontSize, GlyphRenderer.FONT_NAME, formatSetting(),
+                sampling.getStep(pixelsPerChar), shapeCells, fitSetting());
+        File cached = cache.restore(key, outputDir, outputNames.get(input));
+        if (cached != null)
+            return cached;
+        File output = convertUncached(input);
+        if (output.isFile()) {
+            try {
+                cache.store(key, output);
+            } catch (IOException e) {
+                err.println("picture-to-ascii: failed to cache " + output + ": " + e.getMessage());
+            }
+        }
+        return output;
+    }
+
+    /**
+     * The format setting the cache keys conversions by.
+     */
+    private String formatSetting () {
+        if (colorFormat != null)
+            return colorFormat.name().toLowerCase();
+        if (text)
+            return ConversionCache.TEXT;
+        return color ? ConversionCache.IMAGE + "-color" : ConversionCache.IMAGE;
+    }
+
+    /**
+     * The fitting setting the cache keys conversions by, or null when blocks are pixelsPerChar square.
+     */
+    private String fitSetting () {
+        if (columns > 0)
+            return "columns=" + columns + ",aspect=" + aspect;
+        return scaleX > 0 ? "scale=" + scaleX + "," + scaleY : null;
+    }
+
+    private File convertUncached (File input) throws IOException {
+        if (colorFormat != null) {
+            //colored text is only written for the first frame of an animation
+            File output = new File(outputDir, outputNames.get(input) + (colorFormat == ColoredTextWriter.Format.HTML ? ".html" : ".ans"));
+            try (ColoredTextWriter writer = new ColoredTextWriter(output.toPath(), colorFormat)) {
+                StreamingConversion.convert(input, pixelsPerChar, ramp, null, writer);
+            }
+            return output;
+        }
+
+        if (isFitted()) {
+            //only the first frame of an animation is fitted
+            ASCIIGrid grid = StreamingConversion.convertToGrid(input, fittedSize(input), ramp);
+            if (text) {
+                //one character per column, as in a terminal
+                File output = new File(outputDir, outputNames.get(input) + ".txt");
+                try (ASCIITextWriter writer = new ASCIITextWriter(output.toPath(), "", System.lineSeparator())) {
+                    writer.write(grid);
+                }
+                return output;
+            }
+            File output = new File(outputDir, outputNames.get(input) + ".png");
+            try (OutputStream stream = new BufferedOutputStream(new FileOutputStream(output))) {
+                ASCIIConversion.writeASCIIToPNG(grid, null, fontSize, stream);
+            }
+            return output;
+        }
+
+        if (AnimationReader.isAnimated(input)) {
+            try (AnimationReader reader = AnimationReader.open(input)) {
+                return animate(reader, outputNames.get(input));
+            }
+        }
+
+        //coarse blocks can be averaged from a few decoded samples each, into art small enough to hold
+        int step = sampling.getStep(pixelsPerChar);
+        if (text) {
+            //rows go straight to the file as they are converted, so the art is never held in memory
+            File output = new File(outputDir, outputNames.get(input) + ".txt");
+            try (ASCIITextWriter writer = new ASCIITextWriter(output.toPath())) {
+                if (shapes != null)
+                    writer.write(StreamingConversion.convertToGrid(input, pixelsPerChar, shapes));
+                else if (step > 1)
+                    writer.write(subsampledASCII(input, step));
+                else
+                    StreamingConversion.convert(input, pixelsPerChar, ramp, null, writer);
+            }
+            return output;
+        }
+
+        File output = new File(outputDir, outputNames.get(input) + ".png");
+        Dimension size = PreviewRenderer.readSize(input);
+        if (step == 1 && shapes == null && MemoryPlanner.getDefault().plan(size.width, size.height, pixelsPerChar, fontSize, color, false).getOutput() == MemoryPlanner.Path.STREAMING) {
+            //too much art to hold: every row is drawn as soon as it is converted
+            try (OutputStream stream = new BufferedOutputStream(new FileOutputStream(output))) {
+                StreamingConversion.convertToPNG(input, pixelsPerChar, ramp, fontSize, color, null, stream);
+            }
+            return output;
+        }
+
+        ASCIIGrid grid;
+        int[][] colors = null;
+        if (color) {
+            colors = new int[size.height / pixelsPerChar][size.width / pixelsPerChar];
+            grid = StreamingConversion.convertToColoredGrid(input, pixelsPerChar, ramp, colors, null);
+        } else if (shapes != null) {
+            grid = StreamingConversion.convertToGrid(input, pixelsPerChar, shapes);
+        } else if (step > 1) {
+            grid = subsampledASCII(input, step);
+        } else {
+            grid = StreamingConversion.convertToGrid(input, pixelsPerChar, ramp, null);
+        }
+        if (grid.getWidth() == 0 || grid.getHeight() == 0)
+            throw new IOException("Image is smaller than " + pixelsPerChar + " pixels per character.");
+
+        try (OutputStream stream = new BufferedOutputStream(new FileOutputStream(output))) {
+            ASCIIConversion.writeASCIIToPNG(grid, colors, fontSize, stream);
+        }
+        return output;
+    }
+
+    /**
+     * Converts an image from every step-th pixel of every step-th row.
+     */
+    private ASCIIGrid subsampledASCII (File input, int step) throws IOException {
+        LuminanceIndex index = LuminanceIndex.build(input, step);
+        return ASCIIConversion.imageToASCIIGrid(index, pixelsPerChar, pixelsPerChar, ramp);
+    }
+
+    /**
+     * Writes an animation as an animated GIF, or as one text file per frame.
+     */
+    private File animate (AnimationReader reader, String name) throws IOException {
+        if (text) {
+            TextAnimationWriter writer = new TextAnimationWriter(outputDir, name);
+            SequenceConversion.convert(reader, pixelsPerChar, ramp, writer);
+            return new File(outputDir, name + "-*.txt");
+        }
+
+        File output = new File(outputDir, name + ".gif");
+        output.delete();
+        boolean written = false;
+        try (ImageOutputStream stream = new FileImageOutputStream(output);
+             GIFAnimationWriter writer = new GIFAnimationWriter(stream, fontSize, true)) {
+            SequenceConversion.convert(reader, pixelsPerChar, ramp, writer);
+            written = true;
+        } finally {
+            if (!written)
+                output.delete();
+        }
+        return output;
+    }
+
+    private static String baseName (File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * Reads the size of an image from its header, for the summary only.
+     *
+     * @return the number of pixels of the image, or 0 if its header cannot be read.
+     */
+    private static long pixelCount (File file) {
+        try (ImageInputStream stream = ImageIO.createImageInputStream(file)) {
+            if (stream == null)
+                return 0;
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext())
+                return 0;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                return (long) reader.getWidth(reader.getMinIndex()) * reader.getHeight(reader.getMinIndex());
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            //the image was converted all the same, it is only left out of the throughput
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.medlinchristopher.picturetoascii;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * A ramp of characters ordered from darkest to brightest, used to turn greyscale values into characters.
+ * <p>
+ * The character for every greyscale value from 0 to 255 is worked out once, when the ramp is created, so
+ * turning a greyscale value into a character is a single array lookup.
+ * <p>
+ * The small, medium and large character sets picture-to-ascii has always used are available as SMALL, MEDIUM
+ * and LARGE, and map greyscale values exactly as they always have. Other ramps can be of any length, and spread
+ * their characters evenly over the greyscale values.
+ * <p>
+ * Every character the ramp can give also has a one-byte code, under which ASCIIGrid stores it: the character itself
+ * when all of them are 7-bit ASCII, and otherwise its position in the ramp's table of codes.
+ *
+ * @since 1.1
+ */
+public final class CharRamp {
+
+    /** 21 characters, the "Small" character set. */
+    public static final CharRamp SMALL = new CharRamp("@B&#abqZQJXvxf|-~l:` ", 12);
+
+    /** 40 characters, the "Medium" character set. */
+    public static final CharRamp MEDIUM = new CharRamp("@B8&M#oakbpqmZ0QCJYXcvnxjf/|?-+~!l;:^`. ", 6);
+
+    /** 61 characters, the "Large" character set. */
+    public static final CharRamp LARGE = new CharRamp("@B%8&WM#*oahkbdpqwmZO0QLCJUYXzcvunxrjft/|1?-_+~i!lI;:,^`'. ", 4);
+
+    private final char[] chars;
+    private final char[] lookup = new char[256];
+    private final byte[] codes = new byte[256];
+    private final char[] codeTable;
+
+    /**
+     * Builds one of the original character sets, where each character covers stepSize greyscale values and
+     * anything brighter than the last step is a space.
+     */
+    private CharRamp (String chars, int stepSize) {
+        this.chars = chars.toCharArray();
+        for (int greyscale = 0; greyscale < lookup.length; greyscale++) {
+            int index = (greyscale + stepSize - 1) / stepSize;
+            lookup[greyscale] = index < this.chars.length ? this.chars[index] : ' ';
+        }
+        codeTable = buildCodes();
+    }
+
+    private CharRamp (char[] chars) {
+        this.chars = chars;
+        for (int greyscale = 0; greyscale < lookup.length; greyscale++) {
+            lookup[greyscale] = chars[greyscale * chars.length / lookup.length];
+        }
+        codeTable = buildCodes();
+    }
+
+    /**
+     * Works out the code of the character for every greyscale value.
+     *
+     * @return the character of every code.
+     */
+    private char[] buildCodes () {
+        boolean ascii = true;
+        for (char c : lookup)
+            ascii &= c < 128;
+        if (ascii) {
+            for (int greyscale = 0; greyscale < lookup.length; greyscale++)
+                codes[greyscale] = (byte) lookup[greyscale];
+            return ASCIIGrid.ASCII_TABLE;
+        }
+
+        //at most 256 different characters, one per greyscale value, in order from darkest
+        char[] table = new char[256];
+        int used = 0;
+        for (int greyscale = 0; greyscale < lookup.length; greyscale++) {
+            char c = lookup[greyscale];
+            if (greyscale == 0 || c != lookup[greyscale - 1])
+                table[used++] = c;
+            codes[greyscale] = (byte) (used - 1);
+        }
+        return table;
+    }
+
+    /**
+     * Creates a ramp from a string of characters ordered from darkest to brightest.
+     *
+     * @param chars The characters of the ramp.
+     * @return      The ramp.
+     * @throws IllegalArgumentException if chars is empty.
+     */
+    public static CharRamp of (String chars) {
+        if (chars.isEmpty())
+            throw new IllegalArgumentException("A character ramp needs at least one character.");
+        return new CharRamp(chars.toCharArray());
+    }
+
+    /**
+     * Reads a ramp from a text file holding the characters from darkest to brightest.
+     * <p>
+     * Line breaks are ignored, so a ramp may be spread over several lines.
+     *
+     * @param file The file to read.
+     * @return     The ramp.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if the file holds no characters.
+     */
+    public static CharRamp fromFile (File file) throws IOException {
+        String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        return of(text.replace("\r", "").replace("\n", ""));
+    }
+
+    /**
+     * Gets one of the original character sets by its size.
+     *
+     * @param charSetSize The size of the character set. 0=small 1=medium 2=large
+     * @return            The matching ramp.
+     * @throws IllegalArgumentException if charSetSize is not 0, 1 or 2.
+     */
+    public static CharRamp forCharSetSize (int charSetSize) {
+        if (charSetSize == 0)
+            return SMALL;
+        else if (charSetSize == 1)
+            return MEDIUM;
+        else if (charSetSize == 2)
+            return LARGE;
+        throw new IllegalArgumentException("Illegal char set size: " + charSetSize);
+    }
+
+    /**
+     * Gets the character for a greyscale value.
+     *
+     * @param greyscale A greyscale value from 0 (black) to 255 (white).
+     * @return          The character representing that value.
+     */
+    public char charFor (int greyscale) {
+        return lookup[greyscale];
+    }
+
+    /**
+     * Gets the code ASCIIGrid stores the character for a greyscale value under.
+     *
+     * @param greyscale A greyscale value from 0 (black) to 255 (white).
+     * @return          The code of the character representing that value.
+     */
+    byte codeFor (int greyscale) {
+        return codes[greyscale];
+    }
+
+    /**
+     * @return the character of every code, shared by every grid of this ramp and not to be changed.
+     */
+    char[] getCodeTable () {
+        return codeTable;
+    }
+
+    /**
+     * @return the characters of this ramp, from darkest to brightest.
+     */
+    public char[] getChars () {
+        return chars.clone();
+    }
+
+    /**
+     * @return the number of characters in this ramp.
+     */
+    public int length () {
+        return chars.length;
+    }
+}
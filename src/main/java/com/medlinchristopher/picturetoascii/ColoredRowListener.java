@@ -0,0 +1,23 @@
+package com.medlinchristopher.picturetoascii;
+
+import java.io.IOException;
+
+/**
+ * Receives the rows of a piece of colored ASCII art as they are produced.
+ * <p>
+ * The colored counterpart of ASCIIRowListener, used by StreamingConversion when colors are asked for.
+ *
+ * @since 1.1
+ */
+public interface ColoredRowListener {
+
+    /**
+     * Called once for every row of characters, in order from the top row down.
+     *
+     * @param row    The index of the row.
+     * @param chars  The characters of the row. The array may be reused once this method returns.
+     * @param colors The color of every character of the row as 0xRRGGBB. The array may be reused once this method returns.
+     * @throws IOException if the row cannot be written.
+     */
+    void rowConverted (int row, char[] chars, int[] colors) throws IOException;
+}
@@ -0,0 +1,252 @@
+package com.medlinchristopher.picturetoascii;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+
+/**
+ * Writes colored ASCII art as text with ANSI escape codes for terminals, or as an HTML page.
+ * <p>
+ * A color is only written when it differs from that of the previous character of the row, so a run of characters
+ * sharing a color costs a single escape code or span. In 256-color mode colors are compared after they have been
+ * reduced to the palette, which makes runs much longer than with exact colors. The text itself goes through an
+ * ASCIITextWriter, so rows are encoded straight into a reusable buffer.
+ *
+ * @since 1.1
+ */
+public class ColoredTextWriter implements ColoredRowListener, Closeable {
+
+    /**
+     * The ways colors can be written.
+     */
+    public enum Format {
+        /** 24-bit ANSI escape codes, shown exactly by most modern terminals. */
+        ANSI,
+        /** ANSI escape codes of the 256-color xterm palette, for terminals without 24-bit color. */
+        ANSI_256,
+        /** An HTML page, with a span for every run of characters of the same color. */
+        HTML
+    }
+
+    private static final String ESCAPE = "\u001b[";
+    private static final String RESET = ESCAPE + "0m";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final String HTML_HEADER = "<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n"
+            + "<style>pre { font-family: monospace; line-height: 1; background: #fff; }</style>\n</head>\n<body>\n<pre>";
+    private static final String HTML_FOOTER = "</pre>\n</body>\n</html>\n";
+
+    private final ASCIITextWriter writer;
+    private final Format format;
+    private final String separator;
+    private final String lineEnding;
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * Creates a writer that replaces the contents of a file, using the default separator and the system line ending.
+     *
+     * @param path   The file to be written.
+     * @param format How the colors are written.
+     * @throws IOException if the file cannot be opened.
+     */
+    public ColoredTextWriter (Path path, Format format) throws IOException {
+        this(new ASCIITextWriter(path, "", ""), format, ASCIITextWriter.DEFAULT_SEPARATOR, System.lineSeparator());
+    }
+
+    /**
+     * Creates a writer on a channel, which is left open when the writer is closed.
+     *
+     * @param channel    The channel the text is written to.
+     * @param format     How the colors are written.
+     * @param separator  Written between the characters of each row. May be empty.
+     * @param lineEnding Written after every row.
+     * @throws IOException if the text cannot be written.
+     */
+    public ColoredTextWriter (WritableByteChannel channel, Format format, String separator, String lineEnding) throws IOException {
+        this(new ASCIITextWriter(channel, "", ""), format, separator, lineEnding);
+    }
+
+    private ColoredTextWriter (ASCIITextWriter writer, Format format, String separator, String lineEnding) throws IOException {
+        this.writer = writer;
+        this.format = format;
+        this.separator = separator;
+        this.lineEnding = lineEnding;
+        if (format == Format.HTML)
+            writer.writeText(HTML_HEADER);
+    }
+
+    /**
+     * Writes every row of a piece of colored ASCII art.
+     *
+     * @param asciiArt The ASCII art to be written.
+     * @param colors   The color of every character as 0xRRGGBB.
+     * @throws IOException if the text cannot be written.
+     */
+    public void write (char[][] asciiArt, int[][] colors) throws IOException {
+        for (int row = 0; row < asciiArt.length; row++)
+            writeRow(asciiArt[row], colors[row]);
+    }
+
+    /**
+     * Writes every row of a grid of colored ASCII art, without copying it into arrays of characters.
+     *
+     * @param grid   The ASCII art to be written.
+     * @param colors The color of every character as 0xRRGGBB.
+     * @throws IOException if the text cannot be written.
+     */
+    public void write (ASCIIGrid grid, int[][] colors) throws IOException {
+        for (int row = 0; row < grid.getHeight(); row++)
+            writeRow(grid.getRow(row), colors[row]);
+    }
+
+    /**
+     * Writes one row of characters in their colors, followed by the line ending.
+     *
+     * @param chars  The characters of the row.
+     * @param colors The color of every character of the row as 0xRRGGBB.
+     * @throws IOException if the text cannot be written.
+     */
+    public void writeRow (char[] chars, int[] colors) throws IOException {
+        writeRow(CharBuffer.wrap(chars), colors);
+    }
+
+    private void writeRow (CharSequence chars, int[] colors) throws IOException {
+        line.setLength(0);
+        int current = -1;
+        for (int col = 0; col < chars.length(); col++) {
+            int color = colors[col] & 0xffffff;
+            int key = format == Format.ANSI_256 ? ansi256(color) : color;
+            if (key != current) {
+                if (format == Format.HTML && current >= 0)
+                    line.append("</span>");
+                startRun(color, key);
+                current = key;
+            }
+            if (col > 0)
+                line.append(separator);
+            appendChar(chars.charAt(col));
+        }
+        if (current >= 0)
+            line.append(format == Format.HTML ? "</span>" : RESET);
+        line.append(lineEnding);
+        writer.writeText(line);
+    }
+
+    private void startRun (int color, int key) {
+        switch (format) {
+            case ANSI:
+                line.append(ESCAPE).append("38;2;").append(color >> 16).append(';')
+                        .append((color >> 8) & 0xff).append(';').append(color & 0xff).append('m');
+                break;
+            case ANSI_256:
+                line.append(ESCAPE).append("38;5;").append(key).append('m');
+                break;
+            default:
+                line.append("<span style=\"color:#");
+                for (int shift = 20; shift >= 0; shift -= 4)
+                    line.append(HEX[(color >> shift) & 0xf]);
+                line.append("\">");
+        }
+    }
+
+    private void appendChar (char c) {
+        if (format == Format.HTML) {
+            switch (c) {
+                case '&':
+                    line.append("&amp;");
+                    return;
+                case '<':
+                    line.append("&lt;");
+                    return;
+                case '>':
+                    line.append("&gt;");
+                    return;
+            }
+        }
+        line.append(c);
+    }
+
+    /**
+     * Writes a row as it comes out of a conversion.
+     */
+    @Override
+    public void rowConverted (int row, char[] chars, int[] colors) throws IOException {
+        writeRow(chars, colors);
+    }
+
+    /**
+     * Ends the page if the format needs it, flushes the writer, and closes the file if it was opened by this writer.
+     *
+     * @throws IOException if the text cannot be written.
+     */
+    @Override
+    public void close () throws IOException {
+        try {
+            if (format == Format.HTML)
+                writer.writeText(HTML_FOOTER);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Finds the color of the xterm 256-color palette nearest to a color.
+     * <p>
+     * The answer is looked up in a table of every color with 5 bits per channel, worked out once, which is finer
+     * than the palette can tell apart.
+     *
+     * @param rgb The color as 0xRRGGBB.
+     * @return    Its index in the palette, from 16 to 255.
+     */
+    public static int ansi256 (int rgb) {
+        int index = (((rgb >> 19) & 0x1f) << 10) | (((rgb >> 11) & 0x1f) << 5) | ((rgb >> 3) & 0x1f);
+        return Palette.TABLE[index] & 0xff;
+    }
+
+    /**
+     * The 6x6x6 color cube and 24 greys of the xterm palette, and the nearest of them to every 15-bit color.
+     * The 16 system colors are left out, since terminals are free to change them.
+     */
+    private static final class Palette {
+        static final byte[] TABLE = build();
+
+        private static int color (int index) {
+            if (index >= 232) {
+                int grey = 8 + (index - 232) * 10;
+                return (grey << 16) | (grey << 8) | grey;
+            }
+            int cube = index - 16;
+            return (level(cube / 36) << 16) | (level((cube / 6) % 6) << 8) | level(cube % 6);
+        }
+
+        private static int level (int step) {
+            return step == 0 ? 0 : 55 + step * 40;
+        }
+
+        private static byte[] build () {
+            int[] palette = new int[256];
+            for (int index = 16; index < 256; index++)
+                palette[index] = color(index);
+
+            byte[] table = new byte[1 << 15];
+            for (int i = 0; i < table.length; i++) {
+                //middle of the range of colors that share this entry
+                int r = ((i >> 10) << 3) | 4, g = (((i >> 5) & 0x1f) << 3) | 4, b = ((i & 0x1f) << 3) | 4;
+                int best = 16, bestDistance = Integer.MAX_VALUE;
+                for (int index = 16; index < 256; index++) {
+                    int c = palette[index];
+                    int dr = r - (c >> 16), dg = g - ((c >> 8) & 0xff), db = b - (c & 0xff);
+                    int distance = dr * dr + dg * dg + db * db;
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        best = index;
+                    }
+                }
+                table[i] = (byte) best;
+            }
+            return table;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.medlinchristopher.picturetoascii;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps finished conversions so that converting the same image with the same settings again costs a file copy.
+ * <p>
+ * Entries are keyed by a SHA-256 hash of the bytes of the input image together with every setting that affects the
+ * output, so renaming or moving an image still hits while changing a single pixel or setting misses. There are two
+ * tiers: small outputs are kept in memory, and every output is kept on disk as a file named after its key. Both
+ * tiers evict their least recently used entries once they hold more than their size limit, and the disk tier
+ * remembers use across runs through the files' modification times.
+ *
+ * @since 1.1
+ */
+public class ConversionCache {
+
+    /** Default limit of the memory tier, in bytes. */
+    public static final long DEFAULT_MEMORY_BYTES = 64L << 20;
+    /** Default limit of the disk tier, in bytes. */
+    public static final long DEFAULT_DISK_BYTES = 1L << 30;
+
+    /** Format setting of conversions written as images, PNG or animated GIF depending on the input. */
+    public static final String IMAGE = "image";
+    /** Format setting of conversions written as text. */
+    public static final String TEXT = "text";
+
+    //bump whenever conversion or rendering changes, so old entries stop matching
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File dir;
+    private final long memoryLimit, diskLimit;
+
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Entry> disk = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes, diskBytes;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Opens a cache in a folder, creating the folder if needed and picking up the entries of earlier runs.
+     *
+     * @param dir         The folder entries are stored in.
+     * @param memoryLimit The most bytes of output kept in memory.
+     * @param diskLimit   The most bytes of output kept on disk.
+     * @throws IOException if the folder cannot be created.
+     */
+    public ConversionCache (File dir, long memoryLimit, long diskLimit) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Cannot create cache folder " + dir);
+        this.dir = dir;
+        this.memoryLimit = memoryLimit;
+        this.diskLimit = diskLimit;
+
+        File[] files = dir.listFiles();
+        if (files != null) {
+            //oldest first, so the least recently used entries are evicted first
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare (File a, File b) {
+                    return Long.compare(a.lastModified(), b.lastModified());
+                }
+            });
+            for (File file : files) {
+                if (file.getName().endsWith(TEMP_SUFFIX)) {
+                    file.delete();
+                } else if (file.isFile()) {
+                    Entry entry = new Entry(file, file.length());
+                    disk.put(keyOf(file), entry);
+                    diskBytes += entry.length;
+                }
+            }
+        }
+        synchronized (this) {
+            evictDisk();
+        }
+    }
+
+    /**
+     * Works out the key of a conversion.
+     *
+     * @param input    The image being converted.
+     * @param ramp     The characters it is converted with.
+     * @param settings Every other setting that affects the output, such as pixels per character, font size and format.
+     * @return         The key, as a hexadecimal string.
+     * @throws IOException if the image cannot be read.
+     */
+    public static String key (File input, CharRamp ramp, Object... settings) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(input)) {
+            int n;
+            while ((n = in.read(buffer)) > 0)
+                digest.update(buffer, 0, n);
+        }
+
+        //the whole greyscale to character mapping, since ramps with the same characters can map differently
+        StringBuilder parameters = new StringBuilder();
+        parameters.append(VERSION).append('\n');
+        for (int grey = 0; grey < 256; grey++)
+            parameters.append(ramp.charFor(grey));
+        for (Object setting : settings)
+            parameters.append('\n').append(setting);
+        digest.update(parameters.toString().getBytes(StandardCharsets.UTF_8));
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest())
+            hex.append(String.format("%02x", b & 0xff));
+        return hex.toString();
+    }
+
+    /**
+     * Writes the cached output of a conversion, if there is one.
+     *
+     * @param key       The key of the conversion.
+     * @param outputDir The folder the output goes in.
+     * @param name      The name of the output, without an extension; the cached output's extension is added.
+     * @return          The output file, or null if the conversion is not cached.
+     * @throws IOException if the output cannot be written.
+     */
+    public File restore (String key, File outputDir, String name) throws IOException {
+        Entry entry;
+        File file;
+        synchronized (this) {
+            entry = memory.get(key);
+            Entry stored = entry == null ? disk.get(key) : null;
+            file = stored == null ? null : stored.file;
+        }
+
+        if (entry != null) {
+            File output = new File(outputDir, name + extensionOf(entry.file));
+            Files.write(output.toPath(), entry.bytes);
+            memoryHits.incrementAndGet();
+            return output;
+        }
+        if (file != null) {
+            File output = new File(outputDir, name + extensionOf(file));
+            try {
+                Files.copy(file.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                //evicted by someone else in the meantime
+                synchronized (this) {
+                    Entry stored = disk.remove(key);
+                    if (stored != null)
+                        diskBytes -= stored.length;
+                }
+                misses.incrementAndGet();
+                return null;
+            }
+            file.setLastModified(System.currentTimeMillis());
+            diskHits.incrementAndGet();
+            remember(key, output);
+            return output;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Adds the output of a conversion to the cache.
+     *
+     * @param key    The key of the conversion.
+     * @param output The file the conversion wrote. Its extension is kept with the entry.
+     * @throws IOException if the output cannot be copied.
+     */
+    public void store (String key, File output) throws IOException {
+        File temp = new File(dir, key + TEMP_SUFFIX);
+        File file = new File(dir, key + extensionOf(output));
+        Files.copy(output.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        synchronized (this) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Entry entry = new Entry(file, file.length());
+            Entry old = disk.put(key, entry);
+            if (old != null)
+                diskBytes -= old.length;
+            diskBytes += entry.length;
+            evictDisk();
+        }
+        remember(key, output);
+    }
+
+    /**
+     * Keeps an output in memory if it is small enough to be worth it.
+     */
+    private void remember (String key, File output) throws IOException {
+        long length = output.length();
+        if (length > memoryLimit / 8)
+            return;
+        Entry entry = new Entry(output, Files.readAllBytes(output.toPath()));
+        synchronized (this) {
+            Entry old = memory.put(key, entry);
+            if (old != null)
+                memoryBytes -= old.length;
+            memoryBytes += entry.length;
+            Iterator<Map.Entry<String, Entry>> eldest = memory.entrySet().iterator();
+            while (memoryBytes > memoryLimit && eldest.hasNext()) {
+                memoryBytes -= eldest.next().getValue().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    private void evictDisk () {
+        Iterator<Map.Entry<String, Entry>> eldest = disk.entrySet().iterator();
+        while (diskBytes > diskLimit && eldest.hasNext()) {
+            Entry entry = eldest.next().getValue();
+            diskBytes -= entry.length;
+            entry.file.delete();
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static String keyOf (File file) {
+        String name = file.getName();
+        int dot = name.indexOf('.');
+        return dot < 0 ? name : name.substring(0, dot);
+    }
+
+    private static String extensionOf (File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot);
+    }
+
+    /**
+     * @return the number of conversions found in memory.
+     */
+    public long getMemoryHits () {
+        return memoryHits.get();
+    }
+
+    /**
+     * @return the number of conversions found on disk.
+     */
+    public long getDiskHits () {
+        return diskHits.get();
+    }
+
+    /**
+     * @return the number of conversions that were not cached.
+     */
+    public long getMisses () {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of entries removed from disk to stay under the size limit.
+     */
+    public long getEvictions () {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString () {
+        return String.format("Cache: %d hits (%d memory, %d disk), %d misses, %d evicted",
+                getMemoryHits() + getDiskHits(), getMemoryHits(), getDiskHits(), getMisses(), getEvictions());
+    }
+
+    /**
+     * A cached output: a file in the cache folder, or bytes in memory named after the file they came from.
+     */
+    private static class Entry {
+        final File file;
+        final byte[] bytes;
+        final long length;
+
+        Entry (File file, long length) {
+            this.file = file;
+            this.bytes = null;
+            this.length = length;
+        }
+
+        Entry (File file, byte[] bytes) {
+            this.file = file;
+            this.bytes = bytes;
+            this.length = bytes.length;
+        }
+    }
+}
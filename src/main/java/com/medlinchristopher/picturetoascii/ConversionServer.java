@@ -0,0 +1,642 @@
+package com.medlinchristopher.picturetoascii;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import com.medlinchristopher.picturetoascii.image.MemoryPlanner;
+import com.medlinchristopher.picturetoascii.metrics.ConversionMetrics;
+import com.medlinchristopher.picturetoascii.metrics.Stage;
+
+/**
+ * Converts images sent over HTTP, using the HTTP server built into the JDK.
+ * <p>
+ * POST an image to /convert and the ASCII art comes back in the response, written straight into it as it is
+ * rendered. The settings are those of ASCIIOptionsFrame, given as query parameters:
+ * <pre>
+ *   format           png, txt, ansi, ansi256 or html (default png)
+ *   ramp             small, medium or large (default medium)
+ *   ramp-chars       custom characters, darkest first
+ *   pixels-per-char  pixels per ASCII character (default 1)
+ *   font-size        font size of png images, 1-20 (default 5)
+ *   color            true to draw png characters in the colors of the image
+ *   timeout          milliseconds to wait for the conversion, up to the limit of the server
+ * </pre>
+ * for example {@code curl --data-binary @photo.jpg "http://localhost:8080/convert?format=txt&pixels-per-char=4"}.
+ * GET /status reports the load of the server, followed by the time spent in each stage of conversion when metrics
+ * are on. See ConversionMetrics.
+ * <p>
+ * Conversions run on a fixed pool of threads behind a bounded queue. A request that finds every thread busy and
+ * the queue full is turned away at once with 503 Service Unavailable, before its upload is read, so clients can back
+ * off and retry. A conversion that has not started its response by the timeout is cancelled and answered with
+ * 504 Gateway Timeout. It still counts against the threads and queue until its thread stops working on it.
+ *
+ * @since 1.1
+ */
+public class ConversionServer {
+
+    /** The first command line argument that starts the server instead of converting files. */
+    public static final String COMMAND = "--server";
+
+    /** Default port. */
+    public static final int DEFAULT_PORT = 8080;
+    /** Default number of conversions waiting for a thread. */
+    public static final int DEFAULT_QUEUE_SIZE = 16;
+    /** Most conversions run at once. Each admitted request also holds a thread of its own while it waits. */
+    public static final int MAX_THREADS = 256;
+    /** Most conversions waiting for a thread. */
+    public static final int MAX_QUEUE_SIZE = 1024;
+    /** Default time a conversion may take before it is answered with 504, in milliseconds. */
+    public static final long DEFAULT_TIMEOUT = 30000;
+    /** Default size of the largest image accepted, in bytes. */
+    public static final int DEFAULT_MAX_UPLOAD = 32 << 20;
+
+    private static final String USAGE =
+            "Usage: picture-to-ascii --server [options]\n" +
+            "\n" +
+            "Options:\n" +
+            "      --host <address>       address to listen on (default 127.0.0.1)\n" +
+            "      --port <n>             port to listen on (default " + DEFAULT_PORT + ")\n" +
+            "  -t, --threads <n>          conversions run at once, up to " + MAX_THREADS + " (default: number of cores)\n" +
+            "      --queue <n>            conversions waiting for a thread before 503, up to " + MAX_QUEUE_SIZE +
+            " (default " + DEFAULT_QUEUE_SIZE + ")\n" +
+            "      --timeout <ms>         longest a conversion may take before 504 (default " + DEFAULT_TIMEOUT + ")\n" +
+            "      --max-upload <bytes>   largest image accepted (default " + DEFAULT_MAX_UPLOAD + ")\n" +
+            "      --metrics              time the stages of conversions, reported by /status, JMX and JFR\n" +
+            "  -h, --help                 show this message";
+
+    //states of a request, so that only one of the conversion and the handler gets to answer it
+    private static final int WAITING = 0;
+    private static final int RESPONDING = 1;
+    private static final int ANSWERED = 2;
+
+    private final HttpServer server;
+    private final ThreadPoolExecutor pool;
+    private final ExecutorService dispatcher;
+    private final Semaphore slots;
+    private final long timeout;
+    private final int maxUpload;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Creates a server, which starts listening when start is called.
+     *
+     * @param address   The address and port to listen on.
+     * @param threads   The number of conversions run at once.
+     * @param queueSize The number of conversions that may wait for a thread.
+     * @param timeout   The longest a conversion may take before it is answered with 504, in milliseconds.
+     * @param maxUpload The size of the largest image accepted, in bytes.
+     * @throws IOException if the address cannot be bound.
+     */
+    public ConversionServer (InetSocketAddress address, int threads, int queueSize, long timeout, int maxUpload) throws IOException {
+        this.timeout = timeout;
+        this.maxUpload = maxUpload;
+        this.slots = new Semaphore(threads + queueSize);
+        this.pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)), threadFactory("ascii-convert"));
+        //a thread per admitted request, plus a few to turn the others away
+        this.dispatcher = Executors.newFixedThreadPool(threads + queueSize + 4, threadFactory("ascii-http"));
+
+        server = HttpServer.create(address, 0);
+        server.setExecutor(dispatcher);
+        server.createContext("/convert", new HttpHandler() {
+            @Override
+            public void handle (HttpExchange exchange) throws IOException {
+                try {
+                    convert(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.createContext("/status", new HttpHandler() {
+            @Override
+            public void handle (HttpExchange exchange) throws IOException {
+                try {
+                    status(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts the server from command line arguments, printing to System.out and System.err.
+     * <p>
+     * The server keeps the JVM running until it is shut down.
+     *
+     * @param args The command line arguments following COMMAND.
+     * @return     BatchConverter.EXIT_OK if the server started, BatchConverter.EXIT_USAGE otherwise.
+     */
+    public static int run (String[] args) {
+        String host = "127.0.0.1";
+        int port = DEFAULT_PORT;
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), MAX_THREADS);
+        int queueSize = DEFAULT_QUEUE_SIZE;
+        long timeout = DEFAULT_TIMEOUT;
+        int maxUpload = DEFAULT_MAX_UPLOAD;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "-h":
+                    case "--help":
+                        System.out.println(USAGE);
+                        return BatchConverter.EXIT_OK;
+                    case "--host":
+                        host = value(args, ++i, arg);
+                        break;
+                    case "--port":
+                        port = number(value(args, ++i, arg), arg, 0, 65535);
+                        break;
+                    case "-t":
+                    case "--threads":
+                        threads = number(value(args, ++i, arg), arg, 1, MAX_THREADS);
+                        break;
+                    case "--queue":
+                        queueSize = number(value(args, ++i, arg), arg, 0, MAX_QUEUE_SIZE);
+                        break;
+                    case "--timeout":
+                        timeout = number(value(args, ++i, arg), arg, 1, Integer.MAX_VALUE);
+                        break;
+                    case "--max-upload":
+                        maxUpload = number(value(args, ++i, arg), arg, 1, Integer.MAX_VALUE - 8);
+                        break;
+                    case "--metrics":
+                        ConversionMetrics.setEnabled(true);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("picture-to-ascii: " + e.getMessage());
+            System.err.println(USAGE);
+            return BatchConverter.EXIT_USAGE;
+        }
+
+        final ConversionServer server;
+        try {
+            server = new ConversionServer(new InetSocketAddress(InetAddress.getByName(host), port), threads, queueSize, timeout, maxUpload);
+        } catch (IOException e) {
+            System.err.println("picture-to-ascii: cannot listen on " + host + ":" + port + ": " + e.getMessage());
+            return BatchConverter.EXIT_USAGE;
+        }
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run () {
+                server.stop(1);
+            }
+        }));
+        System.out.println("Listening on http://" + host + ":" + server.getAddress().getPort() + "/convert");
+        return BatchConverter.EXIT_OK;
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start () {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, waits a while for those in progress, and stops the conversion threads.
+     *
+     * @param delay The most seconds to wait for requests in progress.
+     */
+    public void stop (int delay) {
+        server.stop(delay);
+        pool.shutdownNow();
+        dispatcher.shutdownNow();
+    }
+
+    /**
+     * @return the address the server listens on, with the port it was given if it was started on port 0.
+     */
+    public InetSocketAddress getAddress () {
+        return server.getAddress();
+    }
+
+    private void convert (HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            exchange.getResponseHeaders().set("Allow", "POST");
+            sendError(exchange, 405, "Images have to be POSTed.");
+            return;
+        }
+
+        //turn requests away before reading their uploads when there is no room for them
+        if (!slots.tryAcquire()) {
+            rejected.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendError(exchange, 503, "Too many conversions in progress.");
+            return;
+        }
+        boolean submitted = false;
+        try {
+            final Settings settings;
+            final byte[] image;
+            try {
+                settings = new Settings(parseQuery(exchange.getRequestURI().getRawQuery()), timeout);
+                image = readUpload(exchange.getRequestBody());
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+                return;
+            } catch (UploadTooLargeException e) {
+                sendError(exchange, 413, e.getMessage());
+                return;
+            }
+
+            final HttpExchange response = exchange;
+            final AtomicInteger state = new AtomicInteger(WAITING);
+            //whichever of starting and cancelling comes first gives the slot back when it is through with it
+            final AtomicBoolean claimed = new AtomicBoolean();
+            FutureTask<Void> job = new FutureTask<Void>(new Callable<Void>() {
+                @Override
+                public Void call () throws Exception {
+                    if (!claimed.compareAndSet(false, true))
+                        return null;
+                    //a cancelled conversion keeps its image until it gets here, so it keeps its slot as well
+                    try {
+                        respond(response, image, settings, state);
+                    } finally {
+                        slots.release();
+                    }
+                    return null;
+                }
+            }) {
+                @Override
+                protected void done () {
+                    //cancelled before it ever ran
+                    if (isCancelled() && claimed.compareAndSet(false, true))
+                        slots.release();
+                }
+            };
+            try {
+                pool.execute(job);
+            } catch (RejectedExecutionException e) {
+                //the queue can still be full of conversions that were cancelled but are not done yet
+                rejected.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendError(exchange, 503, "Too many conversions in progress.");
+                return;
+            }
+            submitted = true;
+            await(exchange, job, settings.timeout, state);
+        } finally {
+            if (!submitted)
+                slots.release();
+        }
+    }
+
+    /**
+     * Waits for a conversion, answering for it if it fails or times out before it starts its response.
+     */
+    private void await (HttpExchange exchange, Future<Void> job, long timeout, AtomicInteger state) throws IOException {
+        try {
+            job.get(timeout, TimeUnit.MILLISECONDS);
+            completed.incrementAndGet();
+            return;
+        } catch (TimeoutException e) {
+            if (state.compareAndSet(WAITING, ANSWERED)) {
+                job.cancel(true);
+                timedOut.incrementAndGet();
+                sendError(exchange, 504, "Conversion took longer than " + timeout + " ms.");
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.cancel(true);
+            return;
+        } catch (ExecutionException e) {
+            fail(exchange, e.getCause(), state);
+            return;
+        }
+
+        //the response has started, so it is only limited by how fast the client reads it
+        try {
+            job.get();
+            completed.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.cancel(true);
+        } catch (ExecutionException e) {
+            fail(exchange, e.getCause(), state);
+        }
+    }
+
+    private void fail (HttpExchange exchange, Throwable cause, AtomicInteger state) throws IOException {
+        failed.incrementAndGet();
+        if (!state.compareAndSet(WAITING, ANSWERED))
+            return; //too late for a status code, the client gets a cut off response
+        if (cause instanceof IllegalArgumentException)
+            sendError(exchange, 400, cause.getMessage());
+        else if (cause instanceof UploadTooLargeException)
+            sendError(exchange, 413, cause.getMessage());
+        else
+            sendError(exchange, 500, "Failed to convert image: " + cause);
+    }
+
+    /**
+     * Converts an image and writes the response, unless the request has timed out by then.
+     */
+    private static void respond (HttpExchange exchange, byte[] image, Settings settings, AtomicInteger state)
+            throws IOException, UploadTooLargeException {
+        BufferedImage img = decode(image, settings, state);
+        if (state.get() != WAITING)
+            return;
+        if (img.getWidth() < settings.pixelsPerChar || img.getHeight() < settings.pixelsPerChar)
+            throw new IllegalArgumentException("Image is smaller than " + settings.pixelsPerChar + " pixels per character.");
+
+        int[][] colors = null;
+        ASCIIGrid grid;
+        if (settings.colored()) {
+            colors = new int[img.getHeight() / settings.pixelsPerChar][img.getWidth() / settings.pixelsPerChar];
+            grid = ASCIIConversion.imageToColoredASCIIGrid(img, settings.pixelsPerChar, settings.ramp, colors);
+        } else {
+            grid = ASCIIConversion.imageToASCIIGrid(img, settings.pixelsPerChar, settings.ramp);
+        }
+
+        if (Thread.currentThread().isInterrupted() || !state.compareAndSet(WAITING, RESPONDING))
+            return;
+        exchange.getResponseHeaders().set("Content-Type", settings.contentType());
+        //length 0: chunked, the output is written as it is rendered
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream body = exchange.getResponseBody();
+        WritableByteChannel channel = Channels.newChannel(body);
+        switch (settings.format) {
+            case "png":
+                ASCIIConversion.writeASCIIToPNG(grid, colors, settings.fontSize, body);
+                break;
+            case "txt":
+                try (ASCIITextWriter writer = new ASCIITextWriter(channel, ASCIITextWriter.DEFAULT_SEPARATOR, "\n")) {
+                    writer.write(grid);
+                }
+                break;
+            default:
+                try (ColoredTextWriter writer = new ColoredTextWriter(channel, settings.colorFormat(), ASCIITextWriter.DEFAULT_SEPARATOR, "\n")) {
+                    writer.write(grid, colors);
+                }
+        }
+        body.close();
+    }
+
+    /**
+     * Decodes an uploaded image in memory, without the temporary file ImageIO would otherwise use, giving up as soon
+     * as the request has been answered by a timeout. Images whose pixels would not fit in the memory the MemoryPlanner
+     * allows, however well they compress, are refused before they are decoded.
+     */
+    private static BufferedImage decode (byte[] image, Settings settings, final AtomicInteger state)
+            throws IOException, UploadTooLargeException {
+        ImageInputStream stream = new MemoryCacheImageInputStream(new ByteArrayInputStream(image));
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext())
+                throw new IllegalArgumentException("Not a supported image.");
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                int width = reader.getWidth(reader.getMinIndex());
+                int height = reader.getHeight(reader.getMinIndex());
+                MemoryPlanner.Plan plan = MemoryPlanner.getDefault().plan(width, height, settings.pixelsPerChar,
+                        settings.format.equals("png") ? settings.fontSize : 0, settings.colored(), false);
+                if (plan.getInput() != MemoryPlanner.Path.HEAP || plan.getOutput() != MemoryPlanner.Path.HEAP)
+                    throw new UploadTooLargeException("Image of " + width + "x" + height + " is too large to convert in the memory available.");
+                //readers ignore interrupts, and can only be aborted from the thread decoding
+                reader.addIIOReadProgressListener(new IIOReadProgressAdapter() {
+                    @Override
+                    public void imageProgress (ImageReader source, float percentageDone) {
+                        if (state.get() != WAITING)
+                            source.abort();
+                    }
+                });
+                ConversionMetrics.Span span = ConversionMetrics.start(Stage.DECODE);
+                BufferedImage img = reader.read(reader.getMinIndex());
+                ConversionMetrics.end(span, (long) img.getWidth() * img.getHeight(), image.length);
+                return img;
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    private byte[] readUpload (InputStream in) throws IOException, UploadTooLargeException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1 << 16];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            if (bytes.size() + n > maxUpload)
+                throw new UploadTooLargeException("Images are limited to " + maxUpload + " bytes.");
+            bytes.write(buffer, 0, n);
+        }
+        if (bytes.size() == 0)
+            throw new IllegalArgumentException("No image was sent.");
+        return bytes.toByteArray();
+    }
+
+    private void status (HttpExchange exchange) throws IOException {
+        String text = String.format("active %d%nqueued %d%ncompleted %d%nrejected %d%ntimed-out %d%nfailed %d%n",
+                pool.getActiveCount(), pool.getQueue().size(), completed.get(), rejected.get(), timedOut.get(), failed.get());
+        if (ConversionMetrics.isEnabled())
+            text += ConversionMetrics.report();
+        send(exchange, 200, "text/plain; charset=utf-8", text);
+    }
+
+    private static void sendError (HttpExchange exchange, int code, String message) throws IOException {
+        send(exchange, code, "text/plain; charset=utf-8", message + "\n");
+    }
+
+    private static void send (HttpExchange exchange, int code, String contentType, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parseQuery (String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null || query.isEmpty())
+            return parameters;
+        try {
+            for (String pair : query.split("&")) {
+                int equals = pair.indexOf('=');
+                String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), "UTF-8");
+                String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+                parameters.put(name, value);
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return parameters;
+    }
+
+    private static String value (String[] args, int i, String option) {
+        if (i >= args.length)
+            throw new IllegalArgumentException("Missing value for " + option);
+        return args[i];
+    }
+
+    private static int number (String value, String name, int min, int max) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n >= min && n <= max)
+                return n;
+        } catch (NumberFormatException ignore) {
+        }
+        throw new IllegalArgumentException("Improper argument for " + name + ": " + value);
+    }
+
+    private static ThreadFactory threadFactory (final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread (Runnable r) {
+                return new Thread(r, name + "-" + count.incrementAndGet());
+            }
+        };
+    }
+
+    /**
+     * The settings of one request.
+     */
+    private static class Settings {
+        final String format;
+        final CharRamp ramp;
+        final int pixelsPerChar;
+        final int fontSize;
+        final boolean color;
+        final long timeout;
+
+        Settings (Map<String, String> parameters, long maxTimeout) {
+            format = parameters.containsKey("format") ? parameters.get("format") : "png";
+            if (!format.matches("png|txt|ansi|ansi256|html"))
+                throw new IllegalArgumentException("Unknown format " + format);
+
+            if (parameters.containsKey("ramp-chars")) {
+                ramp = CharRamp.of(parameters.get("ramp-chars"));
+            } else {
+                String size = parameters.containsKey("ramp") ? parameters.get("ramp") : "medium";
+                switch (size) {
+                    case "small":
+                        ramp = CharRamp.SMALL;
+                        break;
+                    case "medium":
+                        ramp = CharRamp.MEDIUM;
+                        break;
+                    case "large":
+                        ramp = CharRamp.LARGE;
+                        break;
+                    default:
+                        //files on the server are not for clients to read
+                        throw new IllegalArgumentException("Unknown ramp " + size);
+                }
+            }
+
+            pixelsPerChar = parameters.containsKey("pixels-per-char")
+                    ? number(parameters.get("pixels-per-char"), "pixels-per-char", 1, Integer.MAX_VALUE) : 1;
+            fontSize = parameters.containsKey("font-size") ? number(parameters.get("font-size"), "font-size", 1, 20) : 5;
+            color = Boolean.parseBoolean(parameters.get("color"));
+            timeout = parameters.containsKey("timeout")
+                    ? Math.min(maxTimeout, number(parameters.get("timeout"), "timeout", 1, Integer.MAX_VALUE)) : maxTimeout;
+        }
+
+        boolean colored () {
+            return color || colorFormat() != null;
+        }
+
+        ColoredTextWriter.Format colorFormat () {
+            switch (format) {
+                case "ansi":
+                    return ColoredTextWriter.Format.ANSI;
+                case "ansi256":
+                    return ColoredTextWriter.Format.ANSI_256;
+                case "html":
+                    return ColoredTextWriter.Format.HTML;
+                default:
+                    return null;
+            }
+        }
+
+        String contentType () {
+            switch (format) {
+                case "png":
+                    return "image/png";
+                case "html":
+                    return "text/html; charset=utf-8";
+                default:
+                    return "text/plain; charset=utf-8";
+            }
+        }
+    }
+
+    /**
+     * Listens to the progress of a read, ignoring everything but what is overridden.
+     */
+    private static class IIOReadProgressAdapter implements IIOReadProgressListener {
+        @Override public void sequenceStarted (ImageReader source, int minIndex) { }
+        @Override public void sequenceComplete (ImageReader source) { }
+        @Override public void imageStarted (ImageReader source, int imageIndex) { }
+        @Override public void imageProgress (ImageReader source, float percentageDone) { }
+        @Override public void imageComplete (ImageReader source) { }
+        @Override public void thumbnailStarted (ImageReader source, int imageIndex, int thumbnailIndex) { }
+        @Override public void thumbnailProgress (ImageReader source, float percentageDone) { }
+        @Override public void thumbnailComplete (ImageReader source) { }
+        @Override public void readAborted (ImageReader source) { }
+    }
+
+    private static class UploadTooLargeException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UploadTooLargeException (String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.medlinchristopher.picturetoascii;
+
+import java.awt.Font;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.IOException;
+import java.util.Iterator;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+import com.medlinchristopher.picturetoascii.metrics.ConversionMetrics;
+import com.medlinchristopher.picturetoascii.metrics.Stage;
+
+/**
+ * Writes an ASCII animation as an animated GIF, with the same layout and glyphs as writeASCIIToImage.
+ * <p>
+ * Only the characters that changed are rendered again. The pixels they can reach are rendered by a GlyphRenderer,
+ * compared with the previous frame, and only the rectangle that really differs is written, as a GIF frame placed
+ * over the previous one. A frame in which nothing changed costs a single pixel.
+ *
+ * @since 1.1
+ */
+public class GIFAnimationWriter implements ASCIIAnimationWriter {
+
+    private static final String IMAGE_FORMAT = "javax_imageio_gif_image_1.0";
+    private static final String STREAM_FORMAT = "javax_imageio_gif_stream_1.0";
+
+    //black text blended onto white only ever gives greys, which this palette holds exactly
+    private static final IndexColorModel GREYS = greys();
+
+    private final ImageOutputStream out;
+    private final int fontSize;
+    private final boolean loop;
+    private final GlyphAtlas atlas;
+    private final ImageWriter writer;
+
+    private GlyphRenderer previousRenderer;
+    private int[] pixels;
+    private int width, height;
+    private boolean started;
+
+    /**
+     * Creates a writer for an animated GIF.
+     *
+     * @param out      The stream the GIF is written to. It is not closed by this writer.
+     * @param fontSize The size of the font the characters are drawn in.
+     * @param loop     Whether the animation repeats forever.
+     * @throws IOException if no GIF writer is available.
+     */
+    public GIFAnimationWriter (ImageOutputStream out, int fontSize, boolean loop) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("gif");
+        if (!writers.hasNext())
+            throw new IOException("No GIF writer available.");
+        this.writer = writers.next();
+        this.out = out;
+        this.fontSize = fontSize;
+        this.loop = loop;
+        this.atlas = new GlyphAtlas(new Font(GlyphRenderer.FONT_NAME, Font.PLAIN, fontSize));
+    }
+
+    @Override
+    public void writeFrame (ASCIIGrid grid, Rectangle changed, int delay) throws IOException {
+        GlyphRenderer renderer = new GlyphRenderer(grid, null, fontSize, atlas);
+        Rectangle area;
+        boolean first = !started;
+        if (first) {
+            if (renderer.getWidth() == 0)
+                throw new IOException("ASCII art has no characters to draw.");
+            width = renderer.getWidth();
+            height = renderer.getHeight();
+            pixels = new int[width * height];
+            renderer.render(0, 0, width, height, pixels);
+            area = new Rectangle(0, 0, width, height);
+            writer.setOutput(out);
+            writer.prepareWriteSequence(streamMetadata());
+            started = true;
+        } else {
+            //old glyphs have to be rubbed out as well as new ones drawn
+            Rectangle reach = renderer.cellBounds(changed).union(previousRenderer.cellBounds(changed));
+            area = update(renderer, reach);
+        }
+        previousRenderer = renderer;
+
+        if (area.isEmpty())
+            area = new Rectangle(0, 0, 1, 1);
+        ConversionMetrics.Span span = ConversionMetrics.start(Stage.ENCODE);
+        long position = out.getStreamPosition();
+        writer.writeToSequence(new IIOImage(frameImage(area), null, frameMetadata(area, delay, first)), null);
+        ConversionMetrics.end(span, (long) area.width * area.height, out.getStreamPosition() - position);
+    }
+
+    /**
+     * Renders an area again and finds the part of it that differs from what was there.
+     */
+    private Rectangle update (GlyphRenderer renderer, Rectangle reach) {
+        if (reach.isEmpty())
+            return reach;
+        int[] rgb = new int[reach.width * reach.height];
+        renderer.render(reach.x, reach.y, reach.width, reach.height, rgb);
+
+        int left = Integer.MAX_VALUE, right = -1, top = -1, bottom = -1;
+        for (int y = 0; y < reach.height; y++) {
+            int src = y * reach.width;
+            int dst = (reach.y + y) * width + reach.x;
+            for (int x = 0; x < reach.width; x++) {
+                if (rgb[src + x] != pixels[dst + x]) {
+                    left = Math.min(left, x);
+                    right = Math.max(right, x);
+                    if (top < 0)
+                        top = y;
+                    bottom = y;
+                }
+            }
+            System.arraycopy(rgb, src, pixels, dst, reach.width);
+        }
+        if (top < 0)
+            return new Rectangle();
+        return new Rectangle(reach.x + left, reach.y + top, right - left + 1, bottom - top + 1);
+    }
+
+    private BufferedImage frameImage (Rectangle area) {
+        BufferedImage image = new BufferedImage(area.width, area.height, BufferedImage.TYPE_BYTE_INDEXED, GREYS);
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        for (int y = 0; y < area.height; y++) {
+            int src = (area.y + y) * width + area.x;
+            int dst = y * area.width;
+            for (int x = 0; x < area.width; x++)
+                data[dst + x] = (byte) pixels[src + x];
+        }
+        return image;
+    }
+
+    private IIOMetadata streamMetadata () throws IOException {
+        IIOMetadata metadata = writer.getDefaultStreamMetadata(null);
+        IIOMetadataNode root = new IIOMetadataNode(STREAM_FORMAT);
+        IIOMetadataNode screen = new IIOMetadataNode("LogicalScreenDescriptor");
+        screen.setAttribute("logicalScreenWidth", String.valueOf(width));
+        screen.setAttribute("logicalScreenHeight", String.valueOf(height));
+        screen.setAttribute("colorResolution", "8");
+        screen.setAttribute("pixelAspectRatio", "0");
+        root.appendChild(screen);
+        metadata.mergeTree(STREAM_FORMAT, root);
+        return metadata;
+    }
+
+    private IIOMetadata frameMetadata (Rectangle area, int delay, boolean first) throws IOException {
+        IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(GREYS, GREYS.createCompatibleSampleModel(1, 1)), null);
+        IIOMetadataNode root = new IIOMetadataNode(IMAGE_FORMAT);
+
+        IIOMetadataNode descriptor = new IIOMetadataNode("ImageDescriptor");
+        descriptor.setAttribute("imageLeftPosition", String.valueOf(area.x));
+        descriptor.setAttribute("imageTopPosition", String.valueOf(area.y));
+        descriptor.setAttribute("imageWidth", String.valueOf(area.width));
+        descriptor.setAttribute("imageHeight", String.valueOf(area.height));
+        descriptor.setAttribute("interlaceFlag", "FALSE");
+        root.appendChild(descriptor);
+
+        IIOMetadataNode control = new IIOMetadataNode("GraphicControlExtension");
+        control.setAttribute("disposalMethod", "doNotDispose");
+        control.setAttribute("userInputFlag", "FALSE");
+        control.setAttribute("transparentColorFlag", "FALSE");
+        control.setAttribute("delayTime", String.valueOf(Math.max(0, Math.round(delay / 10f))));
+        control.setAttribute("transparentColorIndex", "0");
+        root.appendChild(control);
+
+        if (first && loop) {
+            IIOMetadataNode extensions = new IIOMetadataNode("ApplicationExtensions");
+            IIOMetadataNode extension = new IIOMetadataNode("ApplicationExtension");
+            extension.setAttribute("applicationID", "NETSCAPE");
+            extension.setAttribute("authenticationCode", "2.0");
+            extension.setUserObject(new byte[] {1, 0, 0}); //loop forever
+            extensions.appendChild(extension);
+            root.appendChild(extensions);
+        }
+
+        metadata.mergeTree(IMAGE_FORMAT, root);
+        return metadata;
+    }
+
+    /**
+     * Ends the GIF. The stream is flushed but left open.
+     */
+    @Override
+    public void close () throws IOException {
+        try {
+            if (started)
+                writer.endWriteSequence();
+            out.flush();
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static IndexColorModel greys () {
+        byte[] levels = new byte[256];
+        for (int i = 0; i < 256; i++)
+            levels[i] = (byte) i;
+        return new IndexColorModel(8, 256, levels, levels, levels);
+    }
+}
@@ -0,0 +1,131 @@
+package com.medlinchristopher.picturetoascii;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pixels of every character drawn in one font, rasterized once and kept for reuse.
+ * <p>
+ * Each glyph is drawn with Graphics2D.drawString onto a scratch image, using the same default rendering hints as
+ * any other image graphics, and the ink it leaves behind is stored as a coverage mask positioned relative to the
+ * point the string was drawn at. Printable ASCII characters are rasterized up front, anything else the first time
+ * it is asked for.
+ *
+ * @since 1.1
+ */
+public class GlyphAtlas {
+
+    private final Font font;
+    private final Glyph[] ascii = new Glyph[128];
+    private final ConcurrentHashMap<Character, Glyph> others = new ConcurrentHashMap<>();
+
+    private final BufferedImage scratch;
+    private final int originX, originY;
+
+    /**
+     * Rasterizes the printable ASCII characters of a font.
+     *
+     * @param font The font glyphs are drawn in.
+     */
+    public GlyphAtlas (Font font) {
+        this.font = font;
+
+        //leave room around the origin for any ascent, descent and overhang the font might have
+        int size = Math.max(8, font.getSize());
+        originX = size * 2;
+        originY = size * 3;
+        scratch = new BufferedImage(size * 6, size * 5, BufferedImage.TYPE_INT_RGB);
+
+        for (char c = ' '; c < 127; c++)
+            ascii[c] = rasterize(c);
+    }
+
+    /**
+     * Gets the glyph of a character, rasterizing it if this is the first time it is needed.
+     *
+     * @param c The character.
+     * @return  Its glyph.
+     */
+    public Glyph get (char c) {
+        if (c < ascii.length && ascii[c] != null)
+            return ascii[c];
+        Glyph glyph = others.get(c);
+        if (glyph == null) {
+            glyph = rasterize(c);
+            Glyph existing = others.putIfAbsent(c, glyph);
+            if (existing != null)
+                glyph = existing;
+        }
+        return glyph;
+    }
+
+    /**
+     * @return the font glyphs are drawn in.
+     */
+    public Font getFont () {
+        return font;
+    }
+
+    private synchronized Glyph rasterize (char c) {
+        int width = scratch.getWidth();
+        int height = scratch.getHeight();
+
+        Graphics2D g2 = scratch.createGraphics();
+        g2.setColor(Color.WHITE);
+        g2.fillRect(0, 0, width, height);
+        g2.setColor(Color.BLACK);
+        g2.setFont(font);
+        g2.drawString(String.valueOf(c), originX, originY);
+        g2.dispose();
+
+        int[] pixels = scratch.getRGB(0, 0, width, height, null, 0, width);
+
+        //find the box around the ink
+        int left = width, top = height, right = 0, bottom = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if ((pixels[y * width + x] & 0xffffff) != 0xffffff) {
+                    left = Math.min(left, x);
+                    right = Math.max(right, x + 1);
+                    top = Math.min(top, y);
+                    bottom = Math.max(bottom, y + 1);
+                }
+            }
+        }
+        if (right <= left)
+            return new Glyph(0, 0, 0, 0, new byte[0]);
+
+        int glyphWidth = right - left;
+        int glyphHeight = bottom - top;
+        byte[] coverage = new byte[glyphWidth * glyphHeight];
+        for (int y = 0; y < glyphHeight; y++) {
+            for (int x = 0; x < glyphWidth; x++) {
+                //ink was drawn in black on white, so coverage is how far the pixel is from white
+                coverage[y * glyphWidth + x] = (byte) (255 - (pixels[(top + y) * width + left + x] & 0xff));
+            }
+        }
+
+        return new Glyph(left - originX, top - originY, glyphWidth, glyphHeight, coverage);
+    }
+
+    /**
+     * The ink of one character.
+     */
+    public static class Glyph {
+        /** Position of the top left corner of the mask, relative to where the character is drawn. */
+        public final int x, y;
+        /** Size of the mask. */
+        public final int width, height;
+        /** Coverage of each pixel of the mask, from 0 (none) to 255 (full), row by row. */
+        final byte[] coverage;
+
+        Glyph (int x, int y, int width, int height, byte[] coverage) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.coverage = coverage;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.medlinchristopher.picturetoascii;
+
+import java.awt.*;
+import java.awt.image.DataBuffer;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+import com.medlinchristopher.picturetoascii.metrics.ConversionMetrics;
+import com.medlinchristopher.picturetoascii.metrics.Stage;
+
+/**
+ * Draws ASCII art as black or colored characters on a white image by copying glyphs out of a GlyphAtlas.
+ * <p>
+ * The layout is the one writeASCIIToImage has always used: every character is drawn fontSize + 2 pixels from
+ * the previous one, on a baseline fontSize + 2 pixels below the top of its row, and the image is one row taller
+ * than the art. Any rectangle of the image can be rendered on its own; every glyph that reaches into it is taken
+ * into account, in the order Graphics2D.drawString would have drawn them, so rectangles rendered separately line
+ * up exactly. With the default (non anti-aliased) text rendering the result is identical, pixel for pixel, to
+ * drawing every character with drawString.
+ *
+ * @since 1.1
+ */
+public class GlyphRenderer {
+
+    /** The font ASCII art images have always been drawn in. Java falls back to the Dialog font for it. */
+    public static final String FONT_NAME = "Meme font";
+
+    //Number of pixels rendered at a time when filling a raster.
+    private static final int PIXELS_PER_BAND = 1 << 18;
+
+    private static final int WHITE = 0xffffff;
+    private static final int BLACK = 0x000000;
+
+    private final ASCIIGrid grid;
+    //the glyph of every code used in the grid
+    private final GlyphAtlas.Glyph[] glyphs = new GlyphAtlas.Glyph[256];
+    private final int[][] colors;
+    private final int rows, cols, spacing;
+
+    //how far the glyphs used reach from the point they are drawn at
+    private int minX, minY, maxX, maxY;
+
+    /**
+     * Prepares to render a piece of ASCII art in the default font.
+     *
+     * @param asciiArt The ASCII art to be rendered.
+     * @param fontSize The size of the font the characters are drawn in.
+     */
+    public GlyphRenderer (char[][] asciiArt, int fontSize) {
+        this(asciiArt, null, fontSize);
+    }
+
+    /**
+     * Prepares to render a piece of ASCII art in the default font, drawing each character in its own color.
+     *
+     * @param asciiArt The ASCII art to be rendered.
+     * @param colors   The color of every character as 0xRRGGBB, or null to draw them all in black.
+     * @param fontSize The size of the font the characters are drawn in.
+     */
+    public GlyphRenderer (char[][] asciiArt, int[][] colors, int fontSize) {
+        this(asciiArt, colors, fontSize, new GlyphAtlas(new Font(FONT_NAME, Font.PLAIN, fontSize)));
+    }
+
+    /**
+     * Prepares to render a piece of ASCII art with the glyphs of an existing atlas.
+     *
+     * @param asciiArt The ASCII art to be rendered.
+     * @param fontSize The size of the font the characters are drawn in, which sets the spacing.
+     * @param atlas    Glyphs of the font the characters are drawn in.
+     */
+    public GlyphRenderer (char[][] asciiArt, int fontSize, GlyphAtlas atlas) {
+        this(asciiArt, null, fontSize, atlas);
+    }
+
+    /**
+     * Prepares to render a piece of ASCII art in color with the glyphs of an existing atlas.
+     *
+     * @param asciiArt The ASCII art to be rendered.
+     * @param colors   The color of every character as 0xRRGGBB, or null to draw them all in black.
+     * @param fontSize The size of the font the characters are drawn in, which sets the spacing.
+     * @param atlas    Glyphs of the font the characters are drawn in.
+     */
+    public GlyphRenderer (char[][] asciiArt, int[][] colors, int fontSize, GlyphAtlas atlas) {
+        this(ASCIIGrid.of(asciiArt), colors, fontSize, atlas);
+    }
+
+    /**
+     * Prepares to render a grid of ASCII art in the default font.
+     *
+     * @param grid     The ASCII art to be rendered.
+     * @param fontSize The size of the font the characters are drawn in.
+     */
+    public GlyphRenderer (ASCIIGrid grid, int fontSize) {
+        this(grid, null, fontSize);
+    }
+
+    /**
+     * Prepares to render a grid of ASCII art in the default font, drawing each character in its own color.
+     *
+     * @param grid     The ASCII art to be rendered.
+     * @param colors   The color of every character as 0xRRGGBB, or null to draw them all in black.
+     * @param fontSize The size of the font the characters are drawn in.
+     */
+    public GlyphRenderer (ASCIIGrid grid, int[][] colors, int fontSize) {
+        this(grid, colors, fontSize, new GlyphAtlas(new Font(FONT_NAME, Font.PLAIN, fontSize)));
+    }
+
+    /**
+     * Prepares to render a grid of ASCII art in color with the glyphs of an existing atlas.
+     *
+     * @param grid     The ASCII art to be rendered.
+     * @param colors   The color of every character as 0xRRGGBB, or null to draw them all in black.
+     * @param fontSize The size of the font the characters are drawn in, which sets the spacing.
+     * @param atlas    Glyphs of the font the characters are drawn in.
+     */
+    public GlyphRenderer (ASCIIGrid grid, int[][] colors, int fontSize, GlyphAtlas atlas) {
+        this.grid = grid;
+        this.colors = colors;
+        this.spacing = fontSize + 2;
+        this.rows = grid.getHeight();
+        this.cols = grid.getWidth();
+
+        //work out how far glyphs can reach into neighbouring cells, from the characters actually used
+        byte[] cells = grid.getCells();
+        char[] table = grid.getTable();
+        for (int i = 0; i < rows * cols; i++) {
+            int code = cells[i] & 0xff;
+            if (glyphs[code] == null) {
+                GlyphAtlas.Glyph glyph = atlas.get(table[code]);
+                glyphs[code] = glyph;
+                if (glyph.width > 0) {
+                    minX = Math.min(minX, glyph.x);
+                    minY = Math.min(minY, glyph.y);
+                    maxX = Math.max(maxX, glyph.x + glyph.width);
+                    maxY = Math.max(maxY, glyph.y + glyph.height);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the width of the rendered image in pixels.
+     */
+    public int getWidth () {
+        return cols * spacing;
+    }
+
+    /**
+     * @return the height of the rendered image in pixels.
+     */
+    public int getHeight () {
+        return (rows * spacing) + spacing;
+    }
+
+    /**
+     * Finds the pixels that the glyphs of a rectangle of characters can draw on.
+     *
+     * @param cells Columns and rows of characters.
+     * @return      The part of the image their glyphs can reach, which is empty if cells is.
+     */
+    public Rectangle cellBounds (Rectangle cells) {
+        if (cells.isEmpty())
+            return new Rectangle();
+        int left = cells.x * spacing + minX;
+        int top = cells.y * spacing + spacing + minY;
+        int right = (cells.x + cells.width - 1) * spacing + maxX;
+        int bottom = (cells.y + cells.height - 1) * spacing + spacing + maxY;
+        return new Rectangle(left, top, right - left, bottom - top).intersection(new Rectangle(0, 0, getWidth(), getHeight()));
+    }
+
+    /**
+     * Renders a rectangle of the image into an array of RGB pixels.
+     *
+     * @param x0  Left edge of the rectangle.
+     * @param y0  Top edge of the rectangle.
+     * @param w   Width of the rectangle.
+     * @param h   Height of the rectangle.
+     * @param rgb Receives the pixels of the rectangle, row by row, as 0xRRGGBB values.
+     */
+    public void render (int x0, int y0, int w, int h, int[] rgb) {
+        ConversionMetrics.Span span = ConversionMetrics.start(Stage.RENDER);
+        Arrays.fill(rgb, 0, w * h, WHITE);
+
+        //rows and columns of characters whose glyphs can reach into the rectangle
+        int rowStart = Math.max(0, Math.floorDiv(y0 - spacing - maxY, spacing));
+        int rowEnd = Math.min(rows, Math.floorDiv(y0 + h - spacing - minY, spacing) + 1);
+        int colStart = Math.max(0, Math.floorDiv(x0 - maxX, spacing));
+        int colEnd = Math.min(cols, Math.floorDiv(x0 + w - minX, spacing) + 1);
+
+        byte[] cells = grid.getCells();
+        for (int i = rowStart; i < rowEnd; i++) {
+            int offset = i * grid.getStride();
+            int[] rowColors = colors == null ? null : colors[i];
+            int baseline = (i * spacing) + spacing;
+            for (int j = colStart; j < colEnd; j++) {
+                GlyphAtlas.Glyph glyph = glyphs[cells[offset + j] & 0xff];
+                if (glyph.width > 0)
+                    blit(glyph, j * spacing + glyph.x, baseline + glyph.y, rowColors == null ? BLACK : rowColors[j] & WHITE,
+                            x0, y0, w, h, rgb);
+            }
+        }
+        ConversionMetrics.end(span, (long) w * h, 0);
+    }
+
+    /**
+     * Renders the whole image into a raster with at least 3 bands, holding red, green and blue.
+     *
+     * @param raster The raster to draw into, at least getWidth() by getHeight() pixels.
+     */
+    public void render (WritableRaster raster) {
+        int width = getWidth();
+        int bandHeight = Math.max(1, Math.min(getHeight(), PIXELS_PER_BAND / Math.max(1, width)));
+        int[] rgb = new int[width * bandHeight];
+        int[] samples = new int[width * bandHeight];
+
+        for (int y = 0; y < getHeight(); y += bandHeight) {
+            int h = Math.min(bandHeight, getHeight() - y);
+            render(0, y, width, h, rgb);
+            writePixels(raster, y, width, h, rgb, samples);
+        }
+    }
+
+    /**
+     * Copies rendered pixels into rows of a raster.
+     */
+    static void writePixels (WritableRaster raster, int y, int w, int h, int[] rgb, int[] samples) {
+        if (raster.getSampleModel() instanceof SinglePixelPackedSampleModel
+                && raster.getTransferType() == DataBuffer.TYPE_INT && raster.getNumBands() == 3) {
+            //TYPE_INT_RGB layout, pixels go in as they are
+            raster.setDataElements(0, y, w, h, rgb);
+            return;
+        }
+        for (int band = 0; band < raster.getNumBands(); band++) {
+            int shift = 16 - (band * 8);
+            for (int i = 0; i < w * h; i++)
+                samples[i] = band < 3 ? (rgb[i] >> shift) & 0xff : 0xff;
+            raster.setSamples(0, y, w, h, band, samples);
+        }
+    }
+
+    /**
+     * Draws the part of a glyph that falls inside a rectangle of pixels.
+     */
+    private static void blit (GlyphAtlas.Glyph glyph, int gx, int gy, int color, int x0, int y0, int w, int h, int[] rgb) {
+        int left = Math.max(gx, x0);
+        int right = Math.min(gx + glyph.width, x0 + w);
+        int top = Math.max(gy, y0);
+        int bottom = Math.min(gy + glyph.height, y0 + h);
+        byte[] coverage = glyph.coverage;
+
+        for (int y = top; y < bottom; y++) {
+            int src = (y - gy) * glyph.width + (left - gx);
+            int dst = (y - y0) * w + (left - x0);
+            for (int x = left; x < right; x++, src++, dst++) {
+                int alpha = coverage[src] & 0xff;
+                if (alpha == 255)
+                    rgb[dst] = color;
+                else if (alpha != 0)
+                    rgb[dst] = blend(rgb[dst], color, alpha);
+            }
+        }
+    }
+
+    private static int blend (int dst, int src, int alpha) {
+        int result = 0;
+        for (int shift = 0; shift < 24; shift += 8) {
+            int d = (dst >> shift) & 0xff;
+            int s = (src >> shift) & 0xff;
+            result |= (d + ((s - d) * alpha + 127) / 255) << shift;
+        }
+        return result;
+    }
+}
@@ -1,15 +1,17 @@
 package com.medlinchristopher.picturetoascii;
 
+import java.awt.GraphicsEnvironment;
 import java.awt.Toolkit;
 import java.awt.Dimension;
 import java.awt.Point;
 import javax.swing.JOptionPane;
 import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 
 import com.medlinchristopher.picturetoascii.util.OSUtils;
 
 //TODO: Add support for Mac OS X.
-//TODO: Add colored ASCII art possibility.
 //TODO: Set look and feel to system default.
 
 /**
@@ -67,6 +69,23 @@ public class Main
                  
 		System.out.println(failureMessage);     	
 
+		//serve conversions over HTTP until the process is stopped
+		if (args.length > 0 && args[0].equals(ConversionServer.COMMAND))
+		{
+			int code = ConversionServer.run(Arrays.copyOfRange(args, 1, args.length));
+			if (code != BatchConverter.EXIT_OK)
+				System.exit(code);
+			return;
+		}
+
+		//convert from the command line when given files, or when there is no screen to show the frame on
+		if (args.length > 0 || GraphicsEnvironment.isHeadless())
+		{
+			File output = dirSuccess ? new File(dir, "output") : null;
+			File cache = dirSuccess ? new File(dir, "cache") : null;
+			System.exit(BatchConverter.run(args, output, cache));
+		}
+
 		Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
 
 		if (!dirSuccess) //if directories failed to be made
@@ -74,6 +93,15 @@ public class Main
 		
 		//places frame in center of screen
 		ASCIIConverterFrame acf = new ASCIIConverterFrame(new Point((int) screenSize.getWidth()/2, (int) screenSize.getHeight()/2));
+
+		if (dirSuccess)
+		{
+			try {
+				acf.setCache(new ConversionCache(new File(dir, "cache"), ConversionCache.DEFAULT_MEMORY_BYTES, ConversionCache.DEFAULT_DISK_BYTES));
+			} catch (IOException e) {
+				System.out.println("Not using the conversion cache: " + e.getMessage());
+			}
+		}
 		
 		
 	}
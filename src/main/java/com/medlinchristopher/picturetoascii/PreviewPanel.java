@@ -3,12 +3,13 @@ package com.medlinchristopher.picturetoascii;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.net.URL;
 
 /**
  * Panel on which the produced ASCII art is previewed on.
  *
- * Also contains a loading icon, which can be set as visible or invisible
- * by the setLoading method.
+ * The preview is scaled to fit the panel, keeping its proportions. Also contains a loading icon, which can be
+ * set as visible or invisible by the setLoading method.
  *
  * @author Christopher Medlin
  */
@@ -21,10 +22,16 @@ public class PreviewPanel extends JPanel {
      * @param preview the default preview image.
      */
     public PreviewPanel (BufferedImage preview) {
-        //set up the loading icon
-        loading = new JLabel(new ImageIcon (
-                this.getClass().getResource("/img/loading.gif")
-        ));
+        this.preview = preview;
+        setLayout(new BorderLayout());
+        setBackground(Color.WHITE);
+
+        //set up the loading icon, falling back to text when the icon is not bundled
+        URL icon = this.getClass().getResource("/img/loading.gif");
+        loading = icon != null ? new JLabel(new ImageIcon(icon)) : new JLabel("Loading...");
+        loading.setHorizontalAlignment(SwingConstants.CENTER);
+        loading.setVisible(false);
+        add(loading, BorderLayout.SOUTH);
     }
 
     /**
@@ -37,18 +44,28 @@ public class PreviewPanel extends JPanel {
     }
 
     /**
-     * Sets the ASCII art that will be drawn to this panel.
+     * Sets the ASCII art that will be drawn to this panel, and repaints it.
      *
-     * @param preview a 2 dimensional character array containing
-     *                the ASCII art.
+     * @param preview an image of the ASCII art, or null to clear the panel.
      */
     public void setPreview (BufferedImage preview) {
         this.preview = preview;
+        repaint();
     }
 
     @Override
     public void paintComponent (Graphics g) {
-        //draw the preview image (if any)
-        g.drawImage(preview, 0, 0, null);
+        super.paintComponent(g);
+
+        //draw the preview image (if any), as large as fits
+        if (preview == null)
+            return;
+        double scale = Math.min((double) getWidth() / preview.getWidth(), (double) getHeight() / preview.getHeight());
+        int w = Math.max(1, (int) (preview.getWidth() * scale));
+        int h = Math.max(1, (int) (preview.getHeight() * scale));
+        Graphics2D g2 = (Graphics2D) g.create();
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2.drawImage(preview, (getWidth() - w) / 2, (getHeight() - h) / 2, w, h, null);
+        g2.dispose();
     }
 }
@@ -0,0 +1,300 @@
+package com.medlinchristopher.picturetoascii;
+
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.event.IIOReadUpdateListener;
+import javax.imageio.stream.ImageInputStream;
+
+import com.medlinchristopher.picturetoascii.image.LuminanceIndex;
+
+/**
+ * Renders small previews of the ASCII art of an image, from coarse to fine.
+ * <p>
+ * A preview never holds more characters than can be told apart once it is scaled into the preview area, so the
+ * finest level uses larger blocks than the conversion itself when the image is large. Coarser levels double the
+ * block size each time. Every level is worked out from a summed-area table of the image, or of a thumbnail or
+ * subsampled copy of it, so each one costs time in proportion to its characters only.
+ *
+ * @since 1.1
+ */
+public class PreviewRenderer {
+
+    /** Number of levels from the coarsest preview to the finest. */
+    public static final int LEVELS = 4;
+
+    //the finest level is rendered at up to this many times the size of the preview area
+    private static final int OVERSAMPLING = 2;
+
+    private final int width, height;
+    private final int fontSize;
+    private final GlyphAtlas atlas;
+    private final int[] blockSizes;
+
+    /**
+     * Prepares to preview an image.
+     *
+     * @param width         The width of the image in pixels.
+     * @param height        The height of the image in pixels.
+     * @param pixelsPerChar The block size the image is being converted with.
+     * @param fontSize      The size of the font the characters are drawn in.
+     * @param areaWidth     The width of the area the preview is shown in.
+     * @param areaHeight    The height of the area the preview is shown in.
+     */
+    public PreviewRenderer (int width, int height, int pixelsPerChar, int fontSize, int areaWidth, int areaHeight) {
+        this.width = width;
+        this.height = height;
+        this.fontSize = fontSize;
+        this.atlas = new GlyphAtlas(new Font(GlyphRenderer.FONT_NAME, Font.PLAIN, fontSize));
+
+        //smallest block whose characters still fit in the oversampled area
+        long spacing = fontSize + 2;
+        int finest = Math.max(pixelsPerChar, Math.max(
+                ceilDiv(width * spacing, (long) Math.max(1, areaWidth) * OVERSAMPLING),
+                ceilDiv(height * spacing, (long) Math.max(1, areaHeight) * OVERSAMPLING)));
+        finest = Math.max(1, Math.min(finest, Math.min(width, height)));
+
+        int levels = 1;
+        while (levels < LEVELS && (long) finest << levels <= Math.min(width, height))
+            levels++;
+        blockSizes = new int[levels];
+        for (int i = 0; i < levels; i++)
+            blockSizes[i] = finest << (levels - 1 - i);
+    }
+
+    /**
+     * @return the block sizes of the preview levels, coarsest first, in pixels of the full image.
+     */
+    public int[] getBlockSizes () {
+        return blockSizes.clone();
+    }
+
+    /**
+     * Renders one level of the preview.
+     *
+     * @param index     The summed-area table of the image, or of a smaller copy of it.
+     * @param blockSize The block size of the level, in pixels of the full image.
+     * @param ramp      The characters that the ASCII generator has to choose from.
+     * @return          An image of the ASCII art, or null if it has no characters.
+     */
+    public BufferedImage render (LuminanceIndex index, int blockSize, CharRamp ramp) {
+        //a smaller copy needs proportionally smaller blocks
+        int blockWidth = Math.max(1, (int) Math.round((double) blockSize * index.getWidth() / width));
+        int blockHeight = Math.max(1, (int) Math.round((double) blockSize * index.getHeight() / height));
+        if (blockWidth > index.getWidth() || blockHeight > index.getHeight())
+            return null;
+
+        ASCIIGrid grid = ASCIIConversion.imageToASCIIGrid(index, blockWidth, blockHeight, ramp);
+        GlyphRenderer renderer = new GlyphRenderer(grid, null, fontSize, atlas);
+        if (renderer.getWidth() == 0)
+            return null;
+        BufferedImage preview = new BufferedImage(renderer.getWidth(), renderer.getHeight(), BufferedImage.TYPE_INT_RGB);
+        renderer.render(preview.getRaster());
+        return preview;
+    }
+
+    /**
+     * Reads the size of an image file without decoding it.
+     *
+     * @param input The image file.
+     * @return      The width and height of the image.
+     * @throws IOException if the file cannot be read or is not an image.
+     */
+    public static Dimension readSize (File input) throws IOException {
+        return read(input, true, new ReaderTask<Dimension>() {
+            @Override
+            public Dimension run (ImageReader reader, int imageIndex) throws IOException {
+                return new Dimension(reader.getWidth(imageIndex), reader.getHeight(imageIndex));
+            }
+        });
+    }
+
+    /**
+     * Reads the thumbnail stored in an image file, such as the one many JPEGs carry, without decoding the image.
+     *
+     * @param input The image file.
+     * @return      The thumbnail, or null if the file has none.
+     * @throws IOException if the file cannot be read or is not an image.
+     */
+    public static BufferedImage readThumbnail (File input) throws IOException {
+        //thumbnails are kept in the metadata, so it cannot be skipped
+        return read(input, false, new ReaderTask<BufferedImage>() {
+            @Override
+            public BufferedImage run (ImageReader reader, int imageIndex) throws IOException {
+                if (!reader.readerSupportsThumbnails() || reader.getNumThumbnails(imageIndex) == 0)
+                    return null;
+                return reader.readThumbnail(imageIndex, 0);
+            }
+        });
+    }
+
+    /**
+     * Decodes every so many pixels of an image file, so the copy has no more than the given number of pixels.
+     *
+     * @param input     The image file.
+     * @param maxPixels The most pixels the copy may have.
+     * @return          The copy.
+     * @throws IOException if the file cannot be read or is not an image.
+     */
+    public static BufferedImage readSubsampled (File input, long maxPixels) throws IOException {
+        return readSubsampled(input, maxPixels, null);
+    }
+
+    /**
+     * Decodes every so many pixels of an image file, so the copy has no more than the given number of pixels, and
+     * hands over a coarse copy of the whole image as soon as the first pass of a progressive JPEG is decoded.
+     * <p>
+     * Decoding fewer pixels hardly saves any time, since the reader still has to decode the whole file, so the first
+     * pass of a progressive image is the only coarse copy that comes much sooner than the full one.
+     *
+     * @param input     The image file.
+     * @param maxPixels The most pixels the copy may have.
+     * @param firstPass Receives the copy once its first pass is decoded, if there are more passes to come, or null.
+     * @return          The copy.
+     * @throws InterruptedIOException if the thread is interrupted, which stops the decode part of the way through.
+     * @throws IOException if the file cannot be read or is not an image.
+     */
+    public static BufferedImage readSubsampled (final File input, final long maxPixels, final PassListener firstPass) throws IOException {
+        return read(input, true, new ReaderTask<BufferedImage>() {
+            @Override
+            public BufferedImage run (ImageReader reader, int imageIndex) throws IOException {
+                long pixels = (long) reader.getWidth(imageIndex) * reader.getHeight(imageIndex);
+                int step = Math.max(1, (int) Math.ceil(Math.sqrt((double) pixels / Math.max(1, maxPixels))));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                //the passes of interlaced PNGs leave the pixels of later passes blank, so only JPEG passes are shown
+                if (firstPass != null && reader.getFormatName().equalsIgnoreCase("jpeg"))
+                    reader.addIIOReadUpdateListener(new FirstPassListener(firstPass));
+                //readers ignore interrupts, and can only be aborted from the thread decoding
+                AbortOnInterrupt abort = new AbortOnInterrupt();
+                reader.addIIOReadProgressListener(abort);
+                BufferedImage image = reader.read(imageIndex, param);
+                if (abort.aborted)
+                    throw new InterruptedIOException("Decoding " + input + " was interrupted.");
+                return image;
+            }
+        });
+    }
+
+    private static <T> T read (File input, boolean ignoreMetadata, ReaderTask<T> task) throws IOException {
+        ImageInputStream stream = ImageIO.createImageInputStream(input);
+        if (stream == null)
+            throw new FileNotFoundException("Cannot open " + input);
+
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext())
+                throw new IOException("Not a supported image: " + input);
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, false, ignoreMetadata);
+                return task.run(reader, reader.getMinIndex());
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static int ceilDiv (long a, long b) {
+        return (int) Math.min(Integer.MAX_VALUE, (a + b - 1) / b);
+    }
+
+    /**
+     * Receives a partly decoded image.
+     */
+    public interface PassListener {
+        /**
+         * @param image The image as far as it has been decoded. It goes on being decoded into after this returns.
+         */
+        void passDecoded (BufferedImage image);
+    }
+
+    /**
+     * Hands the image to a PassListener when the first of several passes is complete.
+     */
+    private static class FirstPassListener implements IIOReadUpdateListener {
+        private final PassListener listener;
+        private boolean lastPass, done;
+
+        FirstPassListener (PassListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void passStarted (ImageReader source, BufferedImage image, int pass, int minPass, int maxPass,
+                int minX, int minY, int periodX, int periodY, int[] bands) {
+            lastPass = pass >= maxPass;
+        }
+
+        @Override
+        public void passComplete (ImageReader source, BufferedImage image) {
+            if (!done && !lastPass)
+                listener.passDecoded(image);
+            done = true;
+        }
+
+        @Override
+        public void imageUpdate (ImageReader source, BufferedImage image, int minX, int minY, int width, int height,
+                int periodX, int periodY, int[] bands) {
+        }
+
+        @Override
+        public void thumbnailPassStarted (ImageReader source, BufferedImage thumbnail, int pass, int minPass,
+                int maxPass, int minX, int minY, int periodX, int periodY, int[] bands) {
+        }
+
+        @Override
+        public void thumbnailUpdate (ImageReader source, BufferedImage thumbnail, int minX, int minY, int width,
+                int height, int periodX, int periodY, int[] bands) {
+        }
+
+        @Override
+        public void thumbnailPassComplete (ImageReader source, BufferedImage thumbnail) {
+        }
+    }
+
+    /**
+     * Aborts a read once the thread decoding is interrupted, as SwingWorker.cancel(true) does.
+     */
+    private static class AbortOnInterrupt implements IIOReadProgressListener {
+        private boolean aborted;
+
+        @Override
+        public void imageProgress (ImageReader source, float percentageDone) {
+            if (Thread.currentThread().isInterrupted())
+                source.abort();
+        }
+
+        @Override
+        public void readAborted (ImageReader source) {
+            aborted = true;
+        }
+
+        @Override public void sequenceStarted (ImageReader source, int minIndex) { }
+        @Override public void sequenceComplete (ImageReader source) { }
+        @Override public void imageStarted (ImageReader source, int imageIndex) { }
+        @Override public void imageComplete (ImageReader source) { }
+        @Override public void thumbnailStarted (ImageReader source, int imageIndex, int thumbnailIndex) { }
+        @Override public void thumbnailProgress (ImageReader source, float percentageDone) { }
+        @Override public void thumbnailComplete (ImageReader source) { }
+    }
+
+    /**
+     * Something read from an image with its reader.
+     */
+    private interface ReaderTask<T> {
+        T run (ImageReader reader, int imageIndex) throws IOException;
+    }
+}
@@ -0,0 +1,215 @@
+package com.medlinchristopher.picturetoascii;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.medlinchristopher.picturetoascii.image.AnimationReader;
+import com.medlinchristopher.picturetoascii.image.LuminanceSampler;
+
+/**
+ * Converts every frame of an animation into ASCII art.
+ * <p>
+ * Frames go through three stages at once: one thread decodes frames, another converts them, and the calling thread
+ * hands them to the writer. The stages are joined by small bounded queues, so a slow writer holds the other stages
+ * back instead of letting decoded frames pile up in memory.
+ * <p>
+ * Only characters whose block of pixels lies in the changed area of a frame are worked out again; the rest are taken
+ * from the previous frame by copying its grid, which is one byte per character, and a frame that did not change at
+ * all shares the grid of the previous one. The writer is told which characters really differ, so it can skip
+ * rendering the others.
+ *
+ * @since 1.1
+ */
+public class SequenceConversion {
+
+    //frames waiting between two stages
+    private static final int QUEUE_SIZE = 2;
+
+    private static final Object END = new Object();
+
+    /**
+     * Converts the frames of an animation and writes them out.
+     *
+     * @param reader        The frames to convert. It is read to the end but not closed.
+     * @param pixelsPerChar The amount of pixels whose average greyscale will be taken and assigned to an ASCII symbol.
+     * @param ramp          The characters that the ASCII generator has to choose from.
+     * @param writer        Receives the frames of ASCII art in order. It is not closed.
+     * @return              The number of frames written.
+     * @throws IOException if a frame cannot be read or written.
+     */
+    public static int convert (final AnimationReader reader, final int pixelsPerChar, final CharRamp ramp,
+            ASCIIAnimationWriter writer) throws IOException {
+        final BlockingQueue<Object> decoded = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        final BlockingQueue<Object> converted = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        //set once the calling thread gives up on the stages, after which nothing takes from the queues
+        final AtomicBoolean stopped = new AtomicBoolean();
+        ExecutorService stages = Executors.newFixedThreadPool(2, new ThreadFactory() {
+            @Override
+            public Thread newThread (Runnable r) {
+                Thread thread = new Thread(r, "ascii-sequence");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        try {
+            Future<Void> decoder = stages.submit(new Callable<Void>() {
+                @Override
+                public Void call () throws Exception {
+                    try {
+                        AnimationReader.Frame frame;
+                        while ((frame = reader.next()) != null)
+                            decoded.put(frame);
+                    } finally {
+                        if (!stopped.get())
+                            decoded.put(END);
+                    }
+                    return null;
+                }
+            });
+            Future<Void> converter = stages.submit(new Callable<Void>() {
+                @Override
+                public Void call () throws Exception {
+                    try {
+                        ConvertedFrame previous = null;
+                        Object item;
+                        while ((item = decoded.take()) != END) {
+                            previous = convertFrame((AnimationReader.Frame) item, previous, pixelsPerChar, ramp);
+                            converted.put(previous);
+                        }
+                    } finally {
+                        if (!stopped.get())
+                            converted.put(END);
+                    }
+                    return null;
+                }
+            });
+
+            int frames = 0;
+            Object item;
+            while ((item = converted.take()) != END) {
+                ConvertedFrame frame = (ConvertedFrame) item;
+                writer.writeFrame(frame.grid, frame.changed, frame.delay);
+                frames++;
+            }
+            //the converter has stopped, so if it failed the decoder may be stuck waiting for it
+            check(converter);
+            check(decoder);
+            return frames;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while converting frames.");
+        } finally {
+            stopped.set(true);
+            stages.shutdownNow();
+            awaitStages(stages);
+        }
+    }
+
+    /**
+     * Waits for the stages to stop, since the caller closes the reader as soon as convert returns and the decoder may
+     * still be reading a frame from it.
+     */
+    private static void awaitStages (ExecutorService stages) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (stages.awaitTermination(1, TimeUnit.MINUTES))
+                    break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Works out the characters of a frame, reusing those of the previous frame outside the changed area.
+     */
+    static ConvertedFrame convertFrame (AnimationReader.Frame frame, ConvertedFrame previous, int pixelsPerChar, CharRamp ramp) {
+        LuminanceSampler sampler = LuminanceSampler.create(frame.image);
+        int rows = frame.image.getHeight() / pixelsPerChar;
+        int cols = frame.image.getWidth() / pixelsPerChar;
+
+        if (previous == null) {
+            ASCIIGrid grid = new ASCIIGrid(cols, rows, ramp);
+            ASCIIConversion.convertRegion(sampler, grid, null, 0, rows, 0, cols, pixelsPerChar, ramp);
+            return new ConvertedFrame(grid, new Rectangle(0, 0, cols, rows), frame.delay);
+        }
+
+        //characters whose blocks hold a changed pixel
+        Rectangle pixels = frame.changed;
+        int colStart = pixels.x / pixelsPerChar;
+        int colEnd = Math.min(cols, (pixels.x + pixels.width + pixelsPerChar - 1) / pixelsPerChar);
+        int rowStart = pixels.y / pixelsPerChar;
+        int rowEnd = Math.min(rows, (pixels.y + pixels.height + pixelsPerChar - 1) / pixelsPerChar);
+
+        if (pixels.isEmpty() || colStart >= colEnd || rowStart >= rowEnd)
+            return new ConvertedFrame(previous.grid, new Rectangle(), frame.delay);
+        ASCIIGrid grid = previous.grid.copy();
+        ASCIIConversion.convertRegion(sampler, grid, null, rowStart, rowEnd, colStart, colEnd, pixelsPerChar, ramp);
+
+        //a changed block does not always give a different character
+        byte[] before = previous.grid.getCells();
+        byte[] after = grid.getCells();
+        int left = Integer.MAX_VALUE, right = -1, top = -1, bottom = -1;
+        for (int row = rowStart; row < rowEnd; row++) {
+            int offset = row * grid.getStride();
+            boolean same = true;
+            for (int col = colStart; col < colEnd; col++) {
+                if (before[offset + col] != after[offset + col]) {
+                    left = Math.min(left, col);
+                    right = Math.max(right, col);
+                    same = false;
+                }
+            }
+            if (!same) {
+                if (top < 0)
+                    top = row;
+                bottom = row;
+            }
+        }
+        Rectangle changed = top < 0 ? new Rectangle() : new Rectangle(left, top, right - left + 1, bottom - top + 1);
+        return new ConvertedFrame(grid, changed, frame.delay);
+    }
+
+    private static void check (Future<Void> stage) throws IOException, InterruptedException {
+        try {
+            stage.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IOException("Failed to convert frames.", cause);
+        }
+    }
+
+    /**
+     * The ASCII art of one frame.
+     */
+    static class ConvertedFrame {
+        final ASCIIGrid grid;
+        final Rectangle changed;
+        final int delay;
+
+        ConvertedFrame (ASCIIGrid grid, Rectangle changed, int delay) {
+            this.grid = grid;
+            this.changed = changed;
+            this.delay = delay;
+        }
+    }
+}
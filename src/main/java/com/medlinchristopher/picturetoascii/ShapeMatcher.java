@@ -0,0 +1,245 @@
+package com.medlinchristopher.picturetoascii;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Picks characters by where the light and dark parts of each block are, rather than by its brightness alone, so that
+ * edges and lines come out as characters of the same shape.
+ * <p>
+ * Every block is split into a grid of cells, 2 by 2 or 3 by 3, and so is the glyph of every character of the ramp, in
+ * the font the art is drawn in. How much ink each cell of a glyph holds gives the brightness the character stands for
+ * in that cell, scaled so that the inkiest cell of any glyph is black. A block gets the character whose cells are
+ * closest to its own, as the sum of the squared differences.
+ * <p>
+ * Matching is a single lookup. A block is reduced to its mean brightness (32 levels), to how much brighter its bright
+ * cells are than its dark ones (3 levels), and to which of its cells are brighter than the mean, and the character of
+ * every such reduction is worked out when the matcher is created. Blocks with hardly any contrast get the character
+ * the ramp gives their mean brightness, exactly as they would without shape matching.
+ *
+ * @since 1.1
+ */
+public final class ShapeMatcher {
+
+    /** The size glyphs are rasterized at to measure their ink. */
+    public static final int FEATURE_FONT_SIZE = 24;
+
+    /**
+     * The fewest pixels across each cell at which matching takes at most twice as long as choosing characters by
+     * brightness, as measured by ShapeMatcherBenchmark. Smaller cells are read a pixel or two at a time.
+     */
+    public static final int MIN_PIXELS_PER_CELL = 4;
+
+    private static final int MEAN_SHIFT = 3;
+    private static final int MEAN_LEVELS = 256 >> MEAN_SHIFT;
+    //bright cells less than this much brighter than dark ones make a flat block
+    private static final int FLAT = 32;
+    //contrast levels above flat, from the lowest contrast of each level, and the contrast each level stands for
+    private static final int[] CONTRAST_FLOORS = {FLAT, 80, 144};
+    private static final int[] CONTRAST_CENTERS = {56, 112, 192};
+
+    private final CharRamp ramp;
+    private final int cells, size;
+    private final int[] contrastLevels = new int[256];
+    //x / k is (x * RECIPROCALS[k]) >>> 16 for every x up to 255 * 9, as ceil(2^16 / k) is less than k / 2^16 too large
+    private static final int[] RECIPROCALS = new int[10];
+    static {
+        for (int k = 1; k < RECIPROCALS.length; k++)
+            RECIPROCALS[k] = ((1 << 16) + k - 1) / k;
+    }
+    private final byte[] table;
+
+    /**
+     * Measures the glyphs of a ramp in the font ASCII art images are drawn in.
+     *
+     * @param ramp  The characters to choose from.
+     * @param cells The number of cells across and down each block, 2 or 3.
+     */
+    public ShapeMatcher (CharRamp ramp, int cells) {
+        this(ramp, cells, new Font(GlyphRenderer.FONT_NAME, Font.PLAIN, FEATURE_FONT_SIZE));
+    }
+
+    /**
+     * Measures the glyphs of a ramp in a font.
+     *
+     * @param ramp  The characters to choose from.
+     * @param cells The number of cells across and down each block, 2 or 3.
+     * @param font  The font the characters are shown in.
+     * @throws IllegalArgumentException if cells is not 2 or 3.
+     */
+    public ShapeMatcher (CharRamp ramp, int cells, Font font) {
+        if (cells < 2 || cells > 3)
+            throw new IllegalArgumentException("Blocks can be split into 2x2 or 3x3 cells, not " + cells + "x" + cells);
+        this.ramp = ramp;
+        this.cells = cells;
+        this.size = cells * cells;
+
+        for (int contrast = 0; contrast < 256; contrast++)
+            for (int floor : CONTRAST_FLOORS)
+                if (contrast >= floor)
+                    contrastLevels[contrast]++;
+
+        //every code the ramp gives, in order from darkest
+        byte[] codes = new byte[256];
+        int count = 0;
+        for (int greyscale = 0; greyscale < 256; greyscale++)
+            if (count == 0 || ramp.codeFor(greyscale) != codes[count - 1])
+                codes[count++] = ramp.codeFor(greyscale);
+
+        int[][] features = measure(ramp.getCodeTable(), codes, count, font);
+        table = new byte[MEAN_LEVELS * CONTRAST_CENTERS.length << size];
+        int[] block = new int[size];
+        for (int index = 0; index < table.length; index++) {
+            int pattern = index & ((1 << size) - 1);
+            int level = (index >> size) % CONTRAST_CENTERS.length;
+            int mean = ((index >> size) / CONTRAST_CENTERS.length << MEAN_SHIFT) + (1 << MEAN_SHIFT) / 2;
+            int bright = Integer.bitCount(pattern);
+            if (bright == 0) {
+                table[index] = ramp.codeFor(mean);
+                continue;
+            }
+
+            //the block the reduction stands for: the same mean, with the bright cells that much brighter than the dark
+            int contrast = CONTRAST_CENTERS[level];
+            for (int cell = 0; cell < size; cell++) {
+                int value = (pattern & (1 << cell)) != 0 ? mean + contrast * (size - bright) / size : mean - contrast * bright / size;
+                block[cell] = Math.max(0, Math.min(255, value));
+            }
+            table[index] = codes[nearest(features, count, block)];
+        }
+    }
+
+    /**
+     * Works out the brightness every glyph stands for in each of its cells.
+     */
+    private int[][] measure (char[] codeTable, byte[] codes, int count, Font font) {
+        GlyphAtlas atlas = new GlyphAtlas(font);
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = scratch.createGraphics();
+        FontMetrics metrics = g2.getFontMetrics(font);
+        g2.dispose();
+
+        //the box each character is shown in: as wide as the widest of them, from the top of the line to the bottom
+        int top = -metrics.getAscent();
+        int height = Math.max(1, metrics.getAscent() + metrics.getDescent());
+        int width = 1;
+        for (int i = 0; i < count; i++)
+            width = Math.max(width, metrics.charWidth(codeTable[codes[i] & 0xff]));
+
+        long[][] ink = new long[count][size];
+        long mostInk = 0;
+        for (int i = 0; i < count; i++) {
+            GlyphAtlas.Glyph glyph = atlas.get(codeTable[codes[i] & 0xff]);
+            for (int y = 0; y < glyph.height; y++) {
+                int boxY = glyph.y + y - top;
+                if (boxY < 0 || boxY >= height)
+                    continue;
+                for (int x = 0; x < glyph.width; x++) {
+                    int boxX = glyph.x + x;
+                    if (boxX < 0 || boxX >= width)
+                        continue;
+                    ink[i][(boxY * cells / height) * cells + boxX * cells / width] += glyph.coverage[y * glyph.width + x] & 0xff;
+                }
+            }
+            for (int cell = 0; cell < size; cell++) {
+                //ink per pixel of the cell, times 255
+                int cellWidth = (cell % cells + 1) * width / cells - (cell % cells) * width / cells;
+                int cellHeight = (cell / cells + 1) * height / cells - (cell / cells) * height / cells;
+                ink[i][cell] = ink[i][cell] / Math.max(1, cellWidth * cellHeight);
+                mostInk = Math.max(mostInk, ink[i][cell]);
+            }
+        }
+
+        int[][] features = new int[count][size];
+        for (int i = 0; i < count; i++)
+            for (int cell = 0; cell < size; cell++)
+                features[i][cell] = mostInk == 0 ? 255 : (int) (255 - ink[i][cell] * 255 / mostInk);
+        return features;
+    }
+
+    /**
+     * @return the glyph whose cells are closest to those of a block, the darkest of them on a tie.
+     */
+    private int nearest (int[][] features, int count, int[] block) {
+        int best = 0;
+        long bestDistance = Long.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            long distance = 0;
+            for (int cell = 0; cell < size; cell++) {
+                int difference = features[i][cell] - block[cell];
+                distance += difference * difference;
+            }
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the characters matched against.
+     */
+    public CharRamp getRamp () {
+        return ramp;
+    }
+
+    /**
+     * @return the number of cells across and down each block.
+     */
+    public int getCells () {
+        return cells;
+    }
+
+    /**
+     * @return the smallest block, in pixels across and down, that is matched at most twice as slowly as by
+     *         brightness.
+     */
+    public int getMinPixelsPerChar () {
+        return MIN_PIXELS_PER_CELL * cells;
+    }
+
+    /**
+     * Gets the character for a block.
+     *
+     * @param averages The average greyscale of each cell of the block, from 0 to 255, row by row.
+     * @return         The character whose shape is closest.
+     */
+    public char charFor (int... averages) {
+        if (averages.length != size)
+            throw new IllegalArgumentException("Expected " + size + " cells but got " + averages.length);
+        return ramp.getCodeTable()[codeFor(averages, 0) & 0xff];
+    }
+
+    /**
+     * Gets the code ASCIIGrid stores the character for a block under.
+     *
+     * @param averages Holds the average greyscale of each cell of the block, row by row.
+     * @param offset   The index of the first cell.
+     * @return         The code of the character whose shape is closest.
+     */
+    byte codeFor (int[] averages, int offset) {
+        int sum = 0;
+        for (int cell = 0; cell < size; cell++)
+            sum += averages[offset + cell];
+        int mean = (sum * RECIPROCALS[size]) >>> 16;
+
+        //without branches, as whether a cell is bright cannot be predicted
+        int pattern = 0, bright = 0, brightSum = 0;
+        for (int cell = 0; cell < size; cell++) {
+            int value = averages[offset + cell];
+            int isBright = (mean - value) >>> 31;
+            pattern |= isBright << cell;
+            bright += isBright;
+            brightSum += value & -isBright;
+        }
+        if (bright == 0)
+            return ramp.codeFor(mean);
+        int level = contrastLevels[((brightSum * RECIPROCALS[bright]) >>> 16) - (((sum - brightSum) * RECIPROCALS[size - bright]) >>> 16)];
+        if (level == 0)
+            return ramp.codeFor(mean);
+        return table[((mean >> MEAN_SHIFT) * CONTRAST_CENTERS.length + level - 1) << size | pattern];
+    }
+}
@@ -0,0 +1,460 @@
+package com.medlinchristopher.picturetoascii;
+
+import javax.imageio.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import com.medlinchristopher.picturetoascii.image.BigBufferedImage;
+import com.medlinchristopher.picturetoascii.image.CountingImageInputStream;
+import com.medlinchristopher.picturetoascii.image.LuminanceSampler;
+import com.medlinchristopher.picturetoascii.image.MemoryPlanner;
+import com.medlinchristopher.picturetoascii.metrics.ConversionMetrics;
+import com.medlinchristopher.picturetoascii.metrics.Stage;
+
+/**
+ * Converts images to ASCII art without decoding more of the image at once than memory allows.
+ * <p>
+ * The image is decoded in horizontal strips, as tall as the MemoryPlanner finds room for, which is the whole image
+ * when it fits. Each strip is a whole number of rows of characters tall, is reduced to those rows as soon as it has
+ * been decoded, and is then overwritten by the next strip. Peak memory therefore depends on the width of the image
+ * and the memory available, and not on the height of the image.
+ * <p>
+ * Strips are decoded one at a time using ImageReadParam.setSourceRegion, the way BigBufferedImage.RangeLoader loads
+ * its parts. Readers for formats that cannot seek to a row, such as PNG and JPEG, scan the compressed data from the
+ * start for every strip, so when such an image needs more than a couple of strips it is instead decoded once into a
+ * BigBufferedImage, backed by memory-mapped temporary files, and the strips are copied out of it.
+ *
+ * @since 1.1
+ */
+public class StreamingConversion {
+
+    /**
+     * Converts an image file into an array of ASCII symbols, holding no more than a strip of it in memory at a time.
+     * <p>
+     * The result is the same as that of ASCIIConversion.imageToASCII on the fully decoded image.
+     *
+     * @param input         The image file that is to be converted into ASCII art.
+     * @param pixelsPerChar The amount of pixels whose average greyscale will be taken and assigned to an ASCII symbol.
+     * @param ramp          The characters that the ASCII generator has to choose from.
+     * @return              A character array containing the ASCII art.
+     * @throws IOException if the file cannot be read or is not an image.
+     */
+    public static char[][] convert (File input, int pixelsPerChar, CharRamp ramp) throws IOException {
+        return convert(input, pixelsPerChar, ramp, null);
+    }
+
+    /**
+     * Converts an image file into an array of ASCII symbols, converting each strip on a fork/join pool.
+     *
+     * @param input         The image file that is to be converted into ASCII art.
+     * @param pixelsPerChar The amount of pixels whose average greyscale will be taken and assigned to an ASCII symbol.
+     * @param ramp          The characters that the ASCII generator has to choose from.
+     * @param pool          The pool each strip is converted on, or null to convert on the calling thread.
+     * @return              A character array containing the ASCII art.
+     * @throws IOException if the file cannot be read or is not an image.
+     */
+    public static char[][] convert (File input, int pixelsPerChar, CharRamp ramp, ForkJoinPool pool) throws IOException {
+        return convertToGrid(input, pixelsPerChar, ramp, pool).toArray();
+    }
+
+    /**
+     * Converts an image file into a grid of ASCII symbols, holding no more than a strip of it in memory at a time.
+     *
+     * @param input         The image file that is to be converted into ASCII art.
+     * @param pixelsPerChar The amount of pixels whose average greyscale will be taken and assigned to an ASCII symbol.
+     * @param ramp          The characters that the ASCII generator has to choose from.
+     * @param pool          The pool each strip is converted on, or null to convert on the calling thread.
+     * @return              A grid containing the ASCII art.
+     * @throws IOException if the file cannot be read or is not an image.
+     */
+    public static ASCIIGrid convertToGrid (File input, int pixelsPerChar, CharRamp ramp, ForkJoinPool pool) throws IOException {
+        return convertToGrid(input, pixelsPerChar, ramp, null, pool);
+    }
+
+    /**
+     * Converts an image file into a grid of ASCII symbols, and works out the average color behind each of them in the
+     * same pass over each strip, holding no more than a strip of the image in memory at a time. See
+     * ASCIIConversion.imageToColoredASCIIGrid.
+     *
+     * @param input         The image file that is to be converted into ASCII art.
+     * @param pixelsPerChar The amount of pixels whose average greyscale will be taken and assigned to an ASCII symbol.
+     * @param ramp          The characters that the ASCII generator has to choose from.
+     * @param colors        Receives the color of every character. It must have as many rows and columns as the art.
+     * @param pool          The pool each strip is converted on, or null to convert on the calling thread.
+     * @return              A grid containing the ASCII art.
+     * @throws IOException if the file cannot be read or is not an image.
+     * @throws IllegalArgumentException if colors is not the size of the art.
+     */
+    public static ASCIIGrid convertToColoredGrid (File input, int pixelsPerChar, final CharRamp ramp, int[][] colors,
+            ForkJoinPool pool) throws IOException {
+        //the sink has a colors field of its own
+        final int[][] artColors = colors;
+        final ASCIIGrid[] grid = new ASCIIGrid[1];
+        convert(input, null, pixelsPerChar, ramp, null, pool, new RowSink(true) {
+            @Override
+            void begin (int cols, int rows) {
+                if (artColors.length != rows || (rows > 0 && artColors[0].length != cols))
+                    throw new IllegalArgumentException("Colors must be " + cols + "x" + rows + " to match the art.");
+                grid[0] = new ASCIIGrid(cols, rows, ramp);
+            }
+
+            @Override
+            void rows (int firstRow, ASCIIGrid strip, int[][] stripColors, int count) {
+                grid[0].copyRows(strip, 0, firstRow, count);
+                for (int i = 0; i < count; i++)
+                    System.arraycopy(stripColors[i], 0, artColors[firstRow + i], 0, strip.getWidth());
+            }
+        });
+        return grid[0];
+    }
+
+    /**
+     * Converts an image file into a grid of ASCII symbols chosen by the shape of each block, see
+     * ASCIIConversion.imageToASCIIGrid(img, pixelsPerChar, shapes), holding no more than a strip of it in memory at a
+     * time.
+     *
+     * @param input         The image file that is to be converted into ASCII art.
+     * @param pixelsPerChar The amount of pixels across and down each block.
+     * @param shapes        The matcher for the characters the ASCII generator has to choose from.
+     * @return              A grid containing the ASCII art.
+     * @throws IOException if the file cannot be read or is not an image.
+     */
+    public static ASCIIGrid convertToGrid (File input, int pixelsPerChar, ShapeMatcher shapes) throws IOException {
+        return convertToGrid(input, pixelsPerChar, shapes.getRamp(), pixelsPerChar < shapes.getCells() ? null : shapes, null);
+    }
+
+    /**
+     * Converts an image file into a grid of ASCII symbols of a given size, whose blocks are stretched to cover the
+     * whole image, see ASCIIConversion.imageToASCIIGrid(img, size, ramp), holding no more than a strip of it in memory
+     * at a time.
+     *
+     * @param input The image file that is to be converted into ASCII art.
+     * @param size  The number of columns and rows of characters.
+     * @param ramp  The characters that the ASCII generator has to choose from.
+     * @return      A grid containing the ASCII art.
+     * @throws IOException if the file cannot be read or is not an image.
+     */
+    public static ASCIIGrid convertToGrid (File input, Dimension size, CharRamp ramp) throws IOException {
+        final ASCIIGrid grid = new ASCIIGrid(size.width, size.height, ramp);
+        convert(input, size, 0, ramp, null, null, new RowSink(false) {
+            @Override
+            void rows (int firstRow, ASCIIGrid strip, int[][] colors, int count) {
+                grid.copyRows(strip, 0, firstRow, count);
+            }
+        });
+        return grid;
+    }
+
+    private static ASCIIGrid convertToGrid (File input, int pixelsPerChar, final CharRamp ramp, ShapeMatcher shapes,
+            ForkJoinPool pool) throws IOException {
+        final ASCIIGrid[] grid = new ASCIIGrid[1];
+        convert(input, null, pixelsPerChar, ramp, shapes, pool, new RowSink(false) {
+            @Override
+            void begin (int cols, int rows) {
+                grid[0] = new ASCIIGrid(cols, rows, ramp);
+            }
+
+            @Override
+            void rows (int firstRow, ASCIIGrid strip, int[][] colors, int count) {
+                grid[0].copyRows(strip, 0, firstRow, count);
+            }
+        });
+        return grid[0];
+    }
+
+    /**
+     * Converts an image file into ASCII art, handing each row of characters to a listener as soon as it is ready.
+     *
+     * @param input         The image file that is to be converted into ASCII art.
+     * @param pixelsPerChar The amount of pixels whose average greyscale will be taken and assigned to an ASCII symbol.
+     * @param ramp          The characters that the ASCII generator has to choose from.
+     * @param pool          The pool each strip is converted on, or null to convert on the calling thread.
+     * @param listener      Receives the rows of characters in order.
+     * @return              The size of the ASCII art, in characters.
+     * @throws IOException if the file cannot be read, is not an image, or the listener fails.
+     */
+    public static Dimension convert (File input, int pixelsPerChar, CharRamp ramp, ForkJoinPool pool, final ASCIIRowListener listener) throws IOException {
+        return convert(input, null, pixelsPerChar, ramp, null, pool, new RowSink(false) {
+            private char[] chars;
+
+            @Override
+            void rows (int firstRow, ASCIIGrid strip, int[][] colors, int count) throws IOException {
+                if (chars == null)
+                    chars = new char[strip.getWidth()];
+                for (int i = 0; i < count; i++)
+                    listener.rowConverted(firstRow + i, strip.getRow(i, chars));
+            }
+        });
+    }
+
+    /**
+     * Converts an image file into colored ASCII art, handing each row of characters and their colors to a listener
+     * as soon as it is ready. The colors are collected in the same pass over each strip as the characters, see
+     * ASCIIConversion.imageToColoredASCII.
+     *
+     * @param input         The image file that is to be converted into ASCII art.
+     * @param pixelsPerChar The amount of pixels whose average greyscale will be taken and assigned to an ASCII symbol.
+     * @param ramp          The characters that the ASCII generator has to choose from.
+     * @param pool          The pool each strip is converted on, or null to convert on the calling thread.
+     * @param listener      Receives the rows of characters and colors in order.
+     * @return              The size of the ASCII art, in characters.
+     * @throws IOException if the file cannot be read, is not an image, or the listener fails.
+     */
+    public static Dimension convert (File input, int pixelsPerChar, CharRamp ramp, ForkJoinPool pool, final ColoredRowListener listener) throws IOException {
+        return convert(input, null, pixelsPerChar, ramp, null, pool, new RowSink(true) {
+            private char[] chars;
+
+            @Override
+            void rows (int firstRow, ASCIIGrid strip, int[][] colors, int count) throws IOException {
+                if (chars == null)
+                    chars = new char[strip.getWidth()];
+                for (int i = 0; i < count; i++)
+                    listener.rowConverted(firstRow + i, strip.getRow(i, chars), colors[i]);
+            }
+        });
+    }
+
+    /**
+     * Converts an image file straight into a PNG image of its ASCII art, drawing and encoding every row of characters
+     * as soon as it has been converted, so that the art is never held whole. See ASCIIImageWriter.
+     *
+     * @param input         The image file that is to be converted into ASCII art.
+     * @param pixelsPerChar The amount of pixels whose average greyscale will be taken and assigned to an ASCII symbol.
+     * @param ramp          The characters that the ASCII generator has to choose from.
+     * @param fontSize      The size of the font the characters are drawn in.
+     * @param color         true to draw every character in the average color of its block, false to draw it in black.
+     * @param pool          The pool each strip is converted on, or null to convert on the calling thread.
+     * @param out           The stream the PNG is written to. It is flushed but not closed.
+     * @return              The size of the ASCII art, in characters.
+     * @throws IOException if the file cannot be read, is not an image, is smaller than a character, or the stream
+     *                     cannot be written to.
+     */
+    public static Dimension convertToPNG (File input, int pixelsPerChar, CharRamp ramp, int fontSize, boolean color,
+            ForkJoinPool pool, OutputStream out) throws IOException {
+        Dimension size = PreviewRenderer.readSize(input);
+        int cols = size.width / pixelsPerChar;
+        int rows = size.height / pixelsPerChar;
+        if (cols == 0 || rows == 0)
+            throw new IOException("Image is smaller than " + pixelsPerChar + " pixels per character.");
+        try (ASCIIImageWriter writer = new ASCIIImageWriter(out, cols, rows, fontSize, ramp)) {
+            if (color)
+                convert(input, pixelsPerChar, ramp, pool, (ColoredRowListener) writer);
+            else
+                convert(input, pixelsPerChar, ramp, pool, (ASCIIRowListener) writer);
+        }
+        return new Dimension(cols, rows);
+    }
+
+    /**
+     * Converts an image file a strip at a time, in blocks of pixelsPerChar or, if there is a size, in blocks stretched
+     * to give art of that size.
+     */
+    private static Dimension convert (File input, Dimension size, int pixelsPerChar, CharRamp ramp, ShapeMatcher shapes,
+            ForkJoinPool pool, RowSink sink) throws IOException {
+        MemoryPlanner planner = MemoryPlanner.getDefault();
+        MemoryPlanner.Plan plan;
+        int width, height, cols, rows;
+        boolean alpha;
+        CountingImageInputStream stream = new CountingImageInputStream(input);
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext())
+                throw new IOException("Not a supported image: " + input);
+
+            ImageReader reader = readers.next();
+            try {
+                //strips are read out of order of the stream, so it has to stay seekable
+                reader.setInput(stream, false, true);
+                int imageIndex = reader.getMinIndex();
+                width = reader.getWidth(imageIndex);
+                height = reader.getHeight(imageIndex);
+                cols = size != null ? size.width : width / pixelsPerChar;
+                rows = size != null ? size.height : height / pixelsPerChar;
+                //an image smaller than a block makes empty art, with no strips to read
+                if (cols == 0 || rows == 0) {
+                    sink.begin(cols, rows);
+                    return new Dimension(cols, rows);
+                }
+                //planned as the whole blocks closest in size to the stretched ones
+                if (size != null)
+                    pixelsPerChar = Math.max(1, Math.min(width / cols, height / rows));
+                plan = planner.plan(width, height, pixelsPerChar, 0, sink.colors,
+                        MemoryPlanner.decodesFromTop(reader, imageIndex));
+                sink.begin(cols, rows);
+
+                StripReader strips = new RegionReader(reader, imageIndex, stream);
+                if (plan.getInput() != MemoryPlanner.Path.MAPPED && size != null) {
+                    convertScaledStrips(strips, width, height, cols, rows, plan.getStripRows() * pixelsPerChar, ramp, sink);
+                    return new Dimension(cols, rows);
+                }
+                if (plan.getInput() != MemoryPlanner.Path.MAPPED) {
+                    convertStrips(strips, cols, rows, plan.getStripRows(), pixelsPerChar, ramp, shapes, pool, sink);
+                    return new Dimension(cols, rows);
+                }
+                ImageTypeSpecifier type = reader.getRawImageType(imageIndex);
+                alpha = type == null || type.getColorModel().hasAlpha();
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            stream.close();
+        }
+
+        //decoded once onto disk, rather than from the top of the file again for every strip
+        try (BigBufferedImage image = BigBufferedImage.create(input, planner.getTempDir(),
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB)) {
+            if (image == null)
+                throw new IOException("Not a supported image: " + input);
+            if (size != null)
+                convertScaledStrips(new MappedReader(image), width, height, cols, rows, plan.getStripRows() * pixelsPerChar, ramp, sink);
+            else
+                convertStrips(new MappedReader(image), cols, rows, plan.getStripRows(), pixelsPerChar, ramp, shapes, pool, sink);
+        }
+        return new Dimension(cols, rows);
+    }
+
+    /**
+     * Converts an image a strip at a time, by brightness or by shape if there is a matcher, handing the rows of each
+     * strip to a sink.
+     */
+    private static void convertStrips (StripReader strips, int cols, int rows, int rowsPerStrip, int pixelsPerChar,
+            CharRamp ramp, ShapeMatcher shapes, ForkJoinPool pool, RowSink sink) throws IOException {
+        //images with indexed colors are flattened with an 8x8 dither, so strips start on a multiple of 8 rows to match
+        int align = 8 / gcd(pixelsPerChar, 8);
+        if (rowsPerStrip < rows)
+            rowsPerStrip = Math.max(align, rowsPerStrip / align * align);
+        BufferedImage strip = null;
+        ASCIIGrid stripArt = new ASCIIGrid(cols, Math.min(rows, rowsPerStrip), ramp);
+        int[][] stripColors = sink.colors ? new int[stripArt.getHeight()][cols] : null;
+
+        for (int row = 0; row < rows; row += rowsPerStrip) {
+            int stripRows = Math.min(rowsPerStrip, rows - row);
+            //decode every strip into the pixels of the first one
+            strip = strips.read(row * pixelsPerChar, cols * pixelsPerChar, stripRows * pixelsPerChar, strip);
+
+            LuminanceSampler sampler = LuminanceSampler.create(strip);
+            if (shapes != null)
+                ASCIIConversion.convertShapes(sampler, stripArt, 0, stripRows, pixelsPerChar, shapes);
+            else if (pool == null)
+                ASCIIConversion.convertRegion(sampler, stripArt, stripColors, 0, stripRows, 0, cols, pixelsPerChar, ramp);
+            else
+                ASCIIConversion.convertRows(sampler, stripArt, stripColors, 0, stripRows, pixelsPerChar, ramp, pool);
+
+            sink.rows(row, stripArt, stripColors, stripRows);
+        }
+    }
+
+    /**
+     * Converts an image a strip of pixels at a time into art of a given size, handing the rows of characters each
+     * strip completes to a sink. Rows of characters may straddle strips.
+     */
+    private static void convertScaledStrips (StripReader strips, int width, int height, int cols, int rows,
+            int rowsPerStrip, CharRamp ramp, RowSink sink) throws IOException {
+        //strips start on a multiple of 8 rows, for the dither of images with indexed colors
+        rowsPerStrip = rowsPerStrip >= height ? height : Math.max(8, rowsPerStrip / 8 * 8);
+        ASCIIConversion.AreaAverager averager = new ASCIIConversion.AreaAverager(width, height, cols, rows, ramp);
+        ASCIIGrid stripArt = new ASCIIGrid(cols, (int) Math.min(rows, (long) rowsPerStrip * rows / height + 1), ramp);
+        BufferedImage strip = null;
+
+        for (int y = 0; y < height; y += rowsPerStrip) {
+            int stripRows = Math.min(rowsPerStrip, height - y);
+            strip = strips.read(y, width, stripRows, strip);
+            int firstRow = averager.getRow();
+            averager.addRows(LuminanceSampler.create(strip), stripRows, stripArt, firstRow);
+            if (averager.getRow() > firstRow)
+                sink.rows(firstRow, stripArt, null, averager.getRow() - firstRow);
+        }
+    }
+
+    private static int gcd (int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    /**
+     * Receives the rows of each strip as soon as they have been converted.
+     */
+    private abstract static class RowSink {
+        //true if the colors of the characters are worked out as well
+        final boolean colors;
+
+        RowSink (boolean colors) {
+            this.colors = colors;
+        }
+
+        /**
+         * Called once the size of the art is known, before any rows.
+         */
+        void begin (int cols, int rows) {
+        }
+
+        /**
+         * @param firstRow The row of the art the first row of the strip is.
+         * @param strip    The characters of the strip, which are overwritten by the next strip.
+         * @param colors   The colors of the strip, or null if they are not worked out.
+         * @param count    The number of rows of the strip that were converted.
+         */
+        abstract void rows (int firstRow, ASCIIGrid strip, int[][] colors, int count) throws IOException;
+    }
+
+    /**
+     * Reads strips of pixels of an image, from the top down.
+     */
+    private interface StripReader {
+        /**
+         * @param y        The first row of the strip.
+         * @param width    The width of the strip, from the left edge of the image.
+         * @param rows     The number of rows in the strip.
+         * @param previous The previous strip, whose pixels may be reused, or null.
+         * @return         The strip, which may be taller than asked for.
+         */
+        BufferedImage read (int y, int width, int rows, BufferedImage previous) throws IOException;
+    }
+
+    /**
+     * Decodes strips of an image file one region at a time, the way BigBufferedImage.RangeLoader loads its parts.
+     */
+    private static class RegionReader implements StripReader {
+        private final ImageReader reader;
+        private final int imageIndex;
+        private final CountingImageInputStream stream;
+        private final ImageReadParam param;
+
+        RegionReader (ImageReader reader, int imageIndex, CountingImageInputStream stream) {
+            this.reader = reader;
+            this.imageIndex = imageIndex;
+            this.stream = stream;
+            this.param = reader.getDefaultReadParam();
+        }
+
+        @Override
+        public BufferedImage read (int y, int width, int rows, BufferedImage previous) throws IOException {
+            param.setSourceRegion(new Rectangle(0, y, width, rows));
+            param.setDestination(previous);
+            ConversionMetrics.Span span = ConversionMetrics.start(Stage.DECODE);
+            long read = stream.getBytesRead();
+            BufferedImage strip = reader.read(imageIndex, param);
+            ConversionMetrics.end(span, (long) width * rows, stream.getBytesRead() - read);
+            return strip;
+        }
+    }
+
+    /**
+     * Copies strips of a decoded image out of its temporary files.
+     */
+    private static class MappedReader implements StripReader {
+        private final BigBufferedImage image;
+
+        MappedReader (BigBufferedImage image) {
+            this.image = image;
+        }
+
+        @Override
+        public BufferedImage read (int y, int width, int rows, BufferedImage previous) {
+            return image.readStrip(y, rows, previous);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.medlinchristopher.picturetoascii;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes each frame of an ASCII animation to its own text file, named after the animation and numbered from 1,
+ * for example cat-00001.txt, cat-00002.txt and so on.
+ *
+ * @since 1.1
+ */
+public class TextAnimationWriter implements ASCIIAnimationWriter {
+
+    private final File dir;
+    private final String name;
+    private int frames;
+
+    /**
+     * Creates a writer putting frames in a folder.
+     *
+     * @param dir  The folder the text files are written to.
+     * @param name The name the files start with.
+     */
+    public TextAnimationWriter (File dir, String name) {
+        this.dir = dir;
+        this.name = name;
+    }
+
+    @Override
+    public void writeFrame (ASCIIGrid grid, Rectangle changed, int delay) throws IOException {
+        try (ASCIITextWriter writer = new ASCIITextWriter(frameFile(frames).toPath())) {
+            writer.write(grid);
+        }
+        frames++;
+    }
+
+    /**
+     * @param index The position of a frame, from 0.
+     * @return      The file that frame is written to.
+     */
+    public File frameFile (int index) {
+        return new File(dir, String.format("%s-%05d.txt", name, index + 1));
+    }
+
+    @Override
+    public void close () {
+    }
+}
@@ -0,0 +1,332 @@
+package com.medlinchristopher.picturetoascii.image;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import org.w3c.dom.Node;
+
+import com.medlinchristopher.picturetoascii.metrics.ConversionMetrics;
+import com.medlinchristopher.picturetoascii.metrics.Stage;
+
+/**
+ * Reads the frames of an animation as complete pictures, along with the part of each that changed.
+ * <p>
+ * An animation is either a file holding several images, such as an animated GIF, or a list of image files. GIF frames
+ * are often only a patch of the picture, so they are drawn onto a canvas the size of the logical screen, following
+ * the position and disposal method in each frame's metadata, just as a browser would. Every frame is returned as its
+ * own TYPE_INT_ARGB copy of the canvas, so frames can be handed to other threads, together with the smallest
+ * rectangle holding every pixel that differs from the previous frame.
+ *
+ * @since 1.1
+ */
+public class AnimationReader implements Closeable {
+
+    /** Delay used for frames that do not give one, in milliseconds. */
+    public static final int DEFAULT_DELAY = 100;
+
+    private static final String GIF_IMAGE_FORMAT = "javax_imageio_gif_image_1.0";
+    private static final String GIF_STREAM_FORMAT = "javax_imageio_gif_stream_1.0";
+
+    //one of these is set
+    private final ImageReader reader;
+    private final CountingImageInputStream stream;
+    private final List<File> files;
+
+    private final int frameDelay;
+    private BufferedImage canvas;
+    private int[] previous;
+    private int index;
+
+    //disposal of the last GIF frame, applied before the next one is drawn
+    private String disposal = "none";
+    private Rectangle disposalArea;
+    private BufferedImage savedArea;
+
+    private AnimationReader (ImageReader reader, CountingImageInputStream stream, List<File> files, int frameDelay) {
+        this.reader = reader;
+        this.stream = stream;
+        this.files = files;
+        this.frameDelay = frameDelay;
+    }
+
+    /**
+     * Opens an image file holding one or more frames.
+     *
+     * @param file The image file.
+     * @return     A reader for its frames.
+     * @throws IOException if the file cannot be read or is not an image.
+     */
+    public static AnimationReader open (File file) throws IOException {
+        if (!file.isFile())
+            throw new FileNotFoundException(file.getPath());
+        CountingImageInputStream stream = new CountingImageInputStream(file);
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+        if (!readers.hasNext()) {
+            stream.close();
+            throw new IOException("Not a supported image: " + file);
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(stream, true, false);
+        return new AnimationReader(reader, stream, null, DEFAULT_DELAY);
+    }
+
+    /**
+     * Opens a list of image files, each of which is one frame.
+     *
+     * @param frames     The image files, in order.
+     * @param frameDelay How long each frame is shown, in milliseconds.
+     * @return           A reader for the frames.
+     */
+    public static AnimationReader open (List<File> frames, int frameDelay) {
+        return new AnimationReader(null, null, new ArrayList<>(frames), frameDelay);
+    }
+
+    /**
+     * Tells whether an image file holds more than one frame.
+     *
+     * @param file The image file.
+     * @return     true if the file is an image with several frames.
+     * @throws IOException if the file cannot be read.
+     */
+    public static boolean isAnimated (File file) throws IOException {
+        try (ImageInputStream stream = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = stream == null ? null : ImageIO.getImageReaders(stream);
+            if (readers == null || !readers.hasNext())
+                return false;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, false, true);
+                return reader.getNumImages(true) > 1;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Reads the next frame.
+     *
+     * @return The frame, or null if there are no more.
+     * @throws IOException if the frame cannot be read.
+     */
+    public Frame next () throws IOException {
+        BufferedImage image;
+        IIOMetadata metadata = null;
+        ConversionMetrics.Span span = ConversionMetrics.start(Stage.DECODE);
+        long bytes;
+        if (files != null) {
+            if (index >= files.size())
+                return null;
+            File file = files.get(index);
+            image = ImageIO.read(file);
+            if (image == null)
+                throw new IOException("Not a supported image: " + file);
+            bytes = file.length();
+        } else {
+            long read = stream.getBytesRead();
+            try {
+                image = reader.read(index);
+            } catch (IndexOutOfBoundsException e) {
+                return null;
+            }
+            metadata = reader.getImageMetadata(index);
+            bytes = stream.getBytesRead() - read;
+        }
+        ConversionMetrics.end(span, (long) image.getWidth() * image.getHeight(), bytes);
+
+        if (canvas == null)
+            canvas = new BufferedImage(canvasWidth(image), canvasHeight(image), BufferedImage.TYPE_INT_ARGB);
+
+        Rectangle changed;
+        int delay = frameDelay;
+        Node root = metadata == null || !GIF_IMAGE_FORMAT.equals(metadata.getNativeMetadataFormatName())
+                ? null : metadata.getAsTree(GIF_IMAGE_FORMAT);
+        if (root != null) {
+            changed = drawGIFFrame(image, root);
+            int centiseconds = intAttribute(root, "GraphicControlExtension", "delayTime", 0);
+            if (centiseconds > 0)
+                delay = centiseconds * 10;
+        } else {
+            //a whole new picture
+            Graphics2D g2 = canvas.createGraphics();
+            g2.setComposite(AlphaComposite.Clear);
+            g2.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+            g2.setComposite(AlphaComposite.Src);
+            g2.drawImage(image, 0, 0, null);
+            g2.dispose();
+            changed = new Rectangle(0, 0, canvas.getWidth(), canvas.getHeight());
+        }
+
+        int[] pixels = ((DataBufferInt) canvas.getRaster().getDataBuffer()).getData();
+        if (previous == null) {
+            changed = new Rectangle(0, 0, canvas.getWidth(), canvas.getHeight());
+            previous = new int[pixels.length];
+        } else {
+            changed = differences(previous, pixels, canvas.getWidth(), changed.intersection(
+                    new Rectangle(0, 0, canvas.getWidth(), canvas.getHeight())));
+        }
+        System.arraycopy(pixels, 0, previous, 0, pixels.length);
+
+        BufferedImage copy = new BufferedImage(canvas.getWidth(), canvas.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        System.arraycopy(pixels, 0, ((DataBufferInt) copy.getRaster().getDataBuffer()).getData(), 0, pixels.length);
+        return new Frame(index++, copy, changed, delay);
+    }
+
+    /**
+     * Disposes of the last GIF frame and draws a new one onto the canvas.
+     *
+     * @return the area of the canvas that may have changed.
+     */
+    private Rectangle drawGIFFrame (BufferedImage image, Node root) {
+        Graphics2D g2 = canvas.createGraphics();
+        Rectangle changed = null;
+        if (disposalArea != null) {
+            if (disposal.equals("restoreToBackgroundColor")) {
+                //browsers clear to transparent rather than to the background color, and so does this
+                g2.setComposite(AlphaComposite.Clear);
+                g2.fill(disposalArea);
+                changed = disposalArea;
+            } else if (disposal.equals("restoreToPrevious") && savedArea != null) {
+                g2.setComposite(AlphaComposite.Src);
+                g2.drawImage(savedArea, disposalArea.x, disposalArea.y, null);
+                changed = disposalArea;
+            }
+        }
+
+        Rectangle area = new Rectangle(intAttribute(root, "ImageDescriptor", "imageLeftPosition", 0),
+                intAttribute(root, "ImageDescriptor", "imageTopPosition", 0), image.getWidth(), image.getHeight());
+        disposal = stringAttribute(root, "GraphicControlExtension", "disposalMethod", "none");
+        disposalArea = area;
+        savedArea = null;
+        if (disposal.equals("restoreToPrevious")) {
+            Rectangle visible = area.intersection(new Rectangle(0, 0, canvas.getWidth(), canvas.getHeight()));
+            if (!visible.isEmpty()) {
+                savedArea = new BufferedImage(visible.width, visible.height, BufferedImage.TYPE_INT_ARGB);
+                savedArea.setData(canvas.getRaster().createChild(visible.x, visible.y, visible.width, visible.height, 0, 0, null));
+                disposalArea = visible;
+            }
+        }
+
+        g2.setComposite(AlphaComposite.SrcOver);
+        g2.drawImage(image, area.x, area.y, null);
+        g2.dispose();
+        return changed == null ? area : changed.union(area);
+    }
+
+    /**
+     * Finds the smallest rectangle inside an area holding every pixel that differs between two frames.
+     */
+    private static Rectangle differences (int[] before, int[] after, int width, Rectangle area) {
+        int left = Integer.MAX_VALUE, right = -1, top = -1, bottom = -1;
+        for (int y = area.y; y < area.y + area.height; y++) {
+            int row = y * width;
+            int x0 = area.x;
+            int x1 = area.x + area.width - 1;
+            while (x0 <= x1 && before[row + x0] == after[row + x0])
+                x0++;
+            if (x0 > x1)
+                continue;
+            while (before[row + x1] == after[row + x1])
+                x1--;
+            left = Math.min(left, x0);
+            right = Math.max(right, x1);
+            if (top < 0)
+                top = y;
+            bottom = y;
+        }
+        if (top < 0)
+            return new Rectangle(area.x, area.y, 0, 0);
+        return new Rectangle(left, top, right - left + 1, bottom - top + 1);
+    }
+
+    private int canvasWidth (BufferedImage first) {
+        Node screen = logicalScreen();
+        int width = screen == null ? 0 : intAttribute(screen, null, "logicalScreenWidth", 0);
+        return width > 0 ? width : first.getWidth();
+    }
+
+    private int canvasHeight (BufferedImage first) {
+        Node screen = logicalScreen();
+        int height = screen == null ? 0 : intAttribute(screen, null, "logicalScreenHeight", 0);
+        return height > 0 ? height : first.getHeight();
+    }
+
+    private Node logicalScreen () {
+        if (reader == null)
+            return null;
+        try {
+            IIOMetadata metadata = reader.getStreamMetadata();
+            if (metadata == null || !GIF_STREAM_FORMAT.equals(metadata.getNativeMetadataFormatName()))
+                return null;
+            return child(metadata.getAsTree(GIF_STREAM_FORMAT), "LogicalScreenDescriptor");
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static Node child (Node node, String name) {
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling())
+            if (child.getNodeName().equals(name))
+                return child;
+        return null;
+    }
+
+    private static String stringAttribute (Node root, String element, String attribute, String fallback) {
+        Node node = element == null ? root : child(root, element);
+        if (node == null)
+            return fallback;
+        String value = ((IIOMetadataNode) node).getAttribute(attribute);
+        return value == null || value.isEmpty() ? fallback : value;
+    }
+
+    private static int intAttribute (Node root, String element, String attribute, int fallback) {
+        try {
+            return Integer.parseInt(stringAttribute(root, element, attribute, String.valueOf(fallback)));
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    @Override
+    public void close () throws IOException {
+        if (reader != null) {
+            reader.dispose();
+            stream.close();
+        }
+    }
+
+    /**
+     * One complete picture of an animation.
+     */
+    public static class Frame {
+        /** Position of the frame in the animation, from 0. */
+        public final int index;
+        /** The whole picture, owned by this frame. */
+        public final BufferedImage image;
+        /** Every pixel that differs from the previous frame lies in here. The first frame has all of them. */
+        public final Rectangle changed;
+        /** How long the frame is shown, in milliseconds. */
+        public final int delay;
+
+        Frame (int index, BufferedImage image, Rectangle changed, int delay) {
+            this.index = index;
+            this.image = image;
+            this.changed = changed;
+            this.delay = delay;
+        }
+    }
+}
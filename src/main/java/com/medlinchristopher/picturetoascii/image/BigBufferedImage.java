@@ -14,43 +14,68 @@ package com.medlinchristopher.picturetoascii.image;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.color.ColorSpace;
-import java.awt.image.BandedSampleModel;
+import java.awt.image.ComponentSampleModel;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.ComponentColorModel;
 import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
 import java.awt.image.Raster;
 import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.imageio.ImageIO;
 import javax.imageio.ImageReadParam;
 import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
 import javax.imageio.stream.ImageInputStream;
 
+import com.medlinchristopher.picturetoascii.metrics.ConversionMetrics;
+import com.medlinchristopher.picturetoascii.metrics.Stage;
 
-public class BigBufferedImage extends BufferedImage {
 
-    private static final int MAX_PIXELS_IN_MEMORY = 50000000;
+public class BigBufferedImage extends BufferedImage implements Closeable {
+
+    private static final int LOADER_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    // formats whose readers can decode into any WritableRaster
+    private static final List<String> DIRECT_FORMATS = Arrays.asList("png", "jpeg", "jpg");
+
+    private static ExecutorService loaderExecutor;
+
+    private long bytesDecoded;
 
     public static BigBufferedImage create(File tempDir, int width, int height, int imageType) throws IOException {
-        FileDataBuffer buffer = new FileDataBuffer(tempDir, width * height, 4);
+        // Java2D sample models address pixels with int offsets, which is the real limit on raster size
+        if ((long) width * height >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Image of " + width + "x" + height + " exceeds the "
+                    + Integer.MAX_VALUE + " pixels a raster can address");
+        }
         ColorModel colorModel = null;
-        BandedSampleModel sampleModel = null;
+        int bands;
         switch (imageType) {
             case TYPE_INT_RGB:
                 colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
@@ -59,7 +84,7 @@ public class BigBufferedImage extends BufferedImage {
                         false,
                         ComponentColorModel.TRANSLUCENT,
                         DataBuffer.TYPE_BYTE);
-                sampleModel = new BandedSampleModel(DataBuffer.TYPE_BYTE, width, height, 3);
+                bands = 3;
                 break;
             case TYPE_INT_ARGB:
                 colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
@@ -68,77 +93,266 @@ public class BigBufferedImage extends BufferedImage {
                         false,
                         ComponentColorModel.TRANSLUCENT,
                         DataBuffer.TYPE_BYTE);
-                sampleModel = new BandedSampleModel(DataBuffer.TYPE_BYTE, width, height, 4);
+                bands = 4;
                 break;
             default:
                 throw new IllegalArgumentException("Unsupported image type: " + imageType);
         }
+        FileDataBuffer buffer = new FileDataBuffer(tempDir, width * height, bands);
+        FileSampleModel sampleModel = new FileSampleModel(width, height, bands);
         SimpleRaster raster = new SimpleRaster(sampleModel, buffer, new Point(0, 0));
         BigBufferedImage image = new BigBufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(), null);
         return image;
     }
 
     public static BigBufferedImage create(File inputFile, File tempDir, int imageType) throws IOException {
+        return create(inputFile, tempDir, imageType, loaderExecutor());
+    }
+
+    /**
+     * Loads an image file into a new image backed by temporary files, decoding it on the given executor.
+     * <p>
+     * Tiled images are split into one range of whole tile rows per loader thread, and each range is decoded by a
+     * single reader that is reused for every part of it. Images that can only be decoded from the top, such as PNG
+     * and JPEG, are decoded once by a single reader in one pass, since every extra region would decode the top of
+     * the file again. PNG and JPEG readers decode straight into the new image when its pixel layout matches theirs,
+     * without staging any part of the image on the heap; anything else is decoded in parts of a bounded size. Any executor works, including one that runs each task on its own
+     * virtual thread.
+     *
+     * @return the image, or null if the file is not in a format ImageIO can read.
+     */
+    public static BigBufferedImage create(File inputFile, File tempDir, int imageType, ExecutorService executor) throws IOException {
+        int index, width, height, unit;
+        boolean tiled;
         ImageInputStream stream = ImageIO.createImageInputStream(inputFile);
-        Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
-        if (readers.hasNext()) {
+        if (stream == null) {
+            throw new FileNotFoundException("Cannot open " + inputFile);
+        }
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
             try {
-                ImageReader reader = readers.next();
                 reader.setInput(stream, true, true);
-                int width = reader.getWidth(reader.getMinIndex());
-                int height = reader.getHeight(reader.getMinIndex());
-                BigBufferedImage image = create(tempDir, width, height, imageType);
-                int cores = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
-                int block = Math.min(MAX_PIXELS_IN_MEMORY / cores / width, (int) (Math.ceil(height / (double) cores)));
-                ExecutorService generalExecutor = Executors.newFixedThreadPool(cores);
-                List<Callable<ImagePartLoader>> partLoaders = new ArrayList<>();
-                for (int y = 0; y < height; y += block) {
-                    partLoaders.add(new ImagePartLoader(
-                            y, width, Math.min(block, height - y), inputFile, image));
-                }
-                generalExecutor.invokeAll(partLoaders);
-                generalExecutor.shutdown();
-                return image;
-            } catch (InterruptedException ex) {
-                Logger.getLogger(BigBufferedImage.class.getName()).log(Level.SEVERE, null, ex);
+                index = reader.getMinIndex();
+                width = reader.getWidth(index);
+                height = reader.getHeight(index);
+                tiled = reader.isImageTiled(index);
+                // regions line up with the format's own units: tile rows, or JPEG MCU rows
+                String format = reader.getFormatName().toLowerCase();
+                unit = tiled ? reader.getTileHeight(index) : format.equals("jpeg") || format.equals("jpg") ? 16 : 1;
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            stream.close();
+        }
+
+        BigBufferedImage image = create(tempDir, width, height, imageType);
+        ConversionMetrics.Span span = ConversionMetrics.start(Stage.DECODE);
+        // parts decoded on the heap share the memory budget between the loader threads
+        int partRows = Math.max(unit, MemoryPlanner.getDefault().stripRows(width, LOADER_THREADS) / unit * unit);
+        int ranges = tiled ? LOADER_THREADS : 1;
+        int rangeRows = Math.max(unit, (height / ranges + unit - 1) / unit * unit);
+
+        List<Callable<Long>> loaders = new ArrayList<>();
+        for (int y = 0; y < height; y += rangeRows) {
+            loaders.add(new RangeLoader(inputFile, index, image, y, Math.min(height, y + rangeRows), partRows));
+        }
+        try {
+            long bytes = 0;
+            for (Future<Long> loaded : executor.invokeAll(loaders)) {
+                bytes += loaded.get();
             }
+            image.bytesDecoded = bytes;
+            ConversionMetrics.end(span, (long) width * height, bytes);
+        } catch (InterruptedException ex) {
+            image.close();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading " + inputFile);
+        } catch (ExecutionException ex) {
+            image.close();
+            Logger.getLogger(BigBufferedImage.class.getName()).log(Level.SEVERE, null, ex.getCause());
+            throw new IOException("Failed to load " + inputFile, ex.getCause());
         }
-        return null;
+        return image;
     }
 
-    private static class ImagePartLoader implements Callable<ImagePartLoader> {
+    /**
+     * @return the number of bytes read from the input file by all readers while loading this image, counting bytes
+     * read more than once each time, or 0 if it was not loaded from a file.
+     */
+    public long getBytesDecoded() {
+        return bytesDecoded;
+    }
+
+    private static synchronized ExecutorService loaderExecutor() {
+        if (loaderExecutor == null) {
+            loaderExecutor = Executors.newFixedThreadPool(LOADER_THREADS, new ThreadFactory() {
+                private int count;
+
+                @Override
+                public synchronized Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "BigBufferedImage-loader-" + (count++));
+                    thread.setDaemon(true);
+                    thread.setPriority((Thread.MIN_PRIORITY + Thread.NORM_PRIORITY) / 2);
+                    return thread;
+                }
+            });
+        }
+        return loaderExecutor;
+    }
+
+    /**
+     * Decodes a range of rows of an image file with one reader.
+     */
+    private static class RangeLoader implements Callable<Long> {
 
-        private final int y;
-        private final BigBufferedImage image;
-        private final Rectangle region;
         private final File file;
+        private final int index, start, end, partRows;
+        private final BigBufferedImage image;
 
-        public ImagePartLoader(int y, int width, int height, File file, BigBufferedImage image) {
-            this.y = y;
-            this.image = image;
+        public RangeLoader(File file, int index, BigBufferedImage image, int start, int end, int partRows) {
             this.file = file;
-            region = new Rectangle(0, y, width, height);
+            this.index = index;
+            this.image = image;
+            this.start = start;
+            this.end = end;
+            this.partRows = partRows;
         }
 
         @Override
-        public ImagePartLoader call() throws Exception {
-            Thread.currentThread().setPriority((Thread.MIN_PRIORITY + Thread.NORM_PRIORITY) / 2);
-            ImageInputStream stream = ImageIO.createImageInputStream(file);
-            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
-            if (readers.hasNext()) {
-                ImageReader reader = readers.next();
-                reader.setInput(stream, true, true);
-                ImageReadParam param = reader.getDefaultReadParam();
-                param.setSourceRegion(region);
-                BufferedImage part = reader.read(0, param);
-                Raster source = part.getRaster();
-                WritableRaster target = image.getRaster();
-                target.setRect(0, y, source);
+        public Long call() throws Exception {
+            CountingImageInputStream stream = new CountingImageInputStream(file);
+            try {
+                ImageReader reader = ImageIO.getImageReaders(stream).next();
+                try {
+                    reader.setInput(stream, false, true);
+                    int width = image.getWidth();
+                    // other readers assume their destination is backed by a heap DataBuffer
+                    String format = reader.getFormatName().toLowerCase();
+                    boolean direct = DIRECT_FORMATS.contains(format) && isCompatible(reader.getRawImageType(index), image);
+                    int y = start;
+                    while (y < end) {
+                        int rows = direct ? end - y : Math.min(partRows, end - y);
+                        ImageReadParam param = reader.getDefaultReadParam();
+                        param.setSourceRegion(new Rectangle(0, y, width, rows));
+                        if (direct) {
+                            param.setDestination(image.view(y, rows));
+                            reader.read(index, param);
+                        } else {
+                            copy(reader.read(index, param), image, y);
+                        }
+                        y += rows;
+                    }
+                    return stream.getBytesRead();
+                } finally {
+                    reader.dispose();
+                }
+            } finally {
+                stream.close();
             }
-            return ImagePartLoader.this;
         }
     }
 
+    /**
+     * Whether pixels of the given type can go straight into the image's raster, sample for sample.
+     */
+    private static boolean isCompatible(ImageTypeSpecifier type, BufferedImage image) {
+        if (type == null) {
+            return false;
+        }
+        ColorModel cm = type.getColorModel();
+        if (cm instanceof IndexColorModel || cm.isAlphaPremultiplied() || !cm.getColorSpace().isCS_sRGB()
+                || cm.getNumComponents() != image.getRaster().getNumBands()
+                || type.getSampleModel().getNumBands() != image.getRaster().getNumBands()) {
+            return false;
+        }
+        for (int size : cm.getComponentSize()) {
+            if (size != 8) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies a decoded part of an image into the image at row y, converting its colors if they are not laid out
+     * the same way.
+     */
+    private static void copy(BufferedImage part, BigBufferedImage image, int y) {
+        WritableRaster target = image.getRaster();
+        if (isCompatible(new ImageTypeSpecifier(part), image)) {
+            target.setRect(0, y, part.getRaster());
+            return;
+        }
+        int width = part.getWidth();
+        int bands = target.getNumBands();
+        int[] rgb = new int[width];
+        int[] pixels = new int[width * bands];
+        for (int row = 0; row < part.getHeight(); row++) {
+            part.getRGB(0, row, width, 1, rgb, 0, width);
+            for (int x = 0, k = 0; x < width; x++) {
+                pixels[k++] = (rgb[x] >> 16) & 0xff;
+                pixels[k++] = (rgb[x] >> 8) & 0xff;
+                pixels[k++] = rgb[x] & 0xff;
+                if (bands == 4) {
+                    pixels[k++] = rgb[x] >>> 24;
+                }
+            }
+            target.setPixels(0, y + row, width, 1, pixels);
+        }
+    }
+
+    /**
+     * Copies rows of this image onto the heap, as a TYPE_INT_RGB image, or TYPE_INT_ARGB if this image has alpha.
+     *
+     * @param y           the first row to copy.
+     * @param rows        the number of rows to copy.
+     * @param destination an image to copy into, which is reused when it is of the right type and size, or null.
+     * @return the copy.
+     */
+    public BufferedImage readStrip(int y, int rows, BufferedImage destination) {
+        int width = getWidth();
+        int type = getColorModel().hasAlpha() ? TYPE_INT_ARGB : TYPE_INT_RGB;
+        BufferedImage strip = destination;
+        if (strip == null || strip.getType() != type || strip.getWidth() != width || strip.getHeight() != rows) {
+            strip = new BufferedImage(width, rows, type);
+        }
+        int[] pixels = ((DataBufferInt) strip.getRaster().getDataBuffer()).getData();
+        WritableRaster raster = getRaster();
+        FileSampleModel sampleModel = (FileSampleModel) raster.getSampleModel();
+        FileDataBuffer buffer = (FileDataBuffer) raster.getDataBuffer();
+        sampleModel.checkBounds(0, y, width, rows);
+        int[] banks = sampleModel.getBankIndices();
+        int bands = raster.getNumBands();
+        byte[] row = new byte[width];
+
+        // bands are kept in banks of their own, so each is read a row at a time and packed into the pixels
+        for (int i = 0; i < rows; i++) {
+            int offset = i * width;
+            Arrays.fill(pixels, offset, offset + width, bands == 4 ? 0 : 0xff000000);
+            for (int b = 0; b < bands; b++) {
+                int shift = b < 3 ? 16 - b * 8 : 24;
+                buffer.get(banks[b], sampleModel.index(0, y + i, b, buffer), row, 0, width);
+                for (int x = 0; x < width; x++) {
+                    pixels[offset + x] |= (row[x] & 0xff) << shift;
+                }
+            }
+        }
+        return strip;
+    }
+
+    /**
+     * An image sharing rows of this image's pixels, for readers to decode into.
+     */
+    private BufferedImage view(int y, int rows) {
+        WritableRaster child = getRaster().createWritableChild(0, y, getWidth(), rows, 0, 0, null);
+        return new BufferedImage(getColorModel(), child, isAlphaPremultiplied(), null);
+    }
+
     private BigBufferedImage(ColorModel cm, WritableRaster raster, boolean isRasterPremultiplied, Hashtable<?, ?> properties) {
         super(cm, raster, isRasterPremultiplied, properties);
     }
@@ -155,12 +369,201 @@ public class BigBufferedImage extends BufferedImage {
         return new Rectangle(0, 0, getWidth(), getHeight());
     }
 
+    /**
+     * Drops the image's references to the pixel data and deletes the temporary files holding it. The image must not
+     * be used afterwards.
+     * <p>
+     * Java cannot unmap a file on demand, so the mappings are only released once they are garbage collected. Where
+     * the operating system refuses to delete a file that is still mapped, as Windows does, it is left to be deleted
+     * when the JVM exits instead.
+     */
+    @Override
+    public void close() {
+        DataBuffer buffer = getRaster().getDataBuffer();
+        if (buffer instanceof FileDataBuffer) {
+            ((FileDataBuffer) buffer).close();
+        }
+    }
+
+    /**
+     * Banded sample model over a FileDataBuffer, moving whole rows at a time with bulk buffer copies instead of
+     * going through getElem and setElem for every sample.
+     */
+    private static class FileSampleModel extends ComponentSampleModel {
+
+        public FileSampleModel(int width, int height, int bands) {
+            this(width, height, width, sequence(bands), new int[bands]);
+        }
+
+        private FileSampleModel(int width, int height, int scanlineStride, int[] bankIndices, int[] bandOffsets) {
+            super(DataBuffer.TYPE_BYTE, width, height, 1, scanlineStride, bankIndices, bandOffsets);
+        }
+
+        private static int[] sequence(int length) {
+            int[] values = new int[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = i;
+            }
+            return values;
+        }
+
+        @Override
+        public SampleModel createSubsetSampleModel(int[] bands) {
+            int[] subsetBanks = new int[bands.length];
+            int[] subsetOffsets = new int[bands.length];
+            for (int i = 0; i < bands.length; i++) {
+                subsetBanks[i] = bankIndices[bands[i]];
+                subsetOffsets[i] = bandOffsets[bands[i]];
+            }
+            return new FileSampleModel(width, height, scanlineStride, subsetBanks, subsetOffsets);
+        }
+
+        private long index(int x, int y, int band, DataBuffer data) {
+            return (long) y * scanlineStride + x + bandOffsets[band] + data.getOffsets()[bankIndices[band]];
+        }
+
+        private void checkBounds(int x, int y, int w, int h) {
+            if (x < 0 || y < 0 || w < 0 || h < 0 || (long) x + w > width || (long) y + h > height) {
+                throw new ArrayIndexOutOfBoundsException("Coordinates out of bounds!");
+            }
+        }
+
+        @Override
+        public int[] getSamples(int x, int y, int w, int h, int b, int[] iArray, DataBuffer data) {
+            if (!(data instanceof FileDataBuffer)) {
+                return super.getSamples(x, y, w, h, b, iArray, data);
+            }
+            checkBounds(x, y, w, h);
+            FileDataBuffer buffer = (FileDataBuffer) data;
+            int[] samples = iArray != null ? iArray : new int[w * h];
+            byte[] row = new byte[w];
+            int bank = bankIndices[b];
+            for (int i = 0; i < h; i++) {
+                buffer.get(bank, index(x, y + i, b, data), row, 0, w);
+                for (int j = 0, k = i * w; j < w; j++, k++) {
+                    samples[k] = row[j] & 0xff;
+                }
+            }
+            return samples;
+        }
+
+        @Override
+        public void setSamples(int x, int y, int w, int h, int b, int[] iArray, DataBuffer data) {
+            if (!(data instanceof FileDataBuffer)) {
+                super.setSamples(x, y, w, h, b, iArray, data);
+                return;
+            }
+            checkBounds(x, y, w, h);
+            FileDataBuffer buffer = (FileDataBuffer) data;
+            byte[] row = new byte[w];
+            int bank = bankIndices[b];
+            for (int i = 0; i < h; i++) {
+                for (int j = 0, k = i * w; j < w; j++, k++) {
+                    row[j] = (byte) iArray[k];
+                }
+                buffer.put(bank, index(x, y + i, b, data), row, 0, w);
+            }
+        }
+
+        @Override
+        public int[] getPixels(int x, int y, int w, int h, int[] iArray, DataBuffer data) {
+            if (!(data instanceof FileDataBuffer)) {
+                return super.getPixels(x, y, w, h, iArray, data);
+            }
+            checkBounds(x, y, w, h);
+            FileDataBuffer buffer = (FileDataBuffer) data;
+            int bands = numBands;
+            int[] pixels = iArray != null ? iArray : new int[w * h * bands];
+            byte[] row = new byte[w];
+            for (int b = 0; b < bands; b++) {
+                int bank = bankIndices[b];
+                for (int i = 0; i < h; i++) {
+                    buffer.get(bank, index(x, y + i, b, data), row, 0, w);
+                    for (int j = 0, k = (i * w * bands) + b; j < w; j++, k += bands) {
+                        pixels[k] = row[j] & 0xff;
+                    }
+                }
+            }
+            return pixels;
+        }
+
+        @Override
+        public void setPixels(int x, int y, int w, int h, int[] iArray, DataBuffer data) {
+            if (!(data instanceof FileDataBuffer)) {
+                super.setPixels(x, y, w, h, iArray, data);
+                return;
+            }
+            checkBounds(x, y, w, h);
+            FileDataBuffer buffer = (FileDataBuffer) data;
+            int bands = numBands;
+            byte[] row = new byte[w];
+            for (int b = 0; b < bands; b++) {
+                int bank = bankIndices[b];
+                for (int i = 0; i < h; i++) {
+                    for (int j = 0, k = (i * w * bands) + b; j < w; j++, k += bands) {
+                        row[j] = (byte) iArray[k];
+                    }
+                    buffer.put(bank, index(x, y + i, b, data), row, 0, w);
+                }
+            }
+        }
+
+        @Override
+        public Object getDataElements(int x, int y, int w, int h, Object obj, DataBuffer data) {
+            if (!(data instanceof FileDataBuffer)) {
+                return super.getDataElements(x, y, w, h, obj, data);
+            }
+            checkBounds(x, y, w, h);
+            FileDataBuffer buffer = (FileDataBuffer) data;
+            int bands = numBands;
+            byte[] elements = obj != null ? (byte[]) obj : new byte[w * h * bands];
+            byte[] row = new byte[w];
+            for (int b = 0; b < bands; b++) {
+                int bank = bankIndices[b];
+                for (int i = 0; i < h; i++) {
+                    buffer.get(bank, index(x, y + i, b, data), row, 0, w);
+                    for (int j = 0, k = (i * w * bands) + b; j < w; j++, k += bands) {
+                        elements[k] = row[j];
+                    }
+                }
+            }
+            return elements;
+        }
+
+        @Override
+        public void setDataElements(int x, int y, int w, int h, Object obj, DataBuffer data) {
+            if (!(data instanceof FileDataBuffer)) {
+                super.setDataElements(x, y, w, h, obj, data);
+                return;
+            }
+            checkBounds(x, y, w, h);
+            FileDataBuffer buffer = (FileDataBuffer) data;
+            int bands = numBands;
+            byte[] elements = (byte[]) obj;
+            byte[] row = new byte[w];
+            for (int b = 0; b < bands; b++) {
+                int bank = bankIndices[b];
+                for (int i = 0; i < h; i++) {
+                    for (int j = 0, k = (i * w * bands) + b; j < w; j++, k += bands) {
+                        row[j] = elements[k];
+                    }
+                    buffer.put(bank, index(x, y + i, b, data), row, 0, w);
+                }
+            }
+        }
+    }
+
     private static class FileDataBuffer extends DataBuffer {
 
-        private final String id = "buffer-" + System.currentTimeMillis() + "-" + ((int) (Math.random() * 1000));
+        // Banks are mapped in segments of this many bytes, so no single mapping has to be huge
+        private static final int SEGMENT_SHIFT = 28;
+        private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+        private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
         private File dir;
         private String path;
-        private MappedByteBuffer[] buffer;
+        private File[] files;
+        private MappedByteBuffer[][] buffer;
 
         public FileDataBuffer(File dir, int size) throws FileNotFoundException, IOException {
             super(TYPE_BYTE, size);
@@ -184,28 +587,90 @@ public class BigBufferedImage extends BufferedImage {
             if (!dir.isDirectory()) {
                 throw new RuntimeException("FileDataBuffer constructor parameter dir is not a directory: " + dir);
             }
-            path = dir.getPath() + "/" + id;
-            File subDir = new File(path);
-            subDir.mkdir();
-            subDir.deleteOnExit();
-            buffer = new MappedByteBuffer[banks];
+            ConversionMetrics.Span span = ConversionMetrics.start(Stage.MAP);
+            // a folder of its own, so jobs mapping images at the same time never share bank files
+            path = Files.createTempDirectory(dir.toPath(), "buffer-").toString();
+            long bankSize = getSize();
+            int segments = (int) ((bankSize + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+            files = new File[banks];
+            buffer = new MappedByteBuffer[banks][segments];
             for (int i = 0; i < banks; i++) {
-                File file = new File(path + "/bank" + i + ".dat");
-                file.deleteOnExit();
-                buffer[i] = new RandomAccessFile(file, "rw")
-                        .getChannel().map(FileChannel.MapMode.READ_WRITE, 0, getSize());
+                files[i] = new File(path + "/bank" + i + ".dat");
+                try (RandomAccessFile file = new RandomAccessFile(files[i], "rw")) {
+                    FileChannel channel = file.getChannel();
+                    for (int segment = 0; segment < segments; segment++) {
+                        long position = (long) segment << SEGMENT_SHIFT;
+                        buffer[i][segment] = channel.map(FileChannel.MapMode.READ_WRITE, position,
+                                Math.min(SEGMENT_SIZE, bankSize - position));
+                    }
+                }
             }
+            ConversionMetrics.end(span, getSize(), bankSize * banks);
         }
 
         @Override
         public int getElem(int bank, int i) {
-            return buffer[bank].get(i) & 0xff;
+            return buffer[bank][i >>> SEGMENT_SHIFT].get(i & SEGMENT_MASK) & 0xff;
         }
 
         @Override
         public void setElem(int bank, int i, int val) {
-            buffer[bank].put(i, (byte) val);
+            buffer[bank][i >>> SEGMENT_SHIFT].put(i & SEGMENT_MASK, (byte) val);
+        }
+
+        /**
+         * Copies length bytes of a bank, starting at index, into dst.
+         */
+        void get(int bank, long index, byte[] dst, int offset, int length) {
+            while (length > 0) {
+                ByteBuffer segment = buffer[bank][(int) (index >>> SEGMENT_SHIFT)].duplicate();
+                int position = (int) (index & SEGMENT_MASK);
+                int count = Math.min(length, SEGMENT_SIZE - position);
+                segment.position(position);
+                segment.get(dst, offset, count);
+                index += count;
+                offset += count;
+                length -= count;
+            }
         }
 
+        /**
+         * Copies length bytes of src into a bank, starting at index.
+         */
+        void put(int bank, long index, byte[] src, int offset, int length) {
+            while (length > 0) {
+                ByteBuffer segment = buffer[bank][(int) (index >>> SEGMENT_SHIFT)].duplicate();
+                int position = (int) (index & SEGMENT_MASK);
+                int count = Math.min(length, SEGMENT_SIZE - position);
+                segment.position(position);
+                segment.put(src, offset, count);
+                index += count;
+                offset += count;
+                length -= count;
+            }
+        }
+
+        void close() {
+            if (files == null) {
+                return;
+            }
+            buffer = null;
+            List<File> undeleted = new ArrayList<>();
+            for (File file : files) {
+                if (!file.delete()) {
+                    undeleted.add(file);
+                }
+            }
+            files = null;
+            File subDir = new File(path);
+            if (undeleted.isEmpty() && subDir.delete()) {
+                return;
+            }
+            // files registered later are deleted first, so the directory goes in before its files
+            subDir.deleteOnExit();
+            for (File file : undeleted) {
+                file.deleteOnExit();
+            }
+        }
     }
 }
@@ -0,0 +1,50 @@
+package com.medlinchristopher.picturetoascii.image;
+
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.stream.FileImageInputStream;
+
+/**
+ * Image stream over a file that counts the bytes read through it.
+ * <p>
+ * Readers seek back and forth, as the BMP reader does for images stored bottom-up, so the distance the stream
+ * position moves says little about how much was read. The count is what ConversionMetrics reports as the bytes of a
+ * decode.
+ *
+ * @since 1.1
+ */
+public class CountingImageInputStream extends FileImageInputStream {
+
+    private long bytesRead;
+
+    /**
+     * @param file The file to be read.
+     * @throws IOException if the file cannot be opened.
+     */
+    public CountingImageInputStream (File file) throws IOException {
+        super(file);
+    }
+
+    /**
+     * @return the number of bytes read so far, counting bytes read again after seeking back each time.
+     */
+    public long getBytesRead () {
+        return bytesRead;
+    }
+
+    @Override
+    public int read () throws IOException {
+        int b = super.read();
+        if (b >= 0)
+            bytesRead++;
+        return b;
+    }
+
+    @Override
+    public int read (byte[] b, int off, int len) throws IOException {
+        int count = super.read(b, off, len);
+        if (count > 0)
+            bytesRead += count;
+        return count;
+    }
+}
@@ -0,0 +1,293 @@
+package com.medlinchristopher.picturetoascii.image;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+
+import com.medlinchristopher.picturetoascii.metrics.ConversionMetrics;
+import com.medlinchristopher.picturetoascii.metrics.Stage;
+
+/**
+ * A summed-area table of the greyscale values of an image, from which the total of any rectangle of pixels is
+ * four lookups.
+ * <p>
+ * Entry (x, y) of the table holds the sum of the greyscale of every pixel above and to the left of (x, y). The
+ * greyscale of a pixel is the one LuminanceSampler reads, so block averages taken from the table are exactly the ones
+ * imageToASCII computes. Sums are kept in ints and allowed to wrap around: the total of a rectangle comes out right
+ * as long as the rectangle itself holds less than 2^32 / 255 samples, however large the whole image is.
+ * <p>
+ * Once the table is built, converting the image at any block size costs time in proportion to the number of
+ * characters only. The table takes four bytes per pixel.
+ * <p>
+ * A table can also be built from every step-th pixel of every step-th row of an image file, decoded with
+ * ImageReadParam.setSourceSubsampling, for step times step fewer pixels to decode and keep. Such a table still takes
+ * rectangles in pixels of the full image, and averages the samples that fall inside them. See Sampling.
+ *
+ * @since 1.1
+ */
+public final class LuminanceIndex {
+
+    private final int width, height;
+    //samples are taken at offset, offset + step, offset + 2 * step and so on, in both directions
+    private final int step, offset;
+    private final int sampleWidth, sampleHeight;
+    private final int stride;
+    private final int[] table;
+
+    private LuminanceIndex (int width, int height, int step) {
+        this.width = width;
+        this.height = height;
+        this.step = step;
+        this.offset = (step - 1) / 2;
+        this.sampleWidth = samples(width, step);
+        this.sampleHeight = samples(height, step);
+        if ((long) (sampleWidth + 1) * (sampleHeight + 1) > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Image too large to index: " + width + "x" + height);
+        this.stride = sampleWidth + 1;
+        this.table = new int[stride * (sampleHeight + 1)];
+    }
+
+    /**
+     * @return the number of samples taken along a side of the given length, centered in their steps.
+     */
+    private static int samples (int length, int step) {
+        return (length - (step - 1) / 2 + step - 1) / step;
+    }
+
+    /**
+     * Builds the table of an image.
+     *
+     * @param img The image.
+     * @return    Its table.
+     * @throws IllegalArgumentException if the image has too many pixels for a table.
+     */
+    public static LuminanceIndex build (BufferedImage img) {
+        LuminanceIndex index = new LuminanceIndex(img.getWidth(), img.getHeight(), 1);
+        index.addRows(LuminanceSampler.create(img), 0, img.getHeight());
+        return index;
+    }
+
+    /**
+     * Builds the table of an image file, decoding a strip of the image at a time.
+     *
+     * @param input The image file.
+     * @return      Its table.
+     * @throws IOException if the file cannot be read or is not an image.
+     * @throws IllegalArgumentException if the image has too many pixels for a table.
+     */
+    public static LuminanceIndex build (File input) throws IOException {
+        return build(input, 1, false);
+    }
+
+    /**
+     * Builds the table of an image file from every step-th pixel of every step-th row, decoding a strip of the image
+     * at a time.
+     *
+     * @param input The image file.
+     * @param step  The distance between samples in each direction, 1 for every pixel. See Sampling.getStep.
+     * @return      Its table.
+     * @throws IOException if the file cannot be read or is not an image.
+     * @throws IllegalArgumentException if the image has too many samples for a table.
+     */
+    public static LuminanceIndex build (File input, int step) throws IOException {
+        return build(input, step, false);
+    }
+
+    /**
+     * Builds the table of an image file, unless the table would not comfortably fit in memory.
+     *
+     * @param input The image file.
+     * @return      Its table, or null if the image is too large. See fitsInMemory.
+     * @throws IOException if the file cannot be read or is not an image.
+     */
+    public static LuminanceIndex buildIfFits (File input) throws IOException {
+        return build(input, 1, true);
+    }
+
+    /**
+     * Builds the table of an image file from every step-th pixel of every step-th row, unless the table would not
+     * comfortably fit in memory.
+     *
+     * @param input The image file.
+     * @param step  The distance between samples in each direction, 1 for every pixel. See Sampling.getStep.
+     * @return      Its table, or null if it has too many samples. See fitsInMemory.
+     * @throws IOException if the file cannot be read or is not an image.
+     */
+    public static LuminanceIndex buildIfFits (File input, int step) throws IOException {
+        return build(input, step, true);
+    }
+
+    private static LuminanceIndex build (File input, int step, boolean onlyIfFits) throws IOException {
+        if (step < 1)
+            throw new IllegalArgumentException("Sampling step must be positive: " + step);
+        CountingImageInputStream stream = new CountingImageInputStream(input);
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext())
+                throw new IOException("Not a supported image: " + input);
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, false, true);
+                int imageIndex = reader.getMinIndex();
+                int width = reader.getWidth(imageIndex);
+                int height = reader.getHeight(imageIndex);
+                //no step larger than the image, so there is always a sample
+                step = Math.max(1, Math.min(step, Math.min(width, height)));
+                if (onlyIfFits && !fitsInMemory(samples(width, step), samples(height, step)))
+                    return null;
+                LuminanceIndex index = new LuminanceIndex(width, height, step);
+
+                //as few strips as memory allows, since PNG and JPEG readers decode from the top for every one;
+                //strips start on a multiple of the step, so each one's sampling grid lines up with the last one's
+                int rowsPerStrip = (int) Math.min(height, (long) MemoryPlanner.getDefault().stripRows(index.sampleWidth, 1) * step);
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (step > 1)
+                    param.setSourceSubsampling(step, step, index.offset, index.offset);
+                BufferedImage strip = null;
+                for (int y = 0; y < height; y += rowsPerStrip) {
+                    int rows = Math.min(rowsPerStrip, height - y);
+                    int sampleRows = samples(y + rows, step) - y / step;
+                    if (sampleRows <= 0)
+                        break;
+                    param.setSourceRegion(new Rectangle(0, y, width, rows));
+                    param.setDestination(strip);
+                    ConversionMetrics.Span span = ConversionMetrics.start(Stage.DECODE);
+                    long read = stream.getBytesRead();
+                    strip = reader.read(imageIndex, param);
+                    ConversionMetrics.end(span, (long) index.sampleWidth * sampleRows, stream.getBytesRead() - read);
+                    index.addRows(LuminanceSampler.create(strip), y / step, sampleRows);
+                }
+                return index;
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Tells whether the table of an image of the given size would comfortably fit in the memory left to the JVM, as
+     * judged by MemoryPlanner.getDefault().
+     *
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     * @return       true if building the table is not expected to run out of memory.
+     */
+    public static boolean fitsInMemory (int width, int height) {
+        long cells = (long) (width + 1) * (height + 1);
+        if (cells > Integer.MAX_VALUE - 8)
+            return false;
+        return MemoryPlanner.getDefault().fits(cells * 4);
+    }
+
+    /**
+     * Adds rows of samples read by a sampler, which must follow on from the rows already added.
+     */
+    private void addRows (LuminanceSampler sampler, int y0, int rows) {
+        ConversionMetrics.Span span = ConversionMetrics.start(Stage.GREYSCALE);
+        int[] greys = new int[sampleWidth];
+        for (int y = 0; y < rows; y++) {
+            sampler.readRow(y, 0, sampleWidth, greys);
+            int above = (y0 + y) * stride;
+            int row = above + stride;
+            int sum = 0;
+            for (int x = 0; x < sampleWidth; x++) {
+                sum += greys[x];
+                table[row + x + 1] = table[above + x + 1] + sum;
+            }
+        }
+        ConversionMetrics.end(span, (long) sampleWidth * rows, 0);
+    }
+
+    /**
+     * @return the width of the indexed image in pixels.
+     */
+    public int getWidth () {
+        return width;
+    }
+
+    /**
+     * @return the height of the indexed image in pixels.
+     */
+    public int getHeight () {
+        return height;
+    }
+
+    /**
+     * @return the distance between the samples of the table in each direction, 1 if it holds every pixel.
+     */
+    public int getStep () {
+        return step;
+    }
+
+    /**
+     * Adds up the greyscale values of the samples in a rectangle of pixels, which are all of its pixels when the
+     * step is 1.
+     *
+     * @param x Left edge of the rectangle.
+     * @param y Top edge of the rectangle.
+     * @param w Width of the rectangle.
+     * @param h Height of the rectangle.
+     * @return  The sum of the greyscale values of its samples.
+     */
+    public long sum (int x, int y, int w, int h) {
+        if (step == 1)
+            return sampleSum(x, y, x + w, y + h);
+        return sampleSum(firstSample(x, sampleWidth), firstSample(y, sampleHeight),
+                firstSample(x + w, sampleWidth), firstSample(y + h, sampleHeight));
+    }
+
+    /**
+     * Averages the greyscale values of the samples in a rectangle of pixels, rounding down as imageToASCII does. A
+     * rectangle falling between samples takes the sample after it.
+     *
+     * @param x Left edge of the rectangle.
+     * @param y Top edge of the rectangle.
+     * @param w Width of the rectangle.
+     * @param h Height of the rectangle.
+     * @return  The average greyscale of its samples, from 0 to 255.
+     */
+    public int average (int x, int y, int w, int h) {
+        if (step == 1)
+            return (int) (sampleSum(x, y, x + w, y + h) / ((long) w * h));
+
+        int x0 = firstSample(x, sampleWidth);
+        int x1 = firstSample(x + w, sampleWidth);
+        if (x1 <= x0) {
+            x0 = Math.min(x0, sampleWidth - 1);
+            x1 = x0 + 1;
+        }
+        int y0 = firstSample(y, sampleHeight);
+        int y1 = firstSample(y + h, sampleHeight);
+        if (y1 <= y0) {
+            y0 = Math.min(y0, sampleHeight - 1);
+            y1 = y0 + 1;
+        }
+        return (int) (sampleSum(x0, y0, x1, y1) / ((long) (x1 - x0) * (y1 - y0)));
+    }
+
+    /**
+     * @return the index of the first sample at or after a pixel coordinate, from 0 to the number of samples.
+     */
+    private int firstSample (int coordinate, int samples) {
+        int index = -Math.floorDiv(offset - coordinate, step);
+        return Math.max(0, Math.min(samples, index));
+    }
+
+    /**
+     * Adds up the samples from (x0, y0) up to but not including (x1, y1).
+     */
+    private long sampleSum (int x0, int y0, int x1, int y1) {
+        int top = y0 * stride;
+        int bottom = y1 * stride;
+        //the wrapped difference is the true sum modulo 2^32
+        return (table[bottom + x1] - table[bottom + x0] - table[top + x1] + table[top + x0]) & 0xffffffffL;
+    }
+}
@@ -0,0 +1,140 @@
+package com.medlinchristopher.picturetoascii.image;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Adds the greyscale values of rows of packed RGB pixels into block totals, the inner loop of every conversion of a
+ * TYPE_INT_RGB image and of images LuminanceSampler flattens.
+ * <p>
+ * The scalar kernel works a pixel at a time. When the application is compiled on JDK 16 or later, the build also
+ * compiles a kernel on the jdk.incubator.vector module from src/vector/java, which unpacks, averages and adds several
+ * pixels per instruction. It is used when the JVM is started with --add-modules jdk.incubator.vector, unless the
+ * system property picturetoascii.vector is false. Before it is used its results are checked against the scalar
+ * kernel on random pixels, and if they differ in any way the scalar kernel is used instead.
+ *
+ * @since 1.1
+ */
+public abstract class LuminanceKernel {
+
+    /** The system property that turns the vector kernel off when it is false. */
+    public static final String PROPERTY = "picturetoascii.vector";
+
+    private static final String VECTOR_KERNEL = "com.medlinchristopher.picturetoascii.image.VectorLuminanceKernel";
+
+    private static final LuminanceKernel SCALAR = new ScalarKernel();
+    private static final LuminanceKernel VECTOR = loadVector();
+
+    private static volatile LuminanceKernel active = VECTOR != null && !"false".equalsIgnoreCase(System.getProperty(PROPERTY))
+            ? VECTOR : SCALAR;
+
+    LuminanceKernel () {
+    }
+
+    /**
+     * @return true if the vector kernel was found and gives the same results as the scalar one.
+     */
+    public static boolean isVectorAvailable () {
+        return VECTOR != null;
+    }
+
+    /**
+     * @return true if conversions use the vector kernel.
+     */
+    public static boolean isVectorEnabled () {
+        return active == VECTOR;
+    }
+
+    /**
+     * Switches conversions between the vector kernel and the scalar one.
+     *
+     * @param on true to use the vector kernel, if it is available.
+     */
+    public static void setVectorEnabled (boolean on) {
+        active = on && VECTOR != null ? VECTOR : SCALAR;
+    }
+
+    /**
+     * @return the kernel conversions use.
+     */
+    static LuminanceKernel get () {
+        return active;
+    }
+
+    /**
+     * Adds the greyscale values of a row of packed RGB pixels into a row of block totals. The greyscale of a pixel is
+     * (red + green + blue) / 3, and the top byte of each pixel is ignored.
+     *
+     * @param data       The pixels.
+     * @param i          The index of the first pixel of the first block.
+     * @param cols       The number of blocks.
+     * @param blockWidth The width of each block in pixels.
+     * @param totals     The block totals, the first block's at index 0.
+     */
+    abstract void addRGBRow (int[] data, int i, int cols, int blockWidth, int[] totals);
+
+    private static LuminanceKernel loadVector () {
+        Logger log = Logger.getLogger(LuminanceKernel.class.getName());
+        LuminanceKernel kernel;
+        try {
+            kernel = (LuminanceKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            //not built, or the module was not added
+            log.log(Level.FINE, "Vector kernel not available: " + e);
+            return null;
+        }
+        if (!matchesScalar(kernel)) {
+            log.log(Level.WARNING, "Vector kernel gives different results from the scalar kernel and is not used.");
+            return null;
+        }
+        return kernel;
+    }
+
+    /**
+     * Compares a kernel with the scalar kernel on random pixels, for every block width up to a few vectors wide and
+     * every alignment of the first pixel.
+     */
+    private static boolean matchesScalar (LuminanceKernel kernel) {
+        Random random = new Random(0x5eed);
+        int[] data = new int[4099];
+        for (int i = 0; i < data.length; i++)
+            data[i] = random.nextInt();
+        //pure black and white pixels, the extremes of the division by 3
+        data[0] = 0xff000000;
+        data[1] = 0x00ffffff;
+
+        for (int blockWidth = 1; blockWidth <= 70; blockWidth++) {
+            for (int start = 0; start < 3; start++) {
+                int cols = (data.length - start) / blockWidth;
+                int[] expected = new int[cols];
+                int[] actual = new int[cols];
+                for (int col = 0; col < cols; col++)
+                    expected[col] = actual[col] = col * 7;
+                SCALAR.addRGBRow(data, start, cols, blockWidth, expected);
+                kernel.addRGBRow(data, start, cols, blockWidth, actual);
+                if (!Arrays.equals(expected, actual))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * One pixel at a time.
+     */
+    private static final class ScalarKernel extends LuminanceKernel {
+        @Override
+        void addRGBRow (int[] data, int i, int cols, int blockWidth, int[] totals) {
+            for (int col = 0; col < cols; col++) {
+                int total = 0;
+                for (int end = i + blockWidth; i < end; i++) {
+                    int rgb = data[i];
+                    total += (((rgb >> 16) & 0xff) + ((rgb >> 8) & 0xff) + (rgb & 0xff)) / 3;
+                }
+                totals[col] += total;
+            }
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package com.medlinchristopher.picturetoascii.image;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+import com.medlinchristopher.picturetoascii.metrics.ConversionMetrics;
+import com.medlinchristopher.picturetoascii.metrics.Stage;
+
+/**
+ * Reads greyscale values straight out of an image's raster.
+ * <p>
+ * For TYPE_INT_RGB, TYPE_INT_ARGB, TYPE_3BYTE_BGR and TYPE_BYTE_GRAY images the backing array of the
+ * DataBuffer is read directly, alpha is composited onto white on the fly, and greyscale values are added
+ * into block totals in the same pass. No copy of the image is made and BufferedImage.getRGB is never called.
+ * Every other image type is flattened onto white once and read a row at a time through getRGB. Rows of packed RGB
+ * pixels are added up by the LuminanceKernel, which works several pixels at a time where the JVM allows it.
+ * <p>
+ * The greyscale of a pixel is (red + green + blue) / 3 of the pixel after it has been drawn onto a white
+ * background, exactly as ASCIIConversion has always computed it.
+ *
+ * @since 1.1
+ */
+public final class LuminanceSampler {
+
+    private static final int MODE_INT_RGB = 0;
+    private static final int MODE_INT_ARGB = 1;
+    private static final int MODE_3BYTE_BGR = 2;
+    private static final int MODE_BYTE_GRAY = 3;
+    private static final int MODE_GENERIC = 4;
+
+    private final int mode;
+    private final int width;
+    private final int height;
+
+    //direct raster access
+    private int[] intData;
+    private byte[] byteData;
+    private int baseIndex;
+    private int scanlineStride;
+    private int pixelStride;
+    private int[] greyLookup;
+
+    //fallback for image types without a direct path
+    private BufferedImage flattened;
+
+    private LuminanceSampler (int mode, int width, int height) {
+        this.mode = mode;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Creates a sampler for the given image.
+     *
+     * @param img the image to read.
+     * @return a sampler reading img directly when its type allows it.
+     */
+    public static LuminanceSampler create (BufferedImage img) {
+        WritableRaster raster = img.getRaster();
+        int translateX = raster.getSampleModelTranslateX();
+        int translateY = raster.getSampleModelTranslateY();
+        LuminanceSampler sampler;
+
+        switch (img.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB: {
+                SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) raster.getSampleModel();
+                DataBufferInt db = (DataBufferInt) raster.getDataBuffer();
+                sampler = new LuminanceSampler(img.getType() == BufferedImage.TYPE_INT_RGB ? MODE_INT_RGB : MODE_INT_ARGB,
+                        img.getWidth(), img.getHeight());
+                sampler.intData = db.getData();
+                sampler.scanlineStride = sm.getScanlineStride();
+                sampler.pixelStride = 1;
+                sampler.baseIndex = db.getOffset() - translateY * sampler.scanlineStride - translateX;
+                return sampler;
+            }
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_BYTE_GRAY: {
+                ComponentSampleModel sm = (ComponentSampleModel) raster.getSampleModel();
+                DataBufferByte db = (DataBufferByte) raster.getDataBuffer();
+                sampler = new LuminanceSampler(img.getType() == BufferedImage.TYPE_BYTE_GRAY ? MODE_BYTE_GRAY : MODE_3BYTE_BGR,
+                        img.getWidth(), img.getHeight());
+                sampler.byteData = db.getData();
+                sampler.scanlineStride = sm.getScanlineStride();
+                sampler.pixelStride = sm.getPixelStride();
+                int minBandOffset = Integer.MAX_VALUE;
+                for (int offset : sm.getBandOffsets())
+                    minBandOffset = Math.min(minBandOffset, offset);
+                sampler.baseIndex = db.getOffset() + minBandOffset
+                        - translateY * sampler.scanlineStride - translateX * sampler.pixelStride;
+                if (sampler.mode == MODE_BYTE_GRAY)
+                    sampler.greyLookup = greyLookup(img.getColorModel());
+                return sampler;
+            }
+            default: {
+                //same flattening ASCIIConversion used to do for every image type
+                ConversionMetrics.Span span = ConversionMetrics.start(Stage.GREYSCALE);
+                int type = img.getType() == BufferedImage.TYPE_CUSTOM ? BufferedImage.TYPE_INT_ARGB : img.getType();
+                BufferedImage tempImage = new BufferedImage(img.getWidth(), img.getHeight(), type);
+                Graphics2D g2 = tempImage.createGraphics();
+                g2.drawImage(img, 0, 0, Color.WHITE, null);
+                g2.dispose();
+                sampler = new LuminanceSampler(MODE_GENERIC, img.getWidth(), img.getHeight());
+                sampler.flattened = tempImage;
+                ConversionMetrics.end(span, (long) img.getWidth() * img.getHeight(), 0);
+                return sampler;
+            }
+        }
+    }
+
+    /**
+     * @return the width of the sampled image in pixels.
+     */
+    public int getWidth () {
+        return width;
+    }
+
+    /**
+     * @return the height of the sampled image in pixels.
+     */
+    public int getHeight () {
+        return height;
+    }
+
+    /**
+     * Adds the greyscale values of one row of pixels into a row of block totals.
+     * <p>
+     * Block i covers the pixels from (col0 + i) * blockWidth up to, but not including,
+     * (col0 + i + 1) * blockWidth, and its sum is added to totals[i].
+     *
+     * @param y          The row of pixels to read.
+     * @param col0       The first block to add into.
+     * @param cols       The number of blocks to add into.
+     * @param blockWidth The width of each block in pixels.
+     * @param totals     The block totals, indexed from col0.
+     */
+    public void addRow (int y, int col0, int cols, int blockWidth, int[] totals) {
+        int x = col0 * blockWidth;
+        switch (mode) {
+            case MODE_INT_RGB: {
+                LuminanceKernel.get().addRGBRow(intData, baseIndex + y * scanlineStride + x, cols, blockWidth, totals);
+                break;
+            }
+            case MODE_INT_ARGB: {
+                int[] data = intData;
+                byte[] blend = AlphaBlend.TABLE;
+                int i = baseIndex + y * scanlineStride + x;
+                for (int col = 0; col < cols; col++) {
+                    int total = 0;
+                    for (int end = i + blockWidth; i < end; i++) {
+                        int argb = data[i];
+                        int alpha = (argb >>> 24) << 8;
+                        total += ((blend[alpha | ((argb >> 16) & 0xff)] & 0xff)
+                                + (blend[alpha | ((argb >> 8) & 0xff)] & 0xff)
+                                + (blend[alpha | (argb & 0xff)] & 0xff)) / 3;
+                    }
+                    totals[col] += total;
+                }
+                break;
+            }
+            case MODE_3BYTE_BGR: {
+                byte[] data = byteData;
+                int step = pixelStride;
+                int i = baseIndex + y * scanlineStride + x * step;
+                for (int col = 0; col < cols; col++) {
+                    int total = 0;
+                    for (int n = 0; n < blockWidth; n++, i += step) {
+                        total += ((data[i] & 0xff) + (data[i + 1] & 0xff) + (data[i + 2] & 0xff)) / 3;
+                    }
+                    totals[col] += total;
+                }
+                break;
+            }
+            case MODE_BYTE_GRAY: {
+                byte[] data = byteData;
+                int[] lookup = greyLookup;
+                int step = pixelStride;
+                int i = baseIndex + y * scanlineStride + x * step;
+                for (int col = 0; col < cols; col++) {
+                    int total = 0;
+                    for (int n = 0; n < blockWidth; n++, i += step) {
+                        total += lookup[data[i] & 0xff];
+                    }
+                    totals[col] += total;
+                }
+                break;
+            }
+            default: {
+                int[] rgbRow = flattened.getRGB(x, y, cols * blockWidth, 1, null, 0, cols * blockWidth);
+                LuminanceKernel.get().addRGBRow(rgbRow, 0, cols, blockWidth, totals);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Adds the greyscale values and colors of one row of pixels into rows of block totals, in a single pass.
+     * <p>
+     * The greyscale totals are the same as those of addRow. The color of a pixel is its red, green and blue after it
+     * has been drawn onto a white background, the same color its greyscale is worked out from.
+     *
+     * @param y          The row of pixels to read.
+     * @param col0       The first block to add into.
+     * @param cols       The number of blocks to add into.
+     * @param blockWidth The width of each block in pixels.
+     * @param totals     The greyscale totals of the blocks, indexed from col0.
+     * @param reds       The red totals of the blocks, indexed from col0.
+     * @param greens     The green totals of the blocks, indexed from col0.
+     * @param blues      The blue totals of the blocks, indexed from col0.
+     */
+    public void addRow (int y, int col0, int cols, int blockWidth, int[] totals, int[] reds, int[] greens, int[] blues) {
+        int x = col0 * blockWidth;
+        switch (mode) {
+            case MODE_INT_RGB: {
+                int[] data = intData;
+                int i = baseIndex + y * scanlineStride + x;
+                for (int col = 0; col < cols; col++) {
+                    int total = 0, red = 0, green = 0, blue = 0;
+                    for (int end = i + blockWidth; i < end; i++) {
+                        int rgb = data[i];
+                        int r = (rgb >> 16) & 0xff, g = (rgb >> 8) & 0xff, b = rgb & 0xff;
+                        total += (r + g + b) / 3;
+                        red += r;
+                        green += g;
+                        blue += b;
+                    }
+                    totals[col] += total;
+                    reds[col] += red;
+                    greens[col] += green;
+                    blues[col] += blue;
+                }
+                break;
+            }
+            case MODE_INT_ARGB: {
+                int[] data = intData;
+                byte[] blend = AlphaBlend.TABLE;
+                int i = baseIndex + y * scanlineStride + x;
+                for (int col = 0; col < cols; col++) {
+                    int total = 0, red = 0, green = 0, blue = 0;
+                    for (int end = i + blockWidth; i < end; i++) {
+                        int argb = data[i];
+                        int alpha = (argb >>> 24) << 8;
+                        int r = blend[alpha | ((argb >> 16) & 0xff)] & 0xff;
+                        int g = blend[alpha | ((argb >> 8) & 0xff)] & 0xff;
+                        int b = blend[alpha | (argb & 0xff)] & 0xff;
+                        total += (r + g + b) / 3;
+                        red += r;
+                        green += g;
+                        blue += b;
+                    }
+                    totals[col] += total;
+                    reds[col] += red;
+                    greens[col] += green;
+                    blues[col] += blue;
+                }
+                break;
+            }
+            case MODE_3BYTE_BGR: {
+                byte[] data = byteData;
+                int step = pixelStride;
+                int i = baseIndex + y * scanlineStride + x * step;
+                for (int col = 0; col < cols; col++) {
+                    int total = 0, red = 0, green = 0, blue = 0;
+                    for (int n = 0; n < blockWidth; n++, i += step) {
+                        int b = data[i] & 0xff, g = data[i + 1] & 0xff, r = data[i + 2] & 0xff;
+                        total += (b + g + r) / 3;
+                        red += r;
+                        green += g;
+                        blue += b;
+                    }
+                    totals[col] += total;
+                    reds[col] += red;
+                    greens[col] += green;
+                    blues[col] += blue;
+                }
+                break;
+            }
+            case MODE_BYTE_GRAY: {
+                byte[] data = byteData;
+                int[] lookup = greyLookup;
+                int step = pixelStride;
+                int i = baseIndex + y * scanlineStride + x * step;
+                for (int col = 0; col < cols; col++) {
+                    int total = 0;
+                    for (int n = 0; n < blockWidth; n++, i += step) {
+                        total += lookup[data[i] & 0xff];
+                    }
+                    //grey pixels have the same red, green and blue
+                    totals[col] += total;
+                    reds[col] += total;
+                    greens[col] += total;
+                    blues[col] += total;
+                }
+                break;
+            }
+            default: {
+                int[] rgbRow = flattened.getRGB(x, y, cols * blockWidth, 1, null, 0, cols * blockWidth);
+                int i = 0;
+                for (int col = 0; col < cols; col++) {
+                    int total = 0, red = 0, green = 0, blue = 0;
+                    for (int end = i + blockWidth; i < end; i++) {
+                        int rgb = rgbRow[i];
+                        int r = (rgb >> 16) & 0xff, g = (rgb >> 8) & 0xff, b = rgb & 0xff;
+                        total += (r + g + b) / 3;
+                        red += r;
+                        green += g;
+                        blue += b;
+                    }
+                    totals[col] += total;
+                    reds[col] += red;
+                    greens[col] += green;
+                    blues[col] += blue;
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Reads the greyscale values of part of a row of pixels.
+     *
+     * @param y     The row of pixels to read.
+     * @param x     The first pixel to read.
+     * @param w     The number of pixels to read.
+     * @param greys Receives the greyscale value of each pixel, from 0 to 255, starting at index 0.
+     */
+    public void readRow (int y, int x, int w, int[] greys) {
+        Arrays.fill(greys, 0, w, 0);
+        //a block one pixel wide is a single pixel
+        addRow(y, x, w, 1, greys);
+    }
+
+    /**
+     * Builds the greyscale value of every possible sample of a single band grey image.
+     * <p>
+     * TYPE_BYTE_GRAY uses a linear grey color space, so its samples have to go through the color model the same
+     * way BufferedImage.getRGB sends them.
+     */
+    private static int[] greyLookup (ColorModel cm) {
+        int[] lookup = new int[256];
+        byte[] sample = new byte[1];
+        for (int i = 0; i < 256; i++) {
+            sample[0] = (byte) i;
+            int rgb = cm.getRGB(sample);
+            lookup[i] = (((rgb >> 16) & 0xff) + ((rgb >> 8) & 0xff) + (rgb & 0xff)) / 3;
+        }
+        return lookup;
+    }
+
+    /**
+     * Result of drawing a TYPE_INT_ARGB channel value onto white, indexed by (alpha << 8) | value.
+     * <p>
+     * The table is filled by letting Java2D do the drawing once, so the rounding is exactly the rounding
+     * Graphics2D.drawImage(img, x, y, Color.WHITE, null) produces.
+     */
+    private static final class AlphaBlend {
+        static final byte[] TABLE = build();
+
+        private static byte[] build () {
+            BufferedImage src = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
+            BufferedImage dst = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
+            for (int alpha = 0; alpha < 256; alpha++)
+                for (int value = 0; value < 256; value++)
+                    src.setRGB(value, alpha, (alpha << 24) | (value << 16) | (value << 8) | value);
+
+            Graphics2D g2 = dst.createGraphics();
+            g2.drawImage(src, 0, 0, Color.WHITE, null);
+            g2.dispose();
+
+            byte[] table = new byte[256 * 256];
+            for (int alpha = 0; alpha < 256; alpha++)
+                for (int value = 0; value < 256; value++)
+                    table[(alpha << 8) | value] = (byte) dst.getRGB(value, alpha);
+            return table;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.medlinchristopher.picturetoascii.image;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.imageio.ImageReader;
+
+/**
+ * Works out where the pixels of a conversion are kept, from the size of the image and the memory the JVM has.
+ * <p>
+ * A conversion holds decoded pixels, the ASCII art worked out from them, and bands of pixels drawn from the art. Each
+ * is estimated from the size of the image, the block size, the font size and whether colors are kept, and compared
+ * with the memory a job may use: half of what the JVM has left (Runtime.maxMemory less what is in use), leaving room
+ * for garbage and for other jobs, but never more than the budget set with the picturetoascii.memory system property,
+ * such as 512m or 2g.
+ * <ul>
+ * <li>Input is decoded whole onto the heap when it fits (HEAP). Otherwise it is decoded a strip at a time
+ * (STREAMING), unless its reader would have to decode the file from the top again for every strip, as PNG and JPEG
+ * readers do, in which case it is decoded once into memory-mapped temporary files and read back a strip at a time
+ * (MAPPED).</li>
+ * <li>The art is held whole and then drawn when it fits (HEAP). Otherwise each row is drawn and encoded as soon as it
+ * has been converted, and is not kept (STREAMING). Drawn pixels are always encoded a band at a time.</li>
+ * </ul>
+ *
+ * @since 1.1
+ */
+public final class MemoryPlanner {
+
+    /** The system property holding the most memory a job may use, in bytes or with a k, m or g suffix. */
+    public static final String BUDGET_PROPERTY = "picturetoascii.memory";
+
+    /**
+     * Where a stage of a conversion keeps its data.
+     */
+    public enum Path {
+        /** All of it on the heap. */
+        HEAP,
+        /** All of it in memory-mapped temporary files, and a strip of it at a time on the heap. */
+        MAPPED,
+        /** A strip of it at a time, and nowhere else. */
+        STREAMING
+    }
+
+    //Bytes per decoded pixel: the image as readers return it, and room for a flattened copy of it.
+    private static final int DECODED_BYTES_PER_PIXEL = 8;
+    //Bytes per pixel of the temporary files of a mapped image, which has at most 4 bands.
+    private static final int MAPPED_BYTES_PER_PIXEL = 4;
+    //Bytes an array takes besides its elements.
+    private static final int ARRAY_OVERHEAD = 16;
+    //Strips are never planned smaller than this many pixels, however little memory is left.
+    private static final long MIN_STRIP_PIXELS = 1 << 20;
+    //Top-down readers decode about half the image again per strip, so beyond this many strips mapping is cheaper.
+    private static final int MAX_TOP_DOWN_STRIPS = 2;
+
+    private static MemoryPlanner defaultPlanner;
+
+    private final long budget;
+    private final File tempDir;
+
+    /**
+     * @param budget  The most memory a job may use, in bytes, or Long.MAX_VALUE to go by the free heap only.
+     * @param tempDir The folder temporary files of mapped images are created in.
+     */
+    public MemoryPlanner (long budget, File tempDir) {
+        if (budget <= 0)
+            throw new IllegalArgumentException("Memory budget must be positive: " + budget);
+        this.budget = budget;
+        this.tempDir = tempDir;
+    }
+
+    /**
+     * @return the planner whose budget is set by the picturetoascii.memory system property, mapping images in the
+     * java.io.tmpdir folder.
+     */
+    public static synchronized MemoryPlanner getDefault () {
+        if (defaultPlanner == null) {
+            long budget = Long.MAX_VALUE;
+            String value = System.getProperty(BUDGET_PROPERTY);
+            if (value != null) {
+                try {
+                    budget = parseSize(value);
+                } catch (IllegalArgumentException e) {
+                    Logger.getLogger(MemoryPlanner.class.getName()).log(Level.WARNING, "Ignoring " + BUDGET_PROPERTY + ": " + e.getMessage());
+                }
+            }
+            defaultPlanner = new MemoryPlanner(budget, new File(System.getProperty("java.io.tmpdir")));
+        }
+        return defaultPlanner;
+    }
+
+    /**
+     * Reads a size such as 1048576, 512k, 64m or 2g.
+     *
+     * @param size The size.
+     * @return     The number of bytes.
+     * @throws IllegalArgumentException if it is not a positive size.
+     */
+    public static long parseSize (String size) {
+        String digits = size.trim().toLowerCase();
+        int shift = 0;
+        if (digits.endsWith("k") || digits.endsWith("m") || digits.endsWith("g")) {
+            shift = digits.endsWith("k") ? 10 : digits.endsWith("m") ? 20 : 30;
+            digits = digits.substring(0, digits.length() - 1);
+        }
+        try {
+            long bytes = Long.parseLong(digits);
+            if (bytes > 0 && bytes <= Long.MAX_VALUE >> shift)
+                return bytes << shift;
+        } catch (NumberFormatException ignore) {
+        }
+        throw new IllegalArgumentException("Not a size: " + size);
+    }
+
+    /**
+     * @return the most memory a job may use, in bytes, or Long.MAX_VALUE if there is no budget.
+     */
+    public long getBudget () {
+        return budget;
+    }
+
+    /**
+     * @return the folder temporary files of mapped images are created in.
+     */
+    public File getTempDir () {
+        return tempDir;
+    }
+
+    /**
+     * @return the memory a job may use right now, in bytes.
+     */
+    public long available () {
+        Runtime runtime = Runtime.getRuntime();
+        long free = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        return Math.max(0, Math.min(budget, free / 2));
+    }
+
+    /**
+     * @param bytes A number of bytes.
+     * @return      true if a job may use that much memory right now.
+     */
+    public boolean fits (long bytes) {
+        return bytes <= available();
+    }
+
+    /**
+     * Works out how many rows of pixels to decode at a time, when several threads decode at once.
+     *
+     * @param pixelsPerRow The pixels in a row.
+     * @param threads      The number of threads decoding at the same time.
+     * @return             The number of rows in a strip, at least 1.
+     */
+    public int stripRows (long pixelsPerRow, int threads) {
+        long pixels = Math.max(MIN_STRIP_PIXELS, available() / Math.max(1, threads) / DECODED_BYTES_PER_PIXEL);
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, pixels / Math.max(1, pixelsPerRow)));
+    }
+
+    /**
+     * Plans the conversion of an image.
+     *
+     * @param width         The width of the image in pixels.
+     * @param height        The height of the image in pixels.
+     * @param pixelsPerChar The width and height of the block of pixels behind each character.
+     * @param fontSize      The size of the font the art is drawn in, or 0 if it is only written as text.
+     * @param colors        true if the color of every character is kept as well.
+     * @param topDown       true if the reader of the image has to decode it from the top for every strip. See
+     *                      decodesFromTop.
+     * @return              The plan.
+     */
+    public Plan plan (int width, int height, int pixelsPerChar, int fontSize, boolean colors, boolean topDown) {
+        int cols = width / pixelsPerChar;
+        int rows = height / pixelsPerChar;
+
+        //two bands of a row of characters each, one being drawn while the other is encoded
+        long spacing = fontSize > 0 ? fontSize + 2 : 0;
+        long renderBytes = 2 * cols * spacing * spacing * 4;
+        long available = Math.max(0, available() - renderBytes);
+
+        //an ASCIIGrid of a byte per character, and an int[] of colors per row
+        long artBytes = (long) rows * cols + ARRAY_OVERHEAD;
+        if (colors)
+            artBytes += (long) rows * ((long) cols * 4 + ARRAY_OVERHEAD);
+        Path output = artBytes <= available / 2 ? Path.HEAP : Path.STREAMING;
+        long inputAvailable = output == Path.HEAP ? available - artBytes : available;
+
+        long imageBytes = (long) width * height * DECODED_BYTES_PER_PIXEL;
+        if (rows == 0 || imageBytes <= inputAvailable)
+            return new Plan(Path.HEAP, output, Math.max(1, rows), imageBytes, artBytes, renderBytes);
+
+        long stripPixels = Math.max(MIN_STRIP_PIXELS, inputAvailable / DECODED_BYTES_PER_PIXEL);
+        long pixelsPerCharRow = Math.max(1L, (long) cols * pixelsPerChar * pixelsPerChar);
+        int stripRows = (int) Math.max(1, Math.min(rows, stripPixels / pixelsPerCharRow));
+        int strips = (rows + stripRows - 1) / stripRows;
+
+        long mappedBytes = (long) width * height * MAPPED_BYTES_PER_PIXEL;
+        Path input = topDown && strips > MAX_TOP_DOWN_STRIPS && tempDir != null && tempDir.getUsableSpace() > mappedBytes
+                ? Path.MAPPED : Path.STREAMING;
+        return new Plan(input, output, stripRows, stripPixels * DECODED_BYTES_PER_PIXEL, artBytes, renderBytes);
+    }
+
+    /**
+     * Tells whether a reader has to decode an image from its first row to get to any other row, as the PNG and JPEG
+     * readers do for images that are not tiled.
+     *
+     * @param reader     The reader, with its input set.
+     * @param imageIndex The image.
+     * @return           true if decoding the image in strips costs about a full decode for every other strip.
+     * @throws IOException if the image cannot be read.
+     */
+    public static boolean decodesFromTop (ImageReader reader, int imageIndex) throws IOException {
+        String format = reader.getFormatName().toLowerCase();
+        return !reader.isImageTiled(imageIndex) && (format.equals("png") || format.equals("jpeg") || format.equals("jpg"));
+    }
+
+    /**
+     * Where a conversion keeps its input and its output, and how much memory it is expected to use.
+     */
+    public static final class Plan {
+        private final Path input, output;
+        private final int stripRows;
+        private final long inputBytes, artBytes, renderBytes;
+
+        private Plan (Path input, Path output, int stripRows, long inputBytes, long artBytes, long renderBytes) {
+            this.input = input;
+            this.output = output;
+            this.stripRows = stripRows;
+            this.inputBytes = inputBytes;
+            this.artBytes = artBytes;
+            this.renderBytes = renderBytes;
+        }
+
+        /**
+         * @return where the decoded pixels are kept.
+         */
+        public Path getInput () {
+            return input;
+        }
+
+        /**
+         * @return where the ASCII art is kept, HEAP or STREAMING.
+         */
+        public Path getOutput () {
+            return output;
+        }
+
+        /**
+         * @return the number of rows of characters to convert from each strip of pixels, which is every row when the
+         * input is on the heap.
+         */
+        public int getStripRows () {
+            return stripRows;
+        }
+
+        /**
+         * @return the memory expected to be taken by decoded pixels at any one time, in bytes.
+         */
+        public long getInputBytes () {
+            return inputBytes;
+        }
+
+        /**
+         * @return the memory the whole ASCII art takes, in bytes, whether or not it is kept.
+         */
+        public long getArtBytes () {
+            return artBytes;
+        }
+
+        /**
+         * @return the memory taken by drawn pixels at any one time, in bytes.
+         */
+        public long getRenderBytes () {
+            return renderBytes;
+        }
+
+        @Override
+        public String toString () {
+            return "input " + input + " (" + stripRows + " rows per strip, " + inputBytes + " bytes), output " + output
+                    + " (" + artBytes + " bytes of art, " + renderBytes + " bytes drawn)";
+        }
+    }
+}
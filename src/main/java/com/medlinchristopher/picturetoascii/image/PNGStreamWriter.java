@@ -0,0 +1,199 @@
+package com.medlinchristopher.picturetoascii.image;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import com.medlinchristopher.picturetoascii.metrics.ConversionMetrics;
+import com.medlinchristopher.picturetoascii.metrics.Stage;
+
+/**
+ * Writes an 8 bit RGB PNG image to a stream a few rows at a time.
+ * <p>
+ * Rows are filtered and deflated as soon as they are handed over, and compressed data is written out in IDAT chunks
+ * of at most 64 KiB, so only one row of pixels and one chunk of compressed data are ever held in memory, however
+ * large the image is. Each row is filtered with whichever of the None, Sub and Up filters leaves the smallest sum of
+ * absolute differences, the heuristic the PNG specification recommends.
+ *
+ * @since 1.1
+ */
+public class PNGStreamWriter implements Closeable {
+
+    private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private static final int FILTER_NONE = 0;
+    private static final int FILTER_SUB = 1;
+    private static final int FILTER_UP = 2;
+
+    private final DataOutputStream out;
+    private final int width, height;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+
+    private byte[] previous, current;
+    private final byte[][] filtered = new byte[3][];
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private int chunkLength;
+    private int rowsWritten;
+    private boolean closed;
+
+    /**
+     * Writes the PNG signature and header to a stream.
+     *
+     * @param out    The stream the image is written to. It is not closed by this writer.
+     * @param width  The width of the image in pixels.
+     * @param height The height of the image in pixels.
+     * @throws IOException if the stream cannot be written to.
+     */
+    public PNGStreamWriter (OutputStream out, int width, int height) throws IOException {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Illegal PNG size: " + width + "x" + height);
+        this.out = new DataOutputStream(out);
+        this.width = width;
+        this.height = height;
+        this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+
+        int rowBytes = 1 + width * 3;
+        previous = new byte[rowBytes];
+        current = new byte[rowBytes];
+        for (int i = 0; i < filtered.length; i++)
+            filtered[i] = new byte[rowBytes];
+
+        this.out.write(SIGNATURE);
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;  //bit depth
+        header[9] = 2;  //color type: RGB
+        header[10] = 0; //compression: deflate
+        header[11] = 0; //filter method: adaptive
+        header[12] = 0; //interlace: none
+        writeChunk("IHDR", header, header.length);
+    }
+
+    /**
+     * Writes rows of pixels, continuing from the last row written.
+     *
+     * @param rgb    The pixels, row by row, as 0xRRGGBB values. Each row is width pixels long.
+     * @param offset The index of the first pixel to write.
+     * @param rows   The number of rows to write.
+     * @throws IOException if the stream cannot be written to.
+     * @throws IllegalStateException if more rows are written than the image has.
+     */
+    public void writeRows (int[] rgb, int offset, int rows) throws IOException {
+        if (rowsWritten + rows > height)
+            throw new IllegalStateException("PNG image only has " + height + " rows.");
+        ConversionMetrics.Span span = ConversionMetrics.start(Stage.ENCODE);
+        long compressed = deflater.getBytesWritten();
+
+        for (int row = 0; row < rows; row++) {
+            byte[] line = current;
+            int i = offset + row * width;
+            for (int b = 1; b < line.length; b += 3, i++) {
+                int pixel = rgb[i];
+                line[b] = (byte) (pixel >> 16);
+                line[b + 1] = (byte) (pixel >> 8);
+                line[b + 2] = (byte) pixel;
+            }
+
+            byte[] best = filter(line, previous);
+            deflater.setInput(best, 0, best.length);
+            while (!deflater.needsInput())
+                drain();
+
+            current = previous;
+            previous = line;
+            rowsWritten++;
+        }
+        ConversionMetrics.end(span, (long) rows * width, deflater.getBytesWritten() - compressed);
+    }
+
+    /**
+     * Finishes the image data and writes the end of the PNG. The underlying stream is flushed but left open.
+     *
+     * @throws IOException if the stream cannot be written to.
+     * @throws IllegalStateException if fewer rows were written than the image has.
+     */
+    @Override
+    public void close () throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            if (rowsWritten != height)
+                throw new IllegalStateException("Only " + rowsWritten + " of " + height + " PNG rows were written.");
+            deflater.finish();
+            while (!deflater.finished())
+                drain();
+            writeChunk("IEND", chunk, 0);
+            out.flush();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Picks the filter for a row, returning the filtered row with its filter type in front.
+     */
+    private byte[] filter (byte[] line, byte[] above) {
+        byte[] none = filtered[FILTER_NONE];
+        byte[] sub = filtered[FILTER_SUB];
+        byte[] up = filtered[FILTER_UP];
+        none[0] = FILTER_NONE;
+        sub[0] = FILTER_SUB;
+        up[0] = FILTER_UP;
+
+        long sumNone = 0, sumSub = 0, sumUp = 0;
+        for (int i = 1; i < line.length; i++) {
+            byte raw = line[i];
+            byte left = i > 3 ? line[i - 3] : 0;
+            byte s = (byte) (raw - left);
+            byte u = (byte) (raw - above[i]);
+            none[i] = raw;
+            sub[i] = s;
+            up[i] = u;
+            sumNone += Math.abs((int) raw);
+            sumSub += Math.abs((int) s);
+            sumUp += Math.abs((int) u);
+        }
+
+        //the first row has nothing above it, where Up is the same as None
+        if (rowsWritten > 0 && sumUp < sumNone && sumUp <= sumSub)
+            return up;
+        return sumSub < sumNone ? sub : none;
+    }
+
+    /**
+     * Moves compressed data into the chunk buffer, writing out an IDAT chunk whenever it fills up or the data ends.
+     */
+    private void drain () throws IOException {
+        chunkLength += deflater.deflate(chunk, chunkLength, chunk.length - chunkLength);
+        if (chunkLength == chunk.length || (deflater.finished() && chunkLength > 0)) {
+            writeChunk("IDAT", chunk, chunkLength);
+            chunkLength = 0;
+        }
+    }
+
+    private void writeChunk (String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        crc.reset();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static void putInt (byte[] b, int offset, int value) {
+        b[offset] = (byte) (value >>> 24);
+        b[offset + 1] = (byte) (value >>> 16);
+        b[offset + 2] = (byte) (value >>> 8);
+        b[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,63 @@
+package com.medlinchristopher.picturetoascii.image;
+
+/**
+ * How many pixels of each block are decoded and averaged into its character.
+ * <p>
+ * EXACT decodes every pixel and averages whole blocks. The other levels have the reader decode only every so many
+ * pixels in each direction, through ImageReadParam.setSourceSubsampling, so large blocks are averaged from a grid of
+ * evenly spread samples instead. Decoding fewer pixels saves the memory they would take and the time spent turning
+ * them into greyscale, roughly in proportion; how much decoding time it saves depends on the reader, since PNG and
+ * JPEG readers still decompress every row.
+ *
+ * @since 1.1
+ */
+public enum Sampling {
+
+    /** Every pixel of every block. */
+    EXACT("exact", Integer.MAX_VALUE),
+
+    /** At least 3 by 3 samples of each block. */
+    BALANCED("balanced", 3),
+
+    /** At least 2 by 2 samples of each block. */
+    FAST("fast", 2);
+
+    private final String label;
+    private final int samplesPerSide;
+
+    Sampling (String label, int samplesPerSide) {
+        this.label = label;
+        this.samplesPerSide = samplesPerSide;
+    }
+
+    /**
+     * @return the name the level goes by in settings and on the command line.
+     */
+    public String getLabel () {
+        return label;
+    }
+
+    /**
+     * Works out how far apart the decoded pixels of an image converted at a block size are.
+     *
+     * @param pixelsPerChar The width and height of the block of pixels behind each character.
+     * @return              The distance between samples in each direction, 1 to decode every pixel.
+     */
+    public int getStep (int pixelsPerChar) {
+        return Math.max(1, pixelsPerChar / samplesPerSide);
+    }
+
+    /**
+     * Looks up a level by its label.
+     *
+     * @param label The label, such as exact or fast.
+     * @return      The level.
+     * @throws IllegalArgumentException if no level has that label.
+     */
+    public static Sampling forLabel (String label) {
+        for (Sampling sampling : values())
+            if (sampling.label.equalsIgnoreCase(label))
+                return sampling;
+        throw new IllegalArgumentException("Unknown sampling: " + label);
+    }
+}
@@ -0,0 +1,163 @@
+package com.medlinchristopher.picturetoascii.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Times the stages of conversions, when asked to.
+ * <p>
+ * Metrics are off unless the system property picturetoascii.metrics is true or setEnabled is called. While they are
+ * off, start returns null and end does nothing with it, so an instrumented stage costs one read of a field. Stages are
+ * timed a strip, band or image at a time, never a pixel at a time.
+ * <p>
+ * While metrics are on, every stage run is added to the StageStats of its stage, each of which is registered as an
+ * MXBean named com.medlinchristopher.picturetoascii:type=ConversionStage,name=&lt;stage&gt;, and is emitted as a
+ * StageEvent to the flight recorder.
+ * <pre>
+ *     ConversionMetrics.Span span = ConversionMetrics.start(Stage.DECODE);
+ *     BufferedImage img = reader.read(0);
+ *     ConversionMetrics.end(span, (long) img.getWidth() * img.getHeight(), 0);
+ * </pre>
+ *
+ * @since 1.1
+ */
+public final class ConversionMetrics {
+
+    /** The system property that turns metrics on at startup. */
+    public static final String PROPERTY = "picturetoascii.metrics";
+
+    /** The domain of the MBeans. */
+    public static final String DOMAIN = "com.medlinchristopher.picturetoascii";
+
+    private static final Map<Stage, StageStats> STATS = new EnumMap<>(Stage.class);
+    static {
+        for (Stage stage : Stage.values())
+            STATS.put(stage, new StageStats(stage));
+    }
+
+    private static volatile boolean enabled;
+    private static boolean registered;
+
+    static {
+        if (Boolean.getBoolean(PROPERTY))
+            setEnabled(true);
+    }
+
+    private ConversionMetrics () {
+    }
+
+    /**
+     * @return true if stages are being timed.
+     */
+    public static boolean isEnabled () {
+        return enabled;
+    }
+
+    /**
+     * Turns metrics on or off. The MBeans are registered the first time they are turned on, and stay registered.
+     *
+     * @param on true to time stages from now on.
+     */
+    public static synchronized void setEnabled (boolean on) {
+        if (on && !registered) {
+            registered = true;
+            register();
+        }
+        enabled = on;
+    }
+
+    private static void register () {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (StageStats stats : STATS.values()) {
+            try {
+                server.registerMBean(stats, new ObjectName(DOMAIN + ":type=ConversionStage,name=" + stats.getStage()));
+            } catch (JMException e) {
+                Logger.getLogger(ConversionMetrics.class.getName()).log(Level.WARNING, "Cannot register the metrics of " + stats.getStage(), e);
+            }
+        }
+    }
+
+    /**
+     * Starts timing a run of a stage.
+     *
+     * @param stage The stage.
+     * @return      The run, to be passed to end, or null if metrics are off.
+     */
+    public static Span start (Stage stage) {
+        if (!enabled)
+            return null;
+        return new Span(stage);
+    }
+
+    /**
+     * Finishes timing a run of a stage. A run whose stage failed can simply be left unfinished.
+     *
+     * @param span   The run returned by start, or null.
+     * @param pixels The number of pixels the run went through.
+     * @param bytes  The number of bytes the run read, wrote or mapped.
+     */
+    public static void end (Span span, long pixels, long bytes) {
+        if (span != null)
+            span.end(pixels, bytes);
+    }
+
+    /**
+     * @param stage A stage.
+     * @return      Its statistics.
+     */
+    public static StageStats get (Stage stage) {
+        return STATS.get(stage);
+    }
+
+    /**
+     * Clears the statistics of every stage.
+     */
+    public static void reset () {
+        for (StageStats stats : STATS.values())
+            stats.reset();
+    }
+
+    /**
+     * @return one line of statistics for every stage that ran.
+     */
+    public static String report () {
+        StringBuilder report = new StringBuilder();
+        for (StageStats stats : STATS.values())
+            if (stats.getCount() > 0)
+                report.append(stats).append(System.lineSeparator());
+        return report.toString();
+    }
+
+    /**
+     * A run of a stage being timed.
+     */
+    public static final class Span {
+        private final StageStats stats;
+        private final StageEvent event;
+        private final long start;
+
+        private Span (Stage stage) {
+            this.stats = STATS.get(stage);
+            this.event = new StageEvent();
+            this.event.begin();
+            this.start = System.nanoTime();
+        }
+
+        private void end (long pixels, long bytes) {
+            stats.record(System.nanoTime() - start, pixels, bytes);
+            event.end();
+            if (event.shouldCommit()) {
+                event.stage = stats.getStage();
+                event.pixels = pixels;
+                event.bytes = bytes;
+                event.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.medlinchristopher.picturetoascii.metrics;
+
+/**
+ * The stages a conversion goes through, each of which is timed separately.
+ *
+ * @since 1.1
+ */
+public enum Stage {
+
+    /** Decoding an image file, or a strip of one, into pixels. */
+    DECODE("decode"),
+
+    /** Creating and memory mapping the temporary files behind a BigBufferedImage. */
+    MAP("map"),
+
+    /**
+     * Preparing greyscale values ahead of averaging: flattening images LuminanceSampler cannot read directly, and
+     * filling summed-area tables. Images it reads directly are turned to greyscale during AVERAGE instead.
+     */
+    GREYSCALE("greyscale"),
+
+    /** Averaging blocks of pixels and looking up their characters. */
+    AVERAGE("average"),
+
+    /** Drawing the glyphs of the characters into pixels. */
+    RENDER("render"),
+
+    /** Filtering and compressing pixels into a PNG or GIF. */
+    ENCODE("encode");
+
+    private final String label;
+
+    Stage (String label) {
+        this.label = label;
+    }
+
+    /**
+     * @return the name the stage goes by in MBeans, events and reports.
+     */
+    public String getLabel () {
+        return label;
+    }
+}
@@ -0,0 +1,35 @@
+package com.medlinchristopher.picturetoascii.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for one run of a conversion stage.
+ * <p>
+ * Events are only emitted while metrics are enabled, and are then recorded like any other event, for example with
+ * -XX:StartFlightRecording or jcmd JFR.start. Stack traces are left out, since they would cost more than the
+ * shorter stages themselves.
+ *
+ * @since 1.1
+ */
+@Name("com.medlinchristopher.picturetoascii.Stage")
+@Label("Conversion Stage")
+@Category({"Picture to ASCII"})
+@Description("One run of a stage of an image to ASCII conversion")
+@StackTrace(false)
+final class StageEvent extends jdk.jfr.Event {
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Pixels")
+    long pixels;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+}
@@ -0,0 +1,153 @@
+package com.medlinchristopher.picturetoascii.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of one conversion stage, updated by any number of threads at once without locking.
+ *
+ * @since 1.1
+ */
+public final class StageStats implements StageStatsMXBean {
+
+    /** Number of buckets in the duration histogram. The last one also counts anything longer. */
+    public static final int BUCKETS = 40;
+
+    private final Stage stage;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAdder pixels = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+    StageStats (Stage stage) {
+        this.stage = stage;
+    }
+
+    /**
+     * Adds one run of the stage.
+     *
+     * @param duration How long it took, in nanoseconds.
+     * @param pixels   The number of pixels it went through.
+     * @param bytes    The number of bytes it read, wrote or mapped.
+     */
+    void record (long duration, long pixels, long bytes) {
+        count.increment();
+        nanos.add(duration);
+        this.pixels.add(pixels);
+        this.bytes.add(bytes);
+        histogram.incrementAndGet(bucket(duration));
+
+        long max = maxNanos.get();
+        while (duration > max && !maxNanos.compareAndSet(max, duration))
+            max = maxNanos.get();
+    }
+
+    private static int bucket (long duration) {
+        long micros = duration / 1000;
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    @Override
+    public String getStage () {
+        return stage.getLabel();
+    }
+
+    @Override
+    public long getCount () {
+        return count.sum();
+    }
+
+    @Override
+    public double getTotalMillis () {
+        return nanos.sum() / 1e6;
+    }
+
+    @Override
+    public double getMeanMillis () {
+        long n = count.sum();
+        return n == 0 ? 0 : nanos.sum() / 1e6 / n;
+    }
+
+    @Override
+    public double getMaxMillis () {
+        return maxNanos.get() / 1e6;
+    }
+
+    @Override
+    public double getP50Millis () {
+        return percentileMillis(0.5);
+    }
+
+    @Override
+    public double getP90Millis () {
+        return percentileMillis(0.9);
+    }
+
+    @Override
+    public double getP99Millis () {
+        return percentileMillis(0.99);
+    }
+
+    /**
+     * Works out a percentile of the durations from the histogram.
+     *
+     * @param fraction The fraction of runs that took at most the returned time, from 0 to 1.
+     * @return         The upper bound of the bucket the percentile falls in, but no more than the longest run, in
+     *                 milliseconds.
+     */
+    public double percentileMillis (double fraction) {
+        long[] counts = getHistogram();
+        long total = 0;
+        for (long n : counts)
+            total += n;
+        if (total == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min((1L << i) / 1e3, getMaxMillis());
+        }
+        return getMaxMillis();
+    }
+
+    @Override
+    public long getPixels () {
+        return pixels.sum();
+    }
+
+    @Override
+    public long getBytes () {
+        return bytes.sum();
+    }
+
+    @Override
+    public long[] getHistogram () {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            counts[i] = histogram.get(i);
+        return counts;
+    }
+
+    @Override
+    public void reset () {
+        count.reset();
+        nanos.reset();
+        pixels.reset();
+        bytes.reset();
+        maxNanos.set(0);
+        for (int i = 0; i < BUCKETS; i++)
+            histogram.set(i, 0);
+    }
+
+    @Override
+    public String toString () {
+        return String.format("%-9s %8d runs %11.1f ms total %9.2f ms mean %9.2f ms p99 %9.2f ms max %,16d pixels %,16d bytes",
+                getStage(), getCount(), getTotalMillis(), getMeanMillis(), getP99Millis(), getMaxMillis(), getPixels(), getBytes());
+    }
+}
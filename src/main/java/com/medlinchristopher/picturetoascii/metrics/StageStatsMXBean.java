@@ -0,0 +1,73 @@
+package com.medlinchristopher.picturetoascii.metrics;
+
+/**
+ * Management interface of the statistics of one conversion stage.
+ * <p>
+ * Durations are kept in a histogram of power of two buckets: bucket 0 counts calls that took under a microsecond,
+ * and bucket i counts calls that took from 2^(i-1) up to 2^i microseconds. Percentiles are the upper bound of the
+ * bucket they fall in, so they overstate the true value by at most a factor of two.
+ *
+ * @since 1.1
+ */
+public interface StageStatsMXBean {
+
+    /**
+     * @return the name of the stage.
+     */
+    String getStage ();
+
+    /**
+     * @return the number of times the stage ran.
+     */
+    long getCount ();
+
+    /**
+     * @return the time spent in the stage, added up over all threads, in milliseconds.
+     */
+    double getTotalMillis ();
+
+    /**
+     * @return the average time the stage took, in milliseconds.
+     */
+    double getMeanMillis ();
+
+    /**
+     * @return the longest time the stage took, in milliseconds.
+     */
+    double getMaxMillis ();
+
+    /**
+     * @return the median time the stage took, in milliseconds.
+     */
+    double getP50Millis ();
+
+    /**
+     * @return the time 90% of runs of the stage took at most, in milliseconds.
+     */
+    double getP90Millis ();
+
+    /**
+     * @return the time 99% of runs of the stage took at most, in milliseconds.
+     */
+    double getP99Millis ();
+
+    /**
+     * @return the number of pixels the stage went through.
+     */
+    long getPixels ();
+
+    /**
+     * @return the number of bytes the stage read, wrote or mapped.
+     */
+    long getBytes ();
+
+    /**
+     * @return the number of runs in each bucket of the duration histogram.
+     */
+    long[] getHistogram ();
+
+    /**
+     * Clears the statistics.
+     */
+    void reset ();
+}
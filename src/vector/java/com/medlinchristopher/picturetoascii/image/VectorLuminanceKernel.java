@@ -0,0 +1,89 @@
+package com.medlinchristopher.picturetoascii.image;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Adds up greyscale values as many pixels at a time as the widest vector the CPU has, using the jdk.incubator.vector
+ * module. Loaded by LuminanceKernel when the module has been added to the JVM.
+ * <p>
+ * The red, green and blue of each lane are unpacked with shifts and masks, and their sum s, at most 765, is divided
+ * by 3 as (s * 43691) >>> 17, which is exact for every s below 2^17 since 3 * 43691 is 2^17 + 1. Blocks at least a
+ * vector wide are added up a vector at a time and reduced once per block. Narrower blocks have the greyscale of a
+ * stretch of their pixels worked out a vector at a time and are then added up one pixel at a time, and blocks one
+ * pixel wide are added straight into the totals.
+ *
+ * @since 1.1
+ */
+final class VectorLuminanceKernel extends LuminanceKernel {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    private static final int THIRD = 43691;
+    private static final int THIRD_SHIFT = 17;
+
+    //Greyscale values worked out at a time for narrow blocks.
+    private static final int STRETCH = 1024;
+
+    VectorLuminanceKernel () {
+    }
+
+    private static IntVector grey (IntVector rgb) {
+        IntVector sum = rgb.lanewise(VectorOperators.LSHR, 16).and(0xff)
+                .add(rgb.lanewise(VectorOperators.LSHR, 8).and(0xff))
+                .add(rgb.and(0xff));
+        return sum.mul(THIRD).lanewise(VectorOperators.LSHR, THIRD_SHIFT);
+    }
+
+    private static int grey (int rgb) {
+        return (((rgb >> 16) & 0xff) + ((rgb >> 8) & 0xff) + (rgb & 0xff)) / 3;
+    }
+
+    @Override
+    void addRGBRow (int[] data, int i, int cols, int blockWidth, int[] totals) {
+        int lanes = SPECIES.length();
+        if (blockWidth == 1) {
+            int bound = SPECIES.loopBound(cols);
+            int col = 0;
+            for (; col < bound; col += lanes, i += lanes)
+                IntVector.fromArray(SPECIES, totals, col).add(grey(IntVector.fromArray(SPECIES, data, i))).intoArray(totals, col);
+            for (; col < cols; col++, i++)
+                totals[col] += grey(data[i]);
+        } else if (blockWidth >= lanes) {
+            int vectorWidth = SPECIES.loopBound(blockWidth);
+            for (int col = 0; col < cols; col++) {
+                IntVector sum = IntVector.zero(SPECIES);
+                int end = i + blockWidth;
+                for (int vectorEnd = i + vectorWidth; i < vectorEnd; i += lanes)
+                    sum = sum.add(grey(IntVector.fromArray(SPECIES, data, i)));
+                int total = sum.reduceLanes(VectorOperators.ADD);
+                for (; i < end; i++)
+                    total += grey(data[i]);
+                totals[col] += total;
+            }
+        } else {
+            //a whole number of blocks at a time
+            int blocksPerStretch = Math.max(1, STRETCH / blockWidth);
+            int[] greys = new int[Math.min(cols, blocksPerStretch) * blockWidth];
+            for (int col = 0; col < cols; col += blocksPerStretch) {
+                int blocks = Math.min(blocksPerStretch, cols - col);
+                int pixels = blocks * blockWidth;
+                int bound = SPECIES.loopBound(pixels);
+                int n = 0;
+                for (; n < bound; n += lanes)
+                    grey(IntVector.fromArray(SPECIES, data, i + n)).intoArray(greys, n);
+                for (; n < pixels; n++)
+                    greys[n] = grey(data[i + n]);
+                i += pixels;
+
+                n = 0;
+                for (int block = 0; block < blocks; block++) {
+                    int total = 0;
+                    for (int end = n + blockWidth; n < end; n++)
+                        total += greys[n];
+                    totals[col + block] += total;
+                }
+            }
+        }
+    }
+}